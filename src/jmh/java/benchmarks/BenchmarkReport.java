@@ -0,0 +1,125 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Markdown report of a JMH JSON result file, optionally compared against the result file of an earlier commit:
+ * <pre>
+ * BenchmarkReport &lt;result.json&gt; &lt;report.md&gt; &lt;thresholdPercent&gt; [baseline.json]
+ * </pre>
+ * A score counts as a regression when it is worse than the baseline by more than the threshold and the two
+ * confidence intervals do not overlap, so run-to-run noise is not reported. Throughput is better when higher,
+ * every time-based mode when lower.
+ */
+public final class BenchmarkReport {
+
+    private BenchmarkReport() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.err.println("Usage: BenchmarkReport <result.json> <report.md> <thresholdPercent> [baseline.json]");
+            System.exit(2);
+        }
+        Path resultFile = Paths.get(args[0]);
+        if (!Files.exists(resultFile)) {
+            System.out.println("No benchmark results in " + resultFile);
+            return;
+        }
+        Map<String, JsonNode> current = load(resultFile);
+        Map<String, JsonNode> baseline = args.length > 3 && !args[3].isEmpty() ? load(Paths.get(args[3])) : null;
+        double threshold = Double.parseDouble(args[2]);
+
+        StringBuilder report = new StringBuilder("# Benchmark report\n\n");
+        int regressions = 0;
+        if (baseline == null) {
+            report.append("| Benchmark | Mode | Score | Error | Unit |\n|---|---|---:|---:|---|\n");
+            for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+                JsonNode metric = entry.getValue().get("primaryMetric");
+                report.append(String.format("| %s | %s | %.3f | %.3f | %s |%n", entry.getKey(),
+                        entry.getValue().get("mode").asText(), metric.get("score").asDouble(),
+                        error(metric), metric.get("scoreUnit").asText()));
+            }
+        } else {
+            JsonNode sample = current.values().stream().findFirst().orElse(null);
+            JsonNode baseSample = baseline.values().stream().findFirst().orElse(null);
+            if (sample != null && baseSample != null
+                    && !Objects.equals(sample.path("vmVersion").asText(), baseSample.path("vmVersion").asText())) {
+                report.append("**Warning:** baseline ran on VM ").append(baseSample.path("vmVersion").asText())
+                        .append(", this run on ").append(sample.path("vmVersion").asText()).append(".\n\n");
+            }
+            report.append("| Benchmark | Mode | Baseline | Current | Unit | Change | |\n|---|---|---:|---:|---|---:|---|\n");
+            for (Map.Entry<String, JsonNode> entry : current.entrySet()) {
+                JsonNode before = baseline.get(entry.getKey());
+                JsonNode metric = entry.getValue().get("primaryMetric");
+                String mode = entry.getValue().get("mode").asText();
+                double score = metric.get("score").asDouble();
+                if (before == null) {
+                    report.append(String.format("| %s | %s | | %.3f | %s | new | |%n", entry.getKey(), mode, score,
+                            metric.get("scoreUnit").asText()));
+                    continue;
+                }
+                JsonNode baseMetric = before.get("primaryMetric");
+                double baseScore = baseMetric.get("score").asDouble();
+                boolean higherIsBetter = mode.equals("thrpt");
+                double change = baseScore == 0 ? 0 : (score - baseScore) / baseScore * 100;
+                double worse = higherIsBetter ? -change : change;
+                boolean overlap = Math.abs(score - baseScore) <= error(metric) + error(baseMetric);
+                String verdict = "";
+                if (worse > threshold && !overlap) {
+                    verdict = "REGRESSION";
+                    regressions++;
+                } else if (-worse > threshold && !overlap) {
+                    verdict = "improved";
+                }
+                report.append(String.format("| %s | %s | %.3f | %.3f | %s | %+.1f%% | %s |%n", entry.getKey(), mode,
+                        baseScore, score, metric.get("scoreUnit").asText(), change, verdict));
+            }
+            report.append(String.format("%n%d regression(s) beyond %.1f%%.%n", regressions, threshold));
+        }
+        Path reportFile = Paths.get(args[1]);
+        Files.write(reportFile, report.toString().getBytes(StandardCharsets.UTF_8));
+        System.out.print(report);
+        System.out.println("Report written to " + reportFile);
+    }
+
+    /**
+     * Results keyed by benchmark name plus its parameters, in file order.
+     */
+    private static Map<String, JsonNode> load(Path file) throws IOException {
+        Map<String, JsonNode> results = new LinkedHashMap<>();
+        for (JsonNode result : new ObjectMapper().readTree(file.toFile())) {
+            StringBuilder key = new StringBuilder(result.get("benchmark").asText().replace("benchmarks.", ""));
+            JsonNode params = result.get("params");
+            if (params != null) {
+                Iterator<Map.Entry<String, JsonNode>> fields = params.fields();
+                String separator = " [";
+                while (fields.hasNext()) {
+                    Map.Entry<String, JsonNode> param = fields.next();
+                    key.append(separator).append(param.getKey()).append('=').append(param.getValue().asText());
+                    separator = ", ";
+                }
+                key.append(']');
+            }
+            key.append(" t=").append(result.get("threads").asInt());
+            results.put(key.toString(), result);
+        }
+        return results;
+    }
+
+    private static double error(JsonNode metric) {
+        double error = metric.path("scoreError").asDouble(0);
+        return Double.isNaN(error) ? 0 : error;
+    }
+}
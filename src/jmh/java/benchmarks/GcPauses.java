@@ -0,0 +1,178 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.sun.management.GarbageCollectionNotificationInfo;
+import entities.User;
+import org.HdrHistogram.Histogram;
+import services.UserService;
+import services.store.UserRepository;
+
+import javax.management.NotificationEmitter;
+import javax.management.openmbean.CompositeData;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GC pauses and allocation rate per storage engine under a read-mostly load on a large table:
+ * <pre>
+ * GcPauses [users] [seconds] [service|repository] [store...]
+ * </pre>
+ * Every store runs in a JVM of its own, started with this JVM's options, so pass the heap size and collector to
+ * compare under, e.g. {@code java -Xms4g -Xmx4g -XX:+UseG1GC -cp ... benchmarks.GcPauses 2000000 30}. The load
+ * loops over {@code GET user/{id}} serialized to JSON, with one update in ten, and reports operation latency,
+ * young and old collections with their pauses, the allocation rate, and one full GC timed at the end, which is
+ * the pause whose length grows with the retained heap. "service" runs it against {@link UserService}, whose
+ * secondary indexes stay on the heap whatever the store; "repository" against the bare storage engine.
+ */
+public final class GcPauses {
+
+    private GcPauses() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int users = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        long seconds = args.length > 1 ? Long.parseLong(args[1]) : 20;
+        boolean service = args.length <= 2 || args[2].equals("service");
+        if (args.length == 4 && System.getProperty(GcPauses.class.getName()) != null) {
+            run(args[3], users, seconds, service);
+            return;
+        }
+        List<String> stores = args.length > 3 ? Arrays.asList(args).subList(3, args.length)
+                : Arrays.asList("hash", "compact", "offheap");
+        System.out.printf("%d users, %d s, %s, %s%n", users, seconds, service ? "service" : "repository",
+                ManagementFactory.getRuntimeMXBean().getInputArguments());
+        System.out.printf("%-8s %9s %7s %7s %7s %6s %8s %6s %8s %8s %9s %8s%n", "store", "ops/s", "p50 us",
+                "p99 us", "p99.9 us", "young", "young ms", "old", "old ms", "max ms", "alloc MB/s", "full ms");
+        for (String store : stores) {
+            List<String> command = new ArrayList<>();
+            command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.addAll(Arrays.asList("-D" + GcPauses.class.getName(), "-cp", System.getProperty("java.class.path"),
+                    GcPauses.class.getName(), Integer.toString(users), Long.toString(seconds),
+                    service ? "service" : "repository", store));
+            Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                for (String line = output.readLine(); line != null; line = output.readLine()) {
+                    System.out.println(line);
+                }
+            }
+            process.waitFor();
+        }
+    }
+
+    private static void run(String store, int users, long seconds, boolean service) throws Exception {
+        UserRepository repository = Users.repository(store, users);
+        UserService userService = service ? Users.service(repository, users) : null;
+        if (!service) {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            for (long id = 1; id <= users; id++) {
+                repository.save(new User(id, Users.name(random), new String(Users.ROLES[random.nextInt(4)]), random.nextBoolean(), id));
+            }
+        }
+        ObjectWriter writer = new ObjectMapper().writerFor(User.class);
+        System.gc();
+
+        Pauses pauses = new Pauses();
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            ((NotificationEmitter) collector).addNotificationListener((notification, handback) -> {
+                if (notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                    pauses.record(GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData()));
+                }
+            }, null, null);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        Histogram latencies = new Histogram(TimeUnit.SECONDS.toNanos(10), 3);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds) / 5;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        long allocatedBefore = 0;
+        long started = 0;
+        long operations = 0;
+        boolean warm = false;
+        for (long now = System.nanoTime(); now < end; ) {
+            long id = 1 + random.nextInt(users);
+            if (random.nextInt(10) != 0) {
+                writer.writeValueAsBytes(service ? userService.getUserWithId(id) : repository.findById(id));
+            } else if (service) {
+                userService.updateUser(new User(id, Users.name(random), Users.ROLES[random.nextInt(4)], random.nextBoolean()));
+            } else {
+                repository.save(new User(id, Users.name(random), Users.ROLES[random.nextInt(4)], random.nextBoolean(), id));
+            }
+            long finished = System.nanoTime();
+            if (!warm && finished >= warmupEnd) {
+                warm = true;
+                pauses.reset();
+                allocatedBefore = threads.getThreadAllocatedBytes(thread);
+                started = finished;
+            } else if (warm) {
+                latencies.recordValue(Math.min(finished - now, latencies.getHighestTrackableValue()));
+                operations++;
+            }
+            now = finished;
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+        long allocated = threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+        Pauses measured = pauses.copy();
+
+        long fullStart = System.nanoTime();
+        System.gc();
+        long fullMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - fullStart);
+
+        System.out.printf("%-8s %9.0f %7.1f %7.1f %7.1f %6d %8d %6d %8d %8d %9.1f %8d%n", store, operations / elapsed,
+                latencies.getValueAtPercentile(50) / 1e3, latencies.getValueAtPercentile(99) / 1e3,
+                latencies.getValueAtPercentile(99.9) / 1e3, measured.young, measured.youngMillis, measured.old,
+                measured.oldMillis, measured.maxMillis, allocated / elapsed / (1 << 20), fullMillis);
+        if (repository.count() < 0) {
+            System.out.print("");
+        }
+    }
+
+    /**
+     * Collections reported by the collectors; young and old are told apart by the collector's action.
+     */
+    private static final class Pauses {
+        long young;
+        long youngMillis;
+        long old;
+        long oldMillis;
+        long maxMillis;
+
+        synchronized void record(GarbageCollectionNotificationInfo info) {
+            long duration = info.getGcInfo().getDuration();
+            if (info.getGcAction().contains("minor")) {
+                young++;
+                youngMillis += duration;
+            } else {
+                old++;
+                oldMillis += duration;
+            }
+            maxMillis = Math.max(maxMillis, duration);
+        }
+
+        synchronized void reset() {
+            young = youngMillis = old = oldMillis = maxMillis = 0;
+        }
+
+        synchronized Pauses copy() {
+            Pauses copy = new Pauses();
+            copy.young = young;
+            copy.youngMillis = youngMillis;
+            copy.old = old;
+            copy.oldMillis = oldMillis;
+            copy.maxMillis = maxMillis;
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package benchmarks;
+
+import controllers.GreetingController;
+import entities.Greeting;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /greeting handler throughput: {@code String.format} with one shared {@link AtomicLong} (the previous
+ * implementation) versus the controller's precompiled template and per-thread id blocks. Contention only shows
+ * with threads, so run it at several thread counts, e.g. {@code -t 1}, {@code -t 8}, {@code -t 64}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GreetingBenchmark {
+
+    private final GreetingController controller = new GreetingController();
+    private final AtomicLong counter = new AtomicLong();
+
+    @Benchmark
+    public Greeting formatAndSharedCounter() {
+        return new Greeting(counter.incrementAndGet(), String.format("Hello %s", "World"));
+    }
+
+    @Benchmark
+    public Greeting templateAndIdBlocks() {
+        return controller.greeting("World");
+    }
+}
@@ -0,0 +1,66 @@
+package benchmarks;
+
+import entities.User;
+import services.UserService;
+import services.store.CompactUserRepository;
+import services.store.HashUserRepository;
+import services.store.OffHeapUserRepository;
+import services.store.UserRepository;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Retained heap per user for each storage engine, measured as used heap after full GCs:
+ * <pre>
+ * HeapFootprint [users]
+ * </pre>
+ * Roles are copied per user the way request bodies deserialize them, so the hash engine holds one role string each.
+ * "service" adds the secondary indexes of {@link UserService} on top of the repository. The off-heap engine's
+ * records are not on the heap at all; what it retains there is its id table and role dictionary.
+ */
+public final class HeapFootprint {
+
+    private HeapFootprint() {
+    }
+
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+        System.out.printf("%d users, bytes per user%n", size);
+        measure("hash repository", size, () -> fill(new HashUserRepository(size), size));
+        measure("compact repository", size, () -> fill(new CompactUserRepository(size), size));
+        measure("offheap repository", size, () -> fill(new OffHeapUserRepository(size), size));
+        measure("hash service", size, () -> new UserService(fill(new HashUserRepository(size), size)));
+        measure("compact service", size, () -> new UserService(fill(new CompactUserRepository(size), size)));
+        measure("offheap service", size, () -> new UserService(fill(new OffHeapUserRepository(size), size)));
+    }
+
+    private static UserRepository fill(UserRepository repository, int size) {
+        Random random = new Random(42);
+        for (long id = 1; id <= size; id++) {
+            User user = Users.random(random, id);
+            repository.save(new User(id, user.getUserName(), new String(user.getRole()), user.isActive(), id));
+        }
+        return repository;
+    }
+
+    private static void measure(String label, int size, Supplier<Object> build) {
+        long before = usedAfterGc();
+        Object retained = build.get();
+        long after = usedAfterGc();
+        System.out.printf("%-20s %6.1f%n", label, (after - before) / (double) size);
+        if (retained.hashCode() == 42) {
+            System.out.print("");
+        }
+    }
+
+    private static long usedAfterGc() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,81 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import controllers.UserJsonHttpMessageConverter;
+import entities.User;
+import entities.UserWithLinks;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.Link;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.http.MockHttpOutputMessage;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jackson cost of the response bodies: a {@link User}, a {@link UserWithLinks} with the four links of
+ * v2/user/{value} and reading a request body; plus a user response written by the Jackson message converter
+ * versus from the bytes cached by {@link UserJsonHttpMessageConverter}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter userWriter = objectMapper.writerFor(User.class);
+    private final ObjectWriter linksWriter = objectMapper.writerFor(UserWithLinks.class);
+    private final ObjectReader userReader = objectMapper.readerFor(User.class);
+    private final UserJsonHttpMessageConverter converter = new UserJsonHttpMessageConverter(objectMapper);
+    private final MappingJackson2HttpMessageConverter jacksonConverter = new MappingJackson2HttpMessageConverter(objectMapper);
+
+    private User user;
+    private UserWithLinks userWithLinks;
+    private byte[] userJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        user = new User(42, "Vitalii", "Chief", true, 7);
+        userWithLinks = new UserWithLinks(user);
+        userWithLinks.add(new Link("http://localhost/v2/user/42"));
+        userWithLinks.add(new Link("http://localhost/user/42/org", "Get users organization"));
+        userWithLinks.add(new Link("http://localhost/v2/user/", "Update with PUT method"));
+        userWithLinks.add(new Link("http://localhost/v2/user/", "Delete with DELETE method"));
+        userJson = userWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] writeUser() throws IOException {
+        return userWriter.writeValueAsBytes(user);
+    }
+
+    @Benchmark
+    public byte[] writeUserWithLinks() throws IOException {
+        return linksWriter.writeValueAsBytes(userWithLinks);
+    }
+
+    @Benchmark
+    public User readUser() throws IOException {
+        return userReader.readValue(userJson);
+    }
+
+    @Benchmark
+    public MockHttpOutputMessage jacksonConverter() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        jacksonConverter.write(user, MediaType.APPLICATION_JSON_UTF8, message);
+        return message;
+    }
+
+    @Benchmark
+    public MockHttpOutputMessage cachedConverter() throws IOException {
+        MockHttpOutputMessage message = new MockHttpOutputMessage();
+        converter.write(user, MediaType.APPLICATION_JSON_UTF8, message);
+        return message;
+    }
+}
@@ -0,0 +1,162 @@
+package benchmarks;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop HTTP load against a running instance, for comparing execution modes end to end:
+ * <pre>
+ * LoadTest &lt;baseUrl&gt; &lt;connections&gt; &lt;seconds&gt; &lt;writePercent&gt; [users] [scrapers]
+ * </pre>
+ * Each connection loops over {@code GET user/{id}} and, for {@code writePercent} of requests,
+ * {@code PUT v2/user/}. With {@code users.wal.enabled=true} writes block on their fsync, which is what ties up
+ * Tomcat worker threads. The first fifth of the run is warmup and not recorded. Closed-loop, so latencies
+ * understate queueing under overload.
+ * <p>
+ * {@code scrapers} extra connections alternate {@code GET user/all} and {@code GET user/{id}} as fast as they can,
+ * all under one {@code X-Client-Id}, while every regular connection has an id of its own; run the server with
+ * {@code admission.enabled=true} and {@code admission.client-header=X-Client-Id} to see them limited.
+ */
+public final class LoadTest {
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args[0];
+        int connections = Integer.parseInt(args[1]);
+        long seconds = Long.parseLong(args[2]);
+        int writePercent = Integer.parseInt(args[3]);
+        int users = args.length > 4 ? Integer.parseInt(args[4]) : 6;
+        int scrapers = args.length > 5 ? Integer.parseInt(args[5]) : 0;
+
+        Recorder reads = new Recorder(TimeUnit.MINUTES.toNanos(1), 2);
+        Recorder writes = new Recorder(TimeUnit.MINUTES.toNanos(1), 2);
+        Recorder scrapes = new Recorder(TimeUnit.MINUTES.toNanos(1), 2);
+        AtomicLong errors = new AtomicLong();
+        AtomicLong rateLimited = new AtomicLong();
+        AtomicLong shed = new AtomicLong();
+        AtomicLong scrapesRefused = new AtomicLong();
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds) / 5;
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+
+        List<Thread> threads = new ArrayList<>(connections + scrapers);
+        for (int c = 0; c < connections; c++) {
+            String client = "client-" + c;
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    long id = 1 + random.nextInt(users);
+                    boolean write = random.nextInt(100) < writePercent;
+                    long start = System.nanoTime();
+                    int status = write
+                            ? request("PUT", baseUrl + "/v2/user/", client, "{\"id\":" + id + ",\"userName\":\"User" + id
+                            + "\",\"role\":\"Chief\",\"active\":true}")
+                            : request("GET", baseUrl + "/user/" + id, client, null);
+                    long now = System.nanoTime();
+                    if (start < warmupEnd) {
+                        continue;
+                    }
+                    if (status == 429) {
+                        rateLimited.incrementAndGet();
+                    } else if (status == 503) {
+                        shed.incrementAndGet();
+                    } else if (status < 0 || status >= 400) {
+                        errors.incrementAndGet();
+                    }
+                    (write ? writes : reads).recordValue(Math.min(now - start, TimeUnit.MINUTES.toNanos(1)));
+                }
+            }, "load-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        for (int c = 0; c < scrapers; c++) {
+            Thread thread = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; System.nanoTime() < end; n++) {
+                    String path = n % 2 == 0 ? "/user/all" : "/user/" + (1 + random.nextInt(users));
+                    long start = System.nanoTime();
+                    int status = request("GET", baseUrl + path, "scraper", null);
+                    long now = System.nanoTime();
+                    if (start < warmupEnd) {
+                        continue;
+                    }
+                    if (status == 429 || status == 503) {
+                        scrapesRefused.incrementAndGet();
+                    }
+                    scrapes.recordValue(Math.min(now - start, TimeUnit.MINUTES.toNanos(1)));
+                }
+            }, "scrape-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double measured = seconds * 0.8;
+        Histogram readHistogram = reads.getIntervalHistogram();
+        Histogram writeHistogram = writes.getIntervalHistogram();
+        System.out.printf("%s, %d connections, %d%% writes, %.0fs measured%n", baseUrl, connections, writePercent, measured);
+        System.out.printf("throughput %.0f req/s, errors %d, rate limited %d, shed %d%n",
+                (readHistogram.getTotalCount() + writeHistogram.getTotalCount()) / measured, errors.get(),
+                rateLimited.get(), shed.get());
+        print("reads ", readHistogram);
+        print("writes", writeHistogram);
+        if (scrapers > 0) {
+            Histogram scrapeHistogram = scrapes.getIntervalHistogram();
+            System.out.printf("%d scrapers %.0f req/s, refused %d%n", scrapers,
+                    scrapeHistogram.getTotalCount() / measured, scrapesRefused.get());
+            print("scrape", scrapeHistogram);
+        }
+    }
+
+    private static void print(String label, Histogram histogram) {
+        System.out.printf("%s n=%d p50=%.1fms p99=%.1fms p999=%.1fms max=%.1fms%n", label, histogram.getTotalCount(),
+                histogram.getValueAtPercentile(50) / 1e6, histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6, histogram.getMaxValue() / 1e6);
+    }
+
+    /**
+     * @return the status, or {@code -1} if the request failed
+     */
+    private static int request(String method, String url, String client, String body) {
+        try {
+            HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+            connection.setRequestMethod(method);
+            connection.setRequestProperty("X-Client-Id", client);
+            connection.setConnectTimeout(10000);
+            connection.setReadTimeout(60000);
+            if (body != null) {
+                connection.setDoOutput(true);
+                connection.setRequestProperty("Content-Type", "application/json");
+                try (OutputStream out = connection.getOutputStream()) {
+                    out.write(body.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+            int status = connection.getResponseCode();
+            try (InputStream in = status < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[4096];
+                    while (in.read(buffer) >= 0) {
+                        // drain, so the connection is kept alive
+                    }
+                }
+            }
+            return status;
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import configs.CacheConfig;
+import configs.WebConfig;
+import controllers.GreetingController;
+import controllers.UserController;
+import exceptions.advice.ControllerExceptionHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import org.springframework.web.servlet.config.annotation.EnableWebMvc;
+import services.UserService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+/**
+ * Whole request path in-process: {@code DispatcherServlet}, handler mapping, argument resolution, caching proxy,
+ * controller, message conversion. Wired like the application, minus Tomcat and the network. The path is deep, so it
+ * gets a longer warmup than the other suites.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class MvcBenchmark {
+
+    @Param({"10000"})
+    private int size;
+
+    private GenericWebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        context = new GenericWebApplicationContext(new MockServletContext());
+        new AnnotatedBeanDefinitionReader(context).register(MvcConfig.class);
+        context.registerBean(UserService.class, () -> Users.service(size));
+        context.refresh();
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult getUser() throws Exception {
+        return mockMvc.perform(get("/user/{value}", randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getMissingUser() throws Exception {
+        return mockMvc.perform(get("/user/{value}", size + randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getUserLinks() throws Exception {
+        return mockMvc.perform(get("/v2/user/{value}", randomId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult getPage() throws Exception {
+        return mockMvc.perform(get("/v2/user/all").param("limit", "100")).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult updateUser() throws Exception {
+        long id = randomId();
+        return mockMvc.perform(put("/v2/user/").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content("{\"id\":" + id + ",\"userName\":\"User" + id + "\",\"role\":\"Chief\",\"active\":true}"))
+                .andReturn();
+    }
+
+    @Benchmark
+    public MvcResult greeting() throws Exception {
+        return mockMvc.perform(get("/greeting").param("name", "World")).andReturn();
+    }
+
+    private long randomId() {
+        return 1 + ThreadLocalRandom.current().nextInt(size);
+    }
+
+    @Configuration
+    @EnableWebMvc
+    @Import({CacheConfig.class, WebConfig.class})
+    static class MvcConfig {
+
+        @Bean
+        public CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager(UserService.USERS_CACHE);
+            cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(10000).expireAfterWrite(60, TimeUnit.SECONDS));
+            return cacheManager;
+        }
+
+        @Bean
+        public ObjectMapper objectMapper() {
+            return new ObjectMapper();
+        }
+
+        @Bean
+        public UserController userController() {
+            return new UserController();
+        }
+
+        @Bean
+        public GreetingController greetingController() {
+            return new GreetingController();
+        }
+
+        @Bean
+        public ControllerExceptionHandler controllerExceptionHandler() {
+            return new ControllerExceptionHandler();
+        }
+    }
+}
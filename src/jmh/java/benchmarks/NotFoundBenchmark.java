@@ -0,0 +1,88 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.AnnotatedBeanDefinitionReader;
+import org.springframework.http.MediaType;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.support.GenericWebApplicationContext;
+import services.UserService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+
+/**
+ * Probing unknown ids through the whole request path: the lookup that throws {@code NoSuchElementException} for the
+ * controller advice to turn into an error body, against {@code user/{value}}, which answers from
+ * {@code UserService.findUser} with a prebuilt 404. {@code found} is the same request for an existing user.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+public class NotFoundBenchmark {
+
+    private static final int SIZE = 10000;
+
+    private GenericWebApplicationContext context;
+    private MockMvc mockMvc;
+
+    @Setup
+    public void setUp() {
+        context = new GenericWebApplicationContext(new MockServletContext());
+        new AnnotatedBeanDefinitionReader(context).register(MvcBenchmark.MvcConfig.class, ExceptionPathController.class);
+        context.registerBean(UserService.class, () -> Users.service(SIZE));
+        context.refresh();
+        mockMvc = MockMvcBuilders.webAppContextSetup(context).build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public MvcResult exceptionPath() throws Exception {
+        return mockMvc.perform(get("/exception/user/{value}", missingId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult resultPath() throws Exception {
+        return mockMvc.perform(get("/user/{value}", missingId())).andReturn();
+    }
+
+    @Benchmark
+    public MvcResult found() throws Exception {
+        return mockMvc.perform(get("/user/{value}", 1 + ThreadLocalRandom.current().nextInt(SIZE))).andReturn();
+    }
+
+    /**
+     * Spread over more ids than the user cache holds, as a scanner's probes would be.
+     */
+    private static long missingId() {
+        return SIZE + 1 + ThreadLocalRandom.current().nextInt(1000000);
+    }
+
+    @RestController
+    public static class ExceptionPathController {
+
+        @Autowired
+        private UserService userService;
+
+        @GetMapping(value = "exception/user/{value}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+        public User getUser(@PathVariable long value) {
+            return userService.getUserWithId(value);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+import services.store.HashUserRepository;
+import services.store.UserJournal;
+
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write throughput of {@link UserService} by number of shards, one writer thread per CPU. Compare the shard counts
+ * at {@code -t 1}, {@code -t 2}, ... up to the core count: with one shard throughput stays flat as writers are
+ * added, with one shard per writer it grows with them until the in-order journal and change log append, the one
+ * serial step of a write, saturates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(Threads.MAX)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class ShardedWriteBenchmark {
+
+    private static final int SIZE = 100000;
+
+    @Param({"1", "8", "32"})
+    private int shards;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        userService = new UserService(new HashUserRepository(SIZE), UserJournal.NONE, shards);
+        Random random = new Random(42);
+        for (long id = userService.getAllUsers().size() + 1; id <= SIZE; id++) {
+            userService.createUser(Users.random(random, id));
+        }
+    }
+
+    @Benchmark
+    public User update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = 1 + random.nextInt(SIZE);
+        return userService.updateUser(new User(id, "User" + id, Users.ROLES[random.nextInt(4)], random.nextBoolean()));
+    }
+
+    /**
+     * Create and delete in one operation, so the table keeps its size across iterations.
+     */
+    @Benchmark
+    public long createAndDelete() {
+        User created = userService.createUser(new User(0, "Created", "Developer", true));
+        userService.deleteUser(created.getUserId());
+        return created.getUserId();
+    }
+}
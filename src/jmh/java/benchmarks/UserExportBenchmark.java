@@ -0,0 +1,96 @@
+package benchmarks;
+
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.core.JsonGenerator;
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+import services.store.HashUserRepository;
+import services.store.UserColumns;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moving 1M users between two services: the NDJSON stream of {@code GET user/all} read back one create per record,
+ * versus the {@link UserColumns} export read back by the bulk import.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class UserExportBenchmark {
+
+    private static final int SIZE = 1000000;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ObjectWriter writer = objectMapper.writerFor(User.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
+    private UserService source;
+    private UserService target;
+    private byte[] json;
+    private byte[] columns;
+
+    @Setup(Level.Trial)
+    public void populate() throws IOException {
+        source = Users.service(SIZE);
+        json = exportJson().toByteArray();
+        columns = exportColumns().toByteArray();
+        System.out.printf("%nNDJSON %d bytes, columnar %d bytes%n", json.length, columns.length);
+    }
+
+    @Setup(Level.Invocation)
+    public void emptyTarget() {
+        target = new UserService(new HashUserRepository(SIZE));
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream exportJson() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 << 20);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            source.forEachUser(null, null, user -> {
+                try {
+                    writer.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        return out;
+    }
+
+    @Benchmark
+    public ByteArrayOutputStream exportColumns() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 << 20);
+        try (UserColumns.Writer columnWriter = new UserColumns.Writer(out)) {
+            source.exportUsers(columnWriter);
+        }
+        return out;
+    }
+
+    @Benchmark
+    public UserService importJson() throws IOException {
+        try (MappingIterator<User> users = objectMapper.readerFor(User.class).readValues(new ByteArrayInputStream(json))) {
+            while (users.hasNextValue()) {
+                target.createUser(users.nextValue());
+            }
+        }
+        return target;
+    }
+
+    @Benchmark
+    public UserService importColumns() throws IOException {
+        target.importUsers(new UserColumns.Reader(new ByteArrayInputStream(columns)));
+        return target;
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import controllers.LinkTemplate;
+import controllers.UserController;
+import entities.User;
+import entities.UserWithLinks;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
+/**
+ * The four links of v2/user/{value}: {@code linkTo(methodOn(...))} per link versus templates resolved once.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserLinksBenchmark {
+
+    private static final LinkTemplate SELF =
+            LinkTemplate.to(methodOn(UserController.class).getUserLinks(0), Link.REL_SELF);
+    private static final LinkTemplate ORGANIZATION =
+            LinkTemplate.to(methodOn(UserController.class).getUserOrg(0), "Get users organization");
+    private static final LinkTemplate UPDATE =
+            LinkTemplate.to(methodOn(UserController.class).updateUser(null), "Update with PUT method");
+    private static final LinkTemplate DELETE =
+            LinkTemplate.to(methodOn(UserController.class).updateUser(null), "Delete with DELETE method");
+
+    private final User user = new User(42, "Vitalii", "Chief", true);
+
+    @Setup
+    public void setUp() {
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(
+                new MockHttpServletRequest("GET", "/v2/user/42")));
+    }
+
+    @Benchmark
+    public UserWithLinks methodOnProxies() {
+        long value = user.getUserId();
+        UserWithLinks linkedUser = new UserWithLinks(user);
+        linkedUser.add(linkTo(methodOn(UserController.class).getUserLinks(value)).withSelfRel());
+        linkedUser.add(linkTo(methodOn(UserController.class).getUserOrg(value)).withRel("Get users organization"));
+        linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Update with PUT method"));
+        linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Delete with DELETE method"));
+        return linkedUser;
+    }
+
+    @Benchmark
+    public UserWithLinks linkTemplates() {
+        long value = user.getUserId();
+        String baseUri = LinkTemplate.baseUri(UserController.class);
+        UserWithLinks linkedUser = new UserWithLinks(user);
+        linkedUser.add(SELF.expand(baseUri, value));
+        linkedUser.add(ORGANIZATION.expand(baseUri, value));
+        linkedUser.add(UPDATE.expand(baseUri));
+        linkedUser.add(DELETE.expand(baseUri));
+        return linkedUser;
+    }
+}
@@ -0,0 +1,42 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * v2/user/all: sorting on every read (the previous implementation) versus walking the maintained name index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class UserListBenchmark {
+
+    @Param({"10000", "1000000"})
+    private int size;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        userService = Users.service(size);
+    }
+
+    @Benchmark
+    public List<User> sortOnRead() {
+        return userService.getAllUsers().stream().sorted(Comparator.comparing(User::getUserName)).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<User> nameIndex() {
+        return userService.getAllUsersV2();
+    }
+}
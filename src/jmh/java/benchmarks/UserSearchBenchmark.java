@@ -0,0 +1,41 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * user/search over 1M users with random names, at most 20 results per query. Prefix queries of one to four letters
+ * ({@code "k"} matches about 38k names, {@code "zzyq"} about two); substring queries whose trigrams are common
+ * ({@code "ana"}), rare ({@code "qzx"}) or jointly rare ({@code "xqzv"}).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+public class UserSearchBenchmark {
+
+    @Param({"prefix:k", "prefix:kat", "prefix:zzyq", "substring:ana", "substring:qzx", "substring:xqzv"})
+    private String query;
+
+    private UserService userService;
+    private boolean substring;
+    private String text;
+
+    @Setup
+    public void setUp() {
+        userService = Users.service(1000000);
+        substring = query.startsWith("substring:");
+        text = query.substring(query.indexOf(':') + 1);
+    }
+
+    @Benchmark
+    public List<User> search() {
+        return userService.searchUsers(text, substring, 20);
+    }
+}
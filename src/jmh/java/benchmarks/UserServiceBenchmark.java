@@ -0,0 +1,69 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Core {@link UserService} operations on the deterministic data set of {@link Users}, per storage engine. Add
+ * {@code -p size=1000000} for the large table; its setup takes a while. With {@code -prof gc} the
+ * {@code gc.alloc.rate.norm} column shows what each engine allocates per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    @Param({"hash", "compact", "offheap"})
+    private String store;
+
+    private UserService userService;
+
+    @Setup
+    public void setUp() {
+        userService = Users.service(Users.repository(store, size), size);
+    }
+
+    @Benchmark
+    public User get() {
+        return userService.getUserWithId(1 + ThreadLocalRandom.current().nextInt(size));
+    }
+
+    @Benchmark
+    public User update() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long id = 1 + random.nextInt(size);
+        return userService.updateUser(new User(id, "User" + id, Users.ROLES[random.nextInt(4)], random.nextBoolean()));
+    }
+
+    /**
+     * Create and delete in one operation, so the table keeps its size across iterations.
+     */
+    @Benchmark
+    public long createAndDelete() {
+        User created = userService.createUser(new User(0, "Created", "Developer", true));
+        userService.deleteUser(created.getUserId());
+        return created.getUserId();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public List<User> sortedList() {
+        return userService.getAllUsersV2();
+    }
+
+    @Benchmark
+    public List<User> page() {
+        return userService.getUserPageV2(null, Long.MIN_VALUE, 100, null, null);
+    }
+}
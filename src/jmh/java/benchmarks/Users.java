@@ -0,0 +1,60 @@
+package benchmarks;
+
+import entities.User;
+import services.UserService;
+import services.store.CompactUserRepository;
+import services.store.HashUserRepository;
+import services.store.OffHeapUserRepository;
+import services.store.UserRepository;
+
+import java.util.Random;
+
+/**
+ * Deterministic data sets shared by the benchmarks, so runs on different commits measure the same input.
+ */
+final class Users {
+
+    static final String[] ROLES = {"Chief", "Developer", "Manager", "Homeless"};
+
+    private Users() {
+    }
+
+    static User random(Random random, long id) {
+        return new User(id, name(random), ROLES[random.nextInt(ROLES.length)], random.nextBoolean());
+    }
+
+    static String name(Random random) {
+        char[] name = new char[5 + random.nextInt(8)];
+        name[0] = (char) ('A' + random.nextInt(26));
+        for (int i = 1; i < name.length; i++) {
+            name[i] = (char) ('a' + random.nextInt(26));
+        }
+        return new String(name);
+    }
+
+    static UserRepository repository(String store, int size) {
+        switch (store) {
+            case "hash":
+                return new HashUserRepository(size);
+            case "compact":
+                return new CompactUserRepository(size);
+            case "offheap":
+                return new OffHeapUserRepository(size);
+            default:
+                throw new IllegalArgumentException("Unknown store " + store);
+        }
+    }
+
+    static UserService service(int size) {
+        return service(new HashUserRepository(size), size);
+    }
+
+    static UserService service(UserRepository repository, int size) {
+        UserService userService = new UserService(repository);
+        Random random = new Random(42);
+        for (long id = userService.getAllUsers().size() + 1; id <= size; id++) {
+            userService.createUser(random(random, id));
+        }
+        return userService;
+    }
+}
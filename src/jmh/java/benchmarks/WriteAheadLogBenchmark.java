@@ -0,0 +1,126 @@
+package benchmarks;
+
+import entities.User;
+import org.openjdk.jmh.annotations.*;
+import services.UserService;
+import services.store.HashUserRepository;
+import services.store.UserJournal;
+import services.store.WriteAheadLog;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Cost of durability: user updates without a journal, with the log written but not awaited, and with every
+ * writer waiting for its group fsync. Run with {@code -t 8} to see concurrent writers share one fsync.
+ * {@link Recovery} measures a restart over 1M users: a snapshot plus a log tail of 100k records.
+ */
+public class WriteAheadLogBenchmark {
+
+    private static final int USERS = 10000;
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Fork(value = 1, jvmArgs = {"-Xms1g", "-Xmx1g"})
+    public static class Append {
+
+        @Param({"none", "unsynced", "fsync"})
+        private String journal;
+
+        private Path directory;
+        private WriteAheadLog log;
+        private UserService userService;
+
+        @Setup
+        public void setUp() throws IOException {
+            UserJournal userJournal = UserJournal.NONE;
+            if (!journal.equals("none")) {
+                directory = Files.createTempDirectory("wal-bench");
+                log = new WriteAheadLog(directory, 64 << 20, 0, journal.equals("fsync"), 100000);
+                userJournal = log;
+            }
+            userService = new UserService(new HashUserRepository(USERS), userJournal);
+            Random random = new Random(42);
+            for (long id = userService.getAllUsers().size() + 1; id <= USERS; id++) {
+                userService.createUser(Users.random(random, id));
+            }
+        }
+
+        @TearDown
+        public void tearDown() throws IOException {
+            if (log != null) {
+                log.close();
+                delete(directory);
+            }
+        }
+
+        @Benchmark
+        public User update() {
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long id = 1 + random.nextInt(USERS);
+            return userService.updateUser(new User(id, "User" + id, Users.ROLES[random.nextInt(4)], random.nextBoolean()));
+        }
+    }
+
+    @State(Scope.Benchmark)
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @Fork(value = 1, jvmArgs = {"-Xms3g", "-Xmx3g"})
+    public static class Recovery {
+
+        private static final int SIZE = 1000000;
+        private static final int TAIL = 100000;
+
+        private Path directory;
+        private WriteAheadLog log;
+
+        @Setup(Level.Trial)
+        public void populate() throws IOException {
+            directory = Files.createTempDirectory("wal-bench");
+            WriteAheadLog writer = new WriteAheadLog(directory, 64 << 20, 1, false, 0);
+            UserService userService = new UserService(new HashUserRepository(SIZE), writer);
+            Random random = new Random(42);
+            for (long id = userService.getAllUsers().size() + 1; id <= SIZE - TAIL; id++) {
+                userService.createUser(Users.random(random, id));
+            }
+            writer.snapshot();
+            for (long id = SIZE - TAIL + 1; id <= SIZE; id++) {
+                userService.createUser(Users.random(random, id));
+            }
+            writer.close();
+        }
+
+        @TearDown(Level.Iteration)
+        public void close() {
+            log.close();
+        }
+
+        @TearDown(Level.Trial)
+        public void cleanUp() throws IOException {
+            delete(directory);
+        }
+
+        @Benchmark
+        public UserService recover() {
+            log = new WriteAheadLog(directory, 64 << 20, 1, false, 0);
+            return new UserService(new HashUserRepository(SIZE), log);
+        }
+    }
+
+    private static void delete(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
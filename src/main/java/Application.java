@@ -8,7 +8,7 @@ import java.util.Arrays;
 @SpringBootApplication
 //uncomment to get OAuth2
 //@EnableResourceServer
-@ComponentScan(basePackages = {"controllers", "services", "exceptions"})
+@ComponentScan(basePackages = {"configs", "controllers", "services", "exceptions"})
 public class Application {
     public static void main(String[] args) {
         SpringApplication.run(Application.class, args);
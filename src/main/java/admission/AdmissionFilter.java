@@ -0,0 +1,104 @@
+package admission;
+
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides, before any work is done, whether a request is served: a client over its rate gets a 429, and a request
+ * arriving while the server is at its concurrency limit gets a 503, both with {@code Retry-After} and no body.
+ * <p>
+ * Requests are served in three priorities. Mutations may use the whole concurrency limit, single reads
+ * {@value #READ_SHARE} of it and bulk list reads {@value #BULK_SHARE}, so under overload bulk reads are shed
+ * first and mutations last. Bulk reads also cost a client more tokens.
+ */
+public class AdmissionFilter implements Filter {
+
+    static final double READ_SHARE = 0.9;
+    static final double BULK_SHARE = 0.5;
+
+    private final ClientRateLimiter rateLimiter;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final String clientHeader;
+    private final Set<String> bulkPaths;
+    private final int bulkCost;
+    private final LongAdder rateLimited = new LongAdder();
+    private final LongAdder shed = new LongAdder();
+
+    /**
+     * @param rateLimiter  {@code null} to only limit concurrency
+     * @param clientHeader header naming the client, set by a trusted proxy; {@code null} to go by remote address
+     * @param bulkPaths    request URIs of bulk list reads
+     * @param bulkCost     tokens a bulk read takes
+     */
+    public AdmissionFilter(ClientRateLimiter rateLimiter, ConcurrencyLimiter concurrencyLimiter, String clientHeader,
+                           Set<String> bulkPaths, int bulkCost) {
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.clientHeader = clientHeader;
+        this.bulkPaths = bulkPaths;
+        this.bulkCost = bulkCost;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String method = httpRequest.getMethod();
+        boolean mutation = !method.equals("GET") && !method.equals("HEAD");
+        boolean bulk = !mutation && bulkPaths.contains(httpRequest.getRequestURI());
+        long start = System.nanoTime();
+        if (rateLimiter != null) {
+            long wait = rateLimiter.tryAcquire(client(httpRequest), bulk ? bulkCost : 1, start);
+            if (wait > 0) {
+                rateLimited.increment();
+                reject(httpResponse, 429, TimeUnit.NANOSECONDS.toSeconds(wait) + 1);
+                return;
+            }
+        }
+        if (!concurrencyLimiter.tryAcquire(mutation ? 1 : bulk ? BULK_SHARE : READ_SHARE)) {
+            shed.increment();
+            reject(httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE, 1);
+            return;
+        }
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            concurrencyLimiter.release(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    public long rateLimited() {
+        return rateLimited.sum();
+    }
+
+    public long shed() {
+        return shed.sum();
+    }
+
+    private String client(HttpServletRequest request) {
+        String client = clientHeader == null ? null : request.getHeader(clientHeader);
+        return client != null ? client : request.getRemoteAddr();
+    }
+
+    private static void reject(HttpServletResponse response, int status, long retryAfterSeconds) {
+        response.setStatus(status);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentLength(0);
+    }
+}
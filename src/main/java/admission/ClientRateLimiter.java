@@ -0,0 +1,112 @@
+package admission;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-client token buckets in a fixed-size table, so memory stays bounded however many clients show up. Each
+ * bucket is a single {@code long} updated by CAS: the generic cell rate algorithm keeps the theoretical arrival
+ * time of the client's next request instead of a token count and a refill timestamp.
+ * <p>
+ * Clients are identified by a 64-bit hash and placed by open addressing within a short probe window. A bucket
+ * whose arrival time has passed is full, and a full bucket is all a new client would get, so idle clients are
+ * evicted simply by taking over their slot. When every slot of the window is busy, the least limited client is
+ * evicted; it starts over with a full bucket on its next request, which is the bounded error of the table.
+ */
+public class ClientRateLimiter {
+
+    private static final int PROBES = 8;
+
+    private final AtomicLongArray clients;
+    private final AtomicLongArray arrivals;
+    private final int mask;
+    private final long interval;
+    private final long tolerance;
+    private final int burst;
+    /**
+     * Arrival times count from here, so an unused slot's {@code 0} is always in the past.
+     */
+    private final long origin = System.nanoTime();
+
+    /**
+     * @param capacity rounded up to a power of two
+     * @param burst    tokens a client can spend at once after being idle
+     */
+    public ClientRateLimiter(int capacity, double permitsPerSecond, int burst) {
+        int size = Integer.highestOneBit(Math.max(PROBES, capacity) * 2 - 1);
+        this.clients = new AtomicLongArray(size);
+        this.arrivals = new AtomicLongArray(size);
+        this.mask = size - 1;
+        this.interval = (long) (1e9 / permitsPerSecond);
+        this.tolerance = interval * burst;
+        this.burst = burst;
+    }
+
+    /**
+     * @param cost tokens to take, at most the burst
+     * @param nanoTime {@link System#nanoTime()}
+     * @return {@code 0} if the client had the tokens, otherwise nanoseconds until it will have them
+     */
+    public long tryAcquire(String client, int cost, long nanoTime) {
+        long now = nanoTime - origin;
+        int slot = slot(hash(client), now);
+        long increment = interval * Math.min(cost, burst);
+        for (;;) {
+            long arrival = arrivals.get(slot);
+            long next = Math.max(arrival, now) + increment;
+            long wait = next - now - tolerance;
+            if (wait > 0) {
+                return wait;
+            }
+            if (arrivals.compareAndSet(slot, arrival, next)) {
+                return 0;
+            }
+        }
+    }
+
+    private int slot(long client, long now) {
+        int home = (int) (client ^ client >>> 32) & mask;
+        for (;;) {
+            int victim = -1;
+            long victimClient = 0;
+            long victimArrival = Long.MAX_VALUE;
+            for (int i = 0; i < PROBES; i++) {
+                int slot = (home + i) & mask;
+                long owner = clients.get(slot);
+                if (owner == client) {
+                    return slot;
+                }
+                if (owner == 0) {
+                    if (clients.compareAndSet(slot, 0, client)) {
+                        return slot;
+                    }
+                    owner = clients.get(slot);
+                    if (owner == client) {
+                        return slot;
+                    }
+                }
+                long arrival = arrivals.get(slot);
+                if (arrival - now < victimArrival) {
+                    victim = slot;
+                    victimClient = owner;
+                    victimArrival = arrival - now;
+                }
+            }
+            if (clients.compareAndSet(victim, victimClient, client)) {
+                arrivals.set(victim, Math.min(arrivals.get(victim), now));
+                return victim;
+            }
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a, so distinct clients practically never share a bucket; {@code 0} marks a free slot.
+     */
+    private static long hash(String client) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < client.length(); i++) {
+            hash ^= client.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,80 @@
+package admission;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Adaptive cap on requests in flight, adjusted by additive increase, multiplicative decrease: a request that
+ * completes within the latency target while the limit is at least half used raises the limit by {@code 1/limit},
+ * about one per round of requests, and a slower one cuts it by {@code backoff}. Requests over the limit are
+ * refused at once rather than queued, so the requests that are admitted keep their latency.
+ * <p>
+ * Callers may claim only a share of the limit, which is how lower priority requests are shed first.
+ */
+public class ConcurrencyLimiter {
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    /**
+     * The limit as {@code double} bits, so increases can be fractional.
+     */
+    private final AtomicLong limit;
+    private final double minLimit;
+    private final double maxLimit;
+    private final long latencyTargetNanos;
+    private final double backoff;
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyTargetNanos, double backoff) {
+        this.limit = new AtomicLong(Double.doubleToRawLongBits(initialLimit));
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.latencyTargetNanos = latencyTargetNanos;
+        this.backoff = backoff;
+    }
+
+    /**
+     * @param share of the limit this request may use, {@code 0 < share <= 1}
+     * @return whether the request was admitted; if so, it must be {@link #release released}
+     */
+    public boolean tryAcquire(double share) {
+        int allowed = Math.max(1, (int) (limit() * share));
+        for (;;) {
+            int current = inFlight.get();
+            if (current >= allowed) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @param latencyNanos how long the admitted request took
+     */
+    public void release(long latencyNanos) {
+        int current = inFlight.getAndDecrement();
+        for (;;) {
+            long bits = limit.get();
+            double value = Double.longBitsToDouble(bits);
+            double next;
+            if (latencyNanos > latencyTargetNanos) {
+                next = Math.max(minLimit, value * backoff);
+            } else if (current * 2 >= value) {
+                next = Math.min(maxLimit, value + 1 / value);
+            } else {
+                return;
+            }
+            if (next == value || limit.compareAndSet(bits, Double.doubleToRawLongBits(next))) {
+                return;
+            }
+        }
+    }
+
+    public double limit() {
+        return Double.longBitsToDouble(limit.get());
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+}
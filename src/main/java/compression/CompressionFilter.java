@@ -0,0 +1,536 @@
+package compression;
+
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Compresses response bodies with {@code gzip} or {@code deflate}, whichever the client prefers in
+ * {@code Accept-Encoding}. Only bodies of a compressible content type that reach {@code minSize} bytes are
+ * compressed: the first {@code minSize} bytes are buffered, and a smaller body, or one declared smaller by its
+ * {@code Content-Length}, goes out unchanged. Compressors are pooled per encoding. Every response of a compressible
+ * content type carries {@code Vary: Accept-Encoding}, compressed or not.
+ * <p>
+ * A compressed body is another representation, so its ETag gets the encoding appended, {@code "7"} becoming
+ * {@code "7-gzip"}. The suffix is taken off the tags of {@code If-None-Match} and {@code If-Match} before the
+ * request goes on, so handlers compare their own tags, and put back on the ETag of a 304 for a compressed copy.
+ * <p>
+ * DEFLATE is the only codec the JDK ships; the {@code level} trades ratio for CPU, and the default of 1 keeps most
+ * of the ratio on JSON for a fraction of the CPU of the zlib default of 6.
+ */
+public class CompressionFilter implements Filter {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final List<String> SUFFIXES = Arrays.asList("-gzip", "-deflate");
+
+    private final int minSize;
+    private final Set<String> mimeTypes;
+    private final CompressorPool gzip;
+    private final CompressorPool deflate;
+
+    /**
+     * @param mimeTypes compressible content types, without parameters
+     * @param maxIdle   compressors kept per encoding; {@code 0} creates one per response
+     */
+    public CompressionFilter(int minSize, int level, Set<String> mimeTypes, int maxIdle) {
+        this.minSize = minSize;
+        this.mimeTypes = mimeTypes;
+        this.gzip = new CompressorPool(level, true, maxIdle);
+        this.deflate = new CompressorPool(level, false, maxIdle);
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        // without an encoding the response is still wrapped, for its Vary header
+        CompressorPool pool = "HEAD".equals(httpRequest.getMethod()) ? null
+                : negotiate(httpRequest.getHeader(HttpHeaders.ACCEPT_ENCODING));
+        String revalidated = encodingOf(httpRequest.getHeader(HttpHeaders.IF_NONE_MATCH));
+        if (revalidated != null || encodingOf(httpRequest.getHeader(HttpHeaders.IF_MATCH)) != null) {
+            httpRequest = new DecodedTagsRequest(httpRequest);
+        }
+        CompressingResponse compressing = new CompressingResponse(httpRequest, (HttpServletResponse) response, pool,
+                pool != null && encoding(pool).equals(revalidated));
+        try {
+            chain.doFilter(httpRequest, compressing);
+        } finally {
+            if (httpRequest.isAsyncStarted()) {
+                // written to from other threads until the async request completes
+                httpRequest.getAsyncContext().addListener(compressing);
+            } else {
+                compressing.finish();
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        gzip.clear();
+        deflate.clear();
+    }
+
+    /**
+     * @return the pool of the encoding with the highest q-value, gzip on a tie, or {@code null} for neither
+     */
+    CompressorPool negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        float gzipQuality = 0;
+        float deflateQuality = 0;
+        float anyQuality = 0;
+        for (String coding : acceptEncoding.split(",")) {
+            int semicolon = coding.indexOf(';');
+            String name = (semicolon < 0 ? coding : coding.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            float quality = semicolon < 0 ? 1 : quality(coding.substring(semicolon + 1));
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzipQuality = quality;
+            } else if (name.equals("deflate")) {
+                deflateQuality = quality;
+            } else if (name.equals("*")) {
+                anyQuality = quality;
+            }
+        }
+        if (gzipQuality == 0 && deflateQuality == 0) {
+            gzipQuality = anyQuality;
+        }
+        if (gzipQuality == 0 && deflateQuality == 0) {
+            return null;
+        }
+        return gzipQuality >= deflateQuality ? gzip : deflate;
+    }
+
+    private String encoding(CompressorPool pool) {
+        return pool == gzip ? "gzip" : "deflate";
+    }
+
+    /**
+     * @return the encoding of the first tag in the header with an encoding suffix, or {@code null} for none
+     */
+    private static String encodingOf(String tags) {
+        if (tags == null) {
+            return null;
+        }
+        for (String suffix : SUFFIXES) {
+            if (tags.contains(suffix + '"')) {
+                return suffix.substring(1);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * {@code "7"} with {@code encoding} becomes {@code "7-gzip"}, a weak tag keeps its {@code W/}.
+     */
+    private static String encodedTag(String tag, String encoding) {
+        int quote = tag.lastIndexOf('"');
+        return quote <= 0 ? tag : tag.substring(0, quote) + '-' + encoding + tag.substring(quote);
+    }
+
+    private static String decodedTags(String tags) {
+        for (String suffix : SUFFIXES) {
+            tags = tags.replace(suffix + '"', "\"");
+        }
+        return tags;
+    }
+
+    private static float quality(String parameters) {
+        String parameter = parameters.trim();
+        if (!parameter.startsWith("q=")) {
+            return 1;
+        }
+        try {
+            return Float.parseFloat(parameter.substring(2).trim());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The request with the encoding suffixes taken off its conditional tags.
+     */
+    private static final class DecodedTagsRequest extends HttpServletRequestWrapper {
+
+        DecodedTagsRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        private static boolean conditional(String name) {
+            return HttpHeaders.IF_NONE_MATCH.equalsIgnoreCase(name) || HttpHeaders.IF_MATCH.equalsIgnoreCase(name);
+        }
+
+        @Override
+        public String getHeader(String name) {
+            String value = super.getHeader(name);
+            return value != null && conditional(name) ? decodedTags(value) : value;
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            Enumeration<String> values = super.getHeaders(name);
+            if (!conditional(name)) {
+                return values;
+            }
+            List<String> decoded = new ArrayList<>();
+            while (values.hasMoreElements()) {
+                decoded.add(decodedTags(values.nextElement()));
+            }
+            return Collections.enumeration(decoded);
+        }
+    }
+
+    private final class CompressingResponse extends HttpServletResponseWrapper implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final CompressorPool pool;
+        /**
+         * The request revalidates a copy compressed with the encoding of {@link #pool}.
+         */
+        private final boolean revalidatesCompressed;
+        private CompressingStream stream;
+        private PrintWriter writer;
+        private boolean streamUsed;
+        private boolean varied;
+        private long contentLength = -1;
+
+        /**
+         * @param pool {@code null} if the client accepts neither encoding
+         */
+        CompressingResponse(HttpServletRequest request, HttpServletResponse response, CompressorPool pool,
+                            boolean revalidatesCompressed) {
+            super(response);
+            this.request = request;
+            this.pool = pool;
+            this.revalidatesCompressed = revalidatesCompressed;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (writer != null) {
+                throw new IllegalStateException("getWriter() has already been called");
+            }
+            streamUsed = true;
+            return stream();
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                if (streamUsed) {
+                    throw new IllegalStateException("getOutputStream() has already been called");
+                }
+                writer = new PrintWriter(new OutputStreamWriter(stream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        /*
+         * A declared length is held back until it is known whether the body gets compressed; a body declared
+         * shorter than minSize is passed through right away.
+         */
+
+        @Override
+        public void setContentLength(int length) {
+            setContentLengthLong(length);
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (pool == null || stream != null && stream.decided) {
+                if (stream == null || !stream.compressing) {
+                    super.setContentLengthLong(length);
+                }
+                return;
+            }
+            contentLength = length;
+            if (length >= 0 && length < minSize) {
+                try {
+                    stream().decide(false);
+                } catch (IOException e) {
+                    // nothing is buffered yet, deciding does not write
+                }
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value));
+            } else {
+                super.setHeader(name, notModifiedTag(name, value));
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                setContentLengthLong(value == null ? -1 : Long.parseLong(value));
+            } else {
+                super.addHeader(name, notModifiedTag(name, value));
+            }
+        }
+
+        /**
+         * The ETag of a 304 names the copy the client revalidated.
+         */
+        private String notModifiedTag(String name, String value) {
+            if (revalidatesCompressed && value != null && HttpHeaders.ETAG.equalsIgnoreCase(name)
+                    && getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+                return encodedTag(value, encoding(pool));
+            }
+            return value;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            } else if (stream != null) {
+                stream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            if (stream != null && !stream.decided) {
+                stream.count = 0;
+            }
+        }
+
+        @Override
+        public void reset() {
+            super.reset();
+            contentLength = -1;
+            if (stream != null && !stream.decided) {
+                stream.count = 0;
+            }
+        }
+
+        private CompressingStream stream() {
+            if (stream == null) {
+                stream = new CompressingStream(this);
+            }
+            return stream;
+        }
+
+        boolean compressible() {
+            return pool != null && !request.isAsyncStarted() && !containsHeader(HttpHeaders.CONTENT_ENCODING)
+                    && varies();
+        }
+
+        /**
+         * Whether the body would be compressed for a client accepting an encoding, apart from its size.
+         */
+        boolean varies() {
+            int status = getStatus();
+            if (status < 200 || status == HttpServletResponse.SC_NO_CONTENT || status == HttpServletResponse.SC_NOT_MODIFIED) {
+                return false;
+            }
+            String contentType = getContentType();
+            if (contentType == null) {
+                return false;
+            }
+            int semicolon = contentType.indexOf(';');
+            String mimeType = (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim();
+            return mimeTypes.contains(mimeType.toLowerCase(Locale.ROOT));
+        }
+
+        void vary() {
+            if (!varied && varies()) {
+                varied = true;
+                ((HttpServletResponse) getResponse()).addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+            }
+        }
+
+        void finish() throws IOException {
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.finish();
+            } else if (!isCommitted()) {
+                vary();
+                if (contentLength >= 0) {
+                    super.setContentLengthLong(contentLength);
+                }
+            }
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) throws IOException {
+            finish();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private final class CompressingStream extends ServletOutputStream {
+
+        private final CompressingResponse response;
+        /**
+         * Grows up to {@code minSize} as bytes arrive, so a small body costs only its own size.
+         */
+        private byte[] buffer = EMPTY;
+        private int count;
+        private boolean decided;
+        private boolean compressing;
+        private boolean finished;
+        private ServletOutputStream target;
+        private Compressor compressor;
+
+        CompressingStream(CompressingResponse response) {
+            this.response = response;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (finished) {
+                throw new IOException("Response already finished");
+            }
+            if (!decided) {
+                if (response.pool != null && count + length <= minSize) {
+                    if (count + length > buffer.length) {
+                        buffer = Arrays.copyOf(buffer, Math.min(minSize, Math.max(count + length, 2 * buffer.length)));
+                    }
+                    System.arraycopy(bytes, offset, buffer, count, length);
+                    count += length;
+                    return;
+                }
+                decide(response.compressible());
+            }
+            if (compressing) {
+                compressor.write(bytes, offset, length);
+            } else {
+                target.write(bytes, offset, length);
+            }
+        }
+
+        /**
+         * A flush before {@code minSize} bytes commits to an uncompressed body, so streamed responses are not held
+         * back.
+         */
+        @Override
+        public void flush() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (!decided) {
+                decide(false);
+            }
+            if (compressing) {
+                compressor.flush();
+            } else {
+                target.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            finish();
+        }
+
+        @Override
+        public boolean isReady() {
+            return !decided || target.isReady();
+        }
+
+        /**
+         * Non-blocking writes go out unchanged: buffering or compressing them would make {@link #isReady} lie.
+         */
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (!decided) {
+                try {
+                    decide(false);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            target.setWriteListener(writeListener);
+        }
+
+        void decide(boolean compress) throws IOException {
+            decided = true;
+            compressing = compress;
+            response.vary();
+            HttpServletResponse raw = (HttpServletResponse) response.getResponse();
+            target = raw.getOutputStream();
+            if (compress) {
+                String encoding = encoding(response.pool);
+                raw.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                String etag = raw.getHeader(HttpHeaders.ETAG);
+                if (etag != null) {
+                    raw.setHeader(HttpHeaders.ETAG, encodedTag(etag, encoding));
+                }
+                compressor = response.pool.borrow();
+                compressor.start(target);
+                compressor.write(buffer, 0, count);
+            } else {
+                if (response.contentLength >= 0) {
+                    raw.setContentLengthLong(response.contentLength);
+                }
+                target.write(buffer, 0, count);
+            }
+            count = 0;
+            buffer = EMPTY;
+        }
+
+        void finish() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (!decided) {
+                if (response.contentLength < 0) {
+                    response.contentLength = count;
+                }
+                decide(false);
+            }
+            finished = true;
+            if (compressing) {
+                try {
+                    compressor.finish();
+                } finally {
+                    response.pool.release(compressor);
+                    compressor = null;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * One reusable DEFLATE stream in either HTTP framing: {@code gzip} (RFC 1952 header and CRC32 trailer around raw
+ * deflate data) or {@code deflate} (zlib, RFC 1950). Instances come from a {@link CompressorPool}; a native zlib
+ * context costs a few hundred KB of off-heap memory and is released only by {@link Deflater#end()} or
+ * finalization, which is why they are not created per response.
+ */
+final class Compressor {
+
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater;
+    private final boolean gzip;
+    private final CRC32 crc = new CRC32();
+    private final byte[] buffer = new byte[8192];
+    private OutputStream out;
+
+    Compressor(int level, boolean gzip) {
+        this.deflater = new Deflater(level, gzip);
+        this.gzip = gzip;
+    }
+
+    void start(OutputStream out) throws IOException {
+        this.out = out;
+        if (gzip) {
+            out.write(GZIP_HEADER);
+        }
+    }
+
+    void write(byte[] bytes, int offset, int length) throws IOException {
+        if (gzip) {
+            crc.update(bytes, offset, length);
+        }
+        deflater.setInput(bytes, offset, length);
+        while (!deflater.needsInput()) {
+            drain(Deflater.NO_FLUSH);
+        }
+    }
+
+    /**
+     * Sync flush: everything written so far can be decompressed by the client.
+     */
+    void flush() throws IOException {
+        int written;
+        do {
+            written = drain(Deflater.SYNC_FLUSH);
+        } while (written == buffer.length);
+        out.flush();
+    }
+
+    void finish() throws IOException {
+        deflater.finish();
+        while (!deflater.finished()) {
+            drain(Deflater.NO_FLUSH);
+        }
+        if (gzip) {
+            writeIntLE((int) crc.getValue());
+            writeIntLE((int) deflater.getBytesRead());
+        }
+    }
+
+    /**
+     * Readies the instance for the next response.
+     */
+    void reset() {
+        deflater.reset();
+        crc.reset();
+        out = null;
+    }
+
+    void end() {
+        deflater.end();
+    }
+
+    private int drain(int flush) throws IOException {
+        int written = deflater.deflate(buffer, 0, buffer.length, flush);
+        if (written > 0) {
+            out.write(buffer, 0, written);
+        }
+        return written;
+    }
+
+    private void writeIntLE(int value) throws IOException {
+        out.write(value);
+        out.write(value >>> 8);
+        out.write(value >>> 16);
+        out.write(value >>> 24);
+    }
+}
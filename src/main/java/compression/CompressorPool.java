@@ -0,0 +1,41 @@
+package compression;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Bounded pool of {@link Compressor}s of one framing and level. Borrowing never blocks: an empty pool creates a new
+ * compressor, and one returned to a full pool is ended right away. A pool of size {@code 0} pools nothing.
+ */
+final class CompressorPool {
+
+    private final int level;
+    private final boolean gzip;
+    private final ArrayBlockingQueue<Compressor> idle;
+
+    CompressorPool(int level, boolean gzip, int maxIdle) {
+        this.level = level;
+        this.gzip = gzip;
+        this.idle = maxIdle > 0 ? new ArrayBlockingQueue<>(maxIdle) : null;
+    }
+
+    Compressor borrow() {
+        Compressor compressor = idle == null ? null : idle.poll();
+        return compressor != null ? compressor : new Compressor(level, gzip);
+    }
+
+    void release(Compressor compressor) {
+        compressor.reset();
+        if (idle == null || !idle.offer(compressor)) {
+            compressor.end();
+        }
+    }
+
+    void clear() {
+        if (idle == null) {
+            return;
+        }
+        for (Compressor compressor = idle.poll(); compressor != null; compressor = idle.poll()) {
+            compressor.end();
+        }
+    }
+}
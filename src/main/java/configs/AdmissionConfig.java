@@ -0,0 +1,47 @@
+package configs;
+
+import admission.AdmissionFilter;
+import admission.ClientRateLimiter;
+import admission.ConcurrencyLimiter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rate limiting and load shedding, see {@link AdmissionFilter}. Runs inside the metrics filter, so refused requests
+ * show up in the latency metrics with their 429 or 503, and ahead of compression. On with
+ * {@code admission.enabled=true}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "admission.enabled", havingValue = "true")
+public class AdmissionConfig {
+
+    @Bean
+    public FilterRegistrationBean<AdmissionFilter> admissionFilter(
+            @Value("${admission.rate:100}") double rate,
+            @Value("${admission.burst:200}") int burst,
+            @Value("${admission.clients:65536}") int clients,
+            @Value("${admission.client-header:}") String clientHeader,
+            @Value("${admission.bulk-paths:/user/all,/v2/user/all,/v2/user/export}") String[] bulkPaths,
+            @Value("${admission.bulk-cost:20}") int bulkCost,
+            @Value("${admission.initial-limit:32}") int initialLimit,
+            @Value("${admission.min-limit:4}") int minLimit,
+            @Value("${admission.max-limit:400}") int maxLimit,
+            @Value("${admission.latency-target-ms:100}") long latencyTargetMillis) {
+        AdmissionFilter filter = new AdmissionFilter(
+                rate > 0 ? new ClientRateLimiter(clients, rate, burst) : null,
+                new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, TimeUnit.MILLISECONDS.toNanos(latencyTargetMillis), 0.9),
+                clientHeader.isEmpty() ? null : clientHeader,
+                new HashSet<>(Arrays.asList(bulkPaths)), bulkCost);
+        FilterRegistrationBean<AdmissionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
+        return registration;
+    }
+}
@@ -0,0 +1,13 @@
+package configs;
+
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Turns on the {@code @Cacheable}/{@code @CacheEvict} annotations. The cache manager itself is Spring Boot's
+ * Caffeine auto-configuration, sized by {@code spring.cache.caffeine.spec}.
+ */
+@Configuration
+@EnableCaching
+public class CacheConfig {
+}
@@ -0,0 +1,34 @@
+package configs;
+
+import compression.CompressionFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Response compression, see {@link CompressionFilter}. Runs inside the metrics filter, so handler latencies include
+ * the compression CPU. Off with {@code compression.enabled=false}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "compression.enabled", matchIfMissing = true)
+public class CompressionConfig {
+
+    @Bean
+    public FilterRegistrationBean<CompressionFilter> compressionFilter(
+            @Value("${compression.min-size:2048}") int minSize,
+            @Value("${compression.level:1}") int level,
+            @Value("${compression.mime-types:application/json,application/x-ndjson,text/plain}") String[] mimeTypes,
+            @Value("${compression.pool-size:-1}") int poolSize) {
+        int maxIdle = poolSize >= 0 ? poolSize : Runtime.getRuntime().availableProcessors() * 2;
+        CompressionFilter filter = new CompressionFilter(minSize, level, new HashSet<>(Arrays.asList(mimeTypes)), maxIdle);
+        FilterRegistrationBean<CompressionFilter> registration = new FilterRegistrationBean<>(filter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE + 2);
+        return registration;
+    }
+}
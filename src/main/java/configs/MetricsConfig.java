@@ -0,0 +1,46 @@
+package configs;
+
+import metrics.LatencyEndpoint;
+import metrics.Metrics;
+import metrics.RequestMetricsFilter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+/**
+ * Request and store latency metrics, scraped from {@code /actuator/latency}. Off with {@code metrics.enabled=false}.
+ */
+@Configuration
+@ConditionalOnProperty(name = "metrics.enabled", matchIfMissing = true)
+public class MetricsConfig implements WebMvcConfigurer {
+
+    private final Metrics metrics = new Metrics();
+
+    private final RequestMetricsFilter requestMetricsFilter = new RequestMetricsFilter(metrics);
+
+    @Bean
+    public Metrics metrics() {
+        return metrics;
+    }
+
+    @Bean
+    public FilterRegistrationBean<RequestMetricsFilter> requestMetricsFilter() {
+        FilterRegistrationBean<RequestMetricsFilter> registration = new FilterRegistrationBean<>(requestMetricsFilter);
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(requestMetricsFilter.handlerInterceptor());
+    }
+
+    @Bean
+    public LatencyEndpoint latencyEndpoint(Metrics metrics) {
+        return new LatencyEndpoint(metrics);
+    }
+}
@@ -0,0 +1,85 @@
+package configs;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import replication.ReplicaClient;
+import replication.ReplicationEndpoint;
+import replication.ReplicationFilter;
+import replication.ReplicationServer;
+import services.UserService;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+/**
+ * Primary/replica replication of the user table, see {@link ReplicationServer} and {@link ReplicaClient}. Off
+ * unless {@code replication.role} is {@code primary} or {@code replica}; status at {@code /actuator/replication}.
+ */
+@Configuration
+public class ReplicationConfig {
+
+    private static final int FILTER_ORDER = Ordered.HIGHEST_PRECEDENCE + 3;
+
+    @Configuration
+    @ConditionalOnProperty(name = "replication.role", havingValue = "primary")
+    public static class Primary {
+
+        @Bean(destroyMethod = "close")
+        public ReplicationServer replicationServer(UserService userService,
+                                                   @Value("${replication.bind:127.0.0.1}") String bind,
+                                                   @Value("${replication.port:7070}") int port,
+                                                   @Value("${replication.heartbeat-ms:100}") long heartbeatMillis)
+                throws IOException {
+            return new ReplicationServer(userService, new InetSocketAddress(bind, port), heartbeatMillis);
+        }
+
+        @Bean
+        public FilterRegistrationBean<ReplicationFilter> replicationFilter(UserService userService) {
+            FilterRegistrationBean<ReplicationFilter> registration =
+                    new FilterRegistrationBean<>(new ReplicationFilter(userService, null, null, 0));
+            registration.setOrder(FILTER_ORDER);
+            return registration;
+        }
+
+        @Bean
+        public ReplicationEndpoint replicationEndpoint(ReplicationServer server) {
+            return new ReplicationEndpoint(server::status);
+        }
+    }
+
+    @Configuration
+    @ConditionalOnProperty(name = "replication.role", havingValue = "replica")
+    public static class Replica {
+
+        /**
+         * @param primary {@code host:port} of the primary's replication listener
+         */
+        @Bean(destroyMethod = "close")
+        public ReplicaClient replicaClient(UserService userService,
+                                           @Value("${replication.primary:127.0.0.1:7070}") String primary,
+                                           @Value("${replication.heartbeat-ms:100}") long heartbeatMillis) {
+            int colon = primary.lastIndexOf(':');
+            return new ReplicaClient(userService, new InetSocketAddress(primary.substring(0, colon),
+                    Integer.parseInt(primary.substring(colon + 1))), heartbeatMillis);
+        }
+
+        @Bean
+        public FilterRegistrationBean<ReplicationFilter> replicationFilter(UserService userService, ReplicaClient replica,
+                                                                           @Value("${replication.primary-url:}") String primaryUrl,
+                                                                           @Value("${replication.read-wait-ms:1000}") long readWaitMillis) {
+            FilterRegistrationBean<ReplicationFilter> registration = new FilterRegistrationBean<>(new ReplicationFilter(
+                    userService, replica, primaryUrl.isEmpty() ? null : primaryUrl, readWaitMillis));
+            registration.setOrder(FILTER_ORDER);
+            return registration;
+        }
+
+        @Bean
+        public ReplicationEndpoint replicationEndpoint(ReplicaClient replica) {
+            return new ReplicationEndpoint(replica::status);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package configs;
+
+import entities.User;
+import metrics.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import services.store.CompactUserRepository;
+import services.store.HashUserRepository;
+import services.store.OffHeapUserRepository;
+import services.store.TimedUserRepository;
+import services.store.UserJournal;
+import services.store.UserRepository;
+import services.store.WriteAheadLog;
+
+import java.nio.file.Paths;
+
+@Configuration
+public class UserStoreConfig {
+
+    /**
+     * {@code users.store=compact} trades a {@link User} allocation per read for a fraction of the heap per user;
+     * {@code users.store=offheap} makes the same trade with records outside the heap, out of the garbage collector's
+     * way. Size {@code -XX:MaxDirectMemorySize} for it.
+     */
+    @Bean
+    public UserRepository userRepository(@Value("${users.store:hash}") String store, ObjectProvider<Metrics> metrics) {
+        UserRepository repository;
+        switch (store) {
+            case "hash":
+                repository = new HashUserRepository();
+                break;
+            case "compact":
+                repository = new CompactUserRepository();
+                break;
+            case "offheap":
+                repository = new OffHeapUserRepository();
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown users.store " + store + ", expected hash, compact or offheap");
+        }
+        return metrics.getIfAvailable() == null ? repository : new TimedUserRepository(repository, metrics.getObject());
+    }
+
+    @Bean
+    public UserJournal userJournal(@Value("${users.wal.enabled:false}") boolean enabled,
+                                   @Value("${users.wal.directory:data/users}") String directory,
+                                   @Value("${users.wal.segment-size:67108864}") int segmentSize,
+                                   @Value("${users.wal.fsync-interval-ms:2}") long fsyncIntervalMillis,
+                                   @Value("${users.wal.await-fsync:true}") boolean awaitFsync,
+                                   @Value("${users.wal.snapshot-every:100000}") long snapshotEvery) {
+        if (!enabled) {
+            return UserJournal.NONE;
+        }
+        return new WriteAheadLog(Paths.get(directory), segmentSize, fsyncIntervalMillis, awaitFsync, snapshotEvery);
+    }
+}
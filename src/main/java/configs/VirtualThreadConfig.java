@@ -0,0 +1,62 @@
+package configs;
+
+import org.apache.coyote.AbstractProtocol;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Opt-in with {@code web.virtual-threads=true}: Tomcat runs every request on its own virtual thread instead of
+ * its bounded worker pool, so requests blocked on I/O (e.g. waiting for a WAL fsync) no longer exhaust the pool.
+ * <p>
+ * Needs Java 21 at runtime; the build still targets Java 8, so the executor is created reflectively. Spring 5.0
+ * proxies need {@code --add-opens java.base/java.lang=ALL-UNNAMED} on newer JDKs.
+ */
+@Configuration
+@ConditionalOnProperty(name = "web.virtual-threads", havingValue = "true")
+public class VirtualThreadConfig implements DisposableBean {
+
+    private ExecutorService requestExecutor;
+
+    /**
+     * Shut down by {@link #destroy()}: the JDK executor class is not accessible to Spring's reflective destroy call.
+     */
+    @Bean(destroyMethod = "")
+    public ExecutorService requestExecutor() {
+        try {
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "http-virtual-", 0L);
+            ThreadFactory factory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+            Method newExecutor = java.util.concurrent.Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            requestExecutor = (ExecutorService) newExecutor.invoke(null, factory);
+            return requestExecutor;
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("web.virtual-threads needs Java 21 or later, running on "
+                    + System.getProperty("java.version"), e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+        }
+    }
+
+    @Bean
+    public WebServerFactoryCustomizer<TomcatServletWebServerFactory> virtualThreadCustomizer(ExecutorService requestExecutor) {
+        return factory -> factory.addConnectorCustomizers(connector -> {
+            if (connector.getProtocolHandler() instanceof AbstractProtocol) {
+                ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(requestExecutor);
+            }
+        });
+    }
+}
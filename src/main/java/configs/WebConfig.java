@@ -0,0 +1,25 @@
+package configs;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import controllers.UserJsonHttpMessageConverter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+import java.util.List;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Ahead of the Jackson converter, so single users are written from their cached bytes.
+     */
+    @Override
+    public void extendMessageConverters(List<HttpMessageConverter<?>> converters) {
+        converters.add(0, new UserJsonHttpMessageConverter(objectMapper));
+    }
+}
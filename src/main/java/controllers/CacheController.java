@@ -0,0 +1,45 @@
+package controllers;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+public class CacheController {
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    /**
+     * Hit, miss and eviction counters per cache, for sizing {@code spring.cache.caffeine.spec}.
+     */
+    @GetMapping(value = "cache/stats", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Map<String, Map<String, Object>> getCacheStats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for (String name : cacheManager.getCacheNames()) {
+            Cache cache = cacheManager.getCache(name);
+            if (cache instanceof CaffeineCache) {
+                com.github.benmanes.caffeine.cache.Cache<Object, Object> nativeCache = ((CaffeineCache) cache).getNativeCache();
+                CacheStats stats = nativeCache.stats();
+                Map<String, Object> values = new LinkedHashMap<>();
+                values.put("size", nativeCache.estimatedSize());
+                values.put("hitCount", stats.hitCount());
+                values.put("missCount", stats.missCount());
+                values.put("hitRate", stats.hitRate());
+                values.put("evictionCount", stats.evictionCount());
+                values.put("loadFailureCount", stats.loadFailureCount());
+                values.put("averageLoadPenaltyNanos", stats.averageLoadPenalty());
+                result.put(name, values);
+            }
+        }
+        return result;
+    }
+}
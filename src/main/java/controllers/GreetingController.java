@@ -5,16 +5,14 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import entities.Greeting;
 
-import java.util.concurrent.atomic.AtomicLong;
-
 @RestController
 public class GreetingController {
 
-    private static final String template = "Hello %s";
-    private final AtomicLong counter = new AtomicLong();
+    private static final MessageTemplate template = new MessageTemplate("Hello %s");
+    private final IdBlockAllocator counter = new IdBlockAllocator(1024);
 
     @GetMapping("/greeting")
     public Greeting greeting(@RequestParam(value = "name", defaultValue = "World") String value) {
-        return new Greeting(counter.incrementAndGet(), String.format(template, value));
+        return new Greeting(counter.next(), template.render(value));
     }
 }
@@ -0,0 +1,87 @@
+package controllers;
+
+import org.springframework.hateoas.Link;
+import org.springframework.hateoas.core.AnnotationMappingDiscoverer;
+import org.springframework.hateoas.core.DummyInvocationUtils;
+import org.springframework.hateoas.core.MappingDiscoverer;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.util.UriUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+
+/**
+ * A link to a controller method whose mapping is resolved once, instead of through a {@code methodOn} proxy and
+ * reflective mapping lookup on every request. Per request only the base URI and the path variables are filled in:
+ * <pre>
+ * static final LinkTemplate SELF = LinkTemplate.to(methodOn(UserController.class).getUserLinks(0), Link.REL_SELF);
+ * ...
+ * resource.add(SELF.expand(LinkTemplate.baseUri(UserController.class), id));
+ * </pre>
+ * Works for links on any {@link org.springframework.hateoas.ResourceSupport}.
+ */
+public final class LinkTemplate {
+
+    private static final MappingDiscoverer DISCOVERER = new AnnotationMappingDiscoverer(RequestMapping.class);
+
+    /**
+     * Literal path fragments; path variable {@code i} goes between fragments {@code i} and {@code i + 1}.
+     */
+    private final String[] fragments;
+    private final String rel;
+
+    private LinkTemplate(String path, String rel) {
+        List<String> fragments = new ArrayList<>();
+        int start = 0;
+        for (int open = path.indexOf('{'); open >= 0; open = path.indexOf('{', start)) {
+            fragments.add(path.substring(start, open));
+            start = path.indexOf('}', open) + 1;
+            if (start == 0) {
+                throw new IllegalArgumentException("Unclosed path variable in " + path);
+            }
+        }
+        fragments.add(path.substring(start));
+        this.fragments = fragments.toArray(new String[0]);
+        this.rel = rel;
+    }
+
+    /**
+     * @param invocationValue the result of calling the target method on {@code methodOn(Controller.class)}
+     */
+    public static LinkTemplate to(Object invocationValue, String rel) {
+        DummyInvocationUtils.MethodInvocation invocation =
+                ((DummyInvocationUtils.LastInvocationAware) invocationValue).getLastInvocation();
+        String mapping = DISCOVERER.getMapping(invocation.getTargetType(), invocation.getMethod());
+        if (mapping == null) {
+            throw new IllegalArgumentException(invocation.getMethod() + " has no request mapping");
+        }
+        return new LinkTemplate(mapping.startsWith("/") ? mapping : "/" + mapping, rel);
+    }
+
+    /**
+     * Scheme, host and context path of the current request, honouring forwarded headers like {@code linkTo} does.
+     */
+    public static String baseUri(Class<?> controller) {
+        String base = linkTo(controller).toString();
+        return base.endsWith("/") ? base.substring(0, base.length() - 1) : base;
+    }
+
+    /**
+     * @param values path variables in the order they appear in the mapping
+     */
+    public Link expand(String baseUri, Object... values) {
+        if (values.length != fragments.length - 1) {
+            throw new IllegalArgumentException("Expected " + (fragments.length - 1) + " path variables, got " + values.length);
+        }
+        StringBuilder href = new StringBuilder(baseUri).append(fragments[0]);
+        for (int i = 0; i < values.length; i++) {
+            String value = String.valueOf(values[i]);
+            href.append(values[i] instanceof Number ? value : UriUtils.encodePathSegment(value, StandardCharsets.UTF_8))
+                    .append(fragments[i + 1]);
+        }
+        return new Link(href.toString(), rel);
+    }
+}
@@ -0,0 +1,63 @@
+package controllers;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A {@code %s} pattern split into its literal fragments once, so rendering is plain concatenation: no format
+ * parsing and no {@link java.util.Formatter} per call. Supports {@code %s} and {@code %%} only.
+ */
+final class MessageTemplate {
+
+    private final String[] fragments;
+    private final int literalLength;
+
+    MessageTemplate(String pattern) {
+        List<String> fragments = new ArrayList<>();
+        StringBuilder fragment = new StringBuilder();
+        for (int i = 0; i < pattern.length(); i++) {
+            char c = pattern.charAt(i);
+            if (c != '%') {
+                fragment.append(c);
+                continue;
+            }
+            char conversion = i + 1 < pattern.length() ? pattern.charAt(++i) : 0;
+            if (conversion == '%') {
+                fragment.append('%');
+            } else if (conversion == 's') {
+                fragments.add(fragment.toString());
+                fragment.setLength(0);
+            } else {
+                throw new IllegalArgumentException("Unsupported conversion at " + (i - 1) + " in " + pattern);
+            }
+        }
+        fragments.add(fragment.toString());
+        this.fragments = fragments.toArray(new String[0]);
+        int length = 0;
+        for (String literal : this.fragments) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * Same result as {@code String.format(pattern, value)} for a pattern with a single {@code %s}.
+     */
+    String render(String value) {
+        if (fragments.length != 2) {
+            throw new IllegalArgumentException("Expected " + (fragments.length - 1) + " arguments");
+        }
+        return fragments[0].concat(String.valueOf(value)).concat(fragments[1]);
+    }
+
+    String render(Object... values) {
+        if (values.length != fragments.length - 1) {
+            throw new IllegalArgumentException("Expected " + (fragments.length - 1) + " arguments");
+        }
+        StringBuilder result = new StringBuilder(literalLength + 16 * values.length).append(fragments[0]);
+        for (int i = 0; i < values.length; i++) {
+            result.append(values[i]).append(fragments[i + 1]);
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,91 @@
+package controllers;
+
+import metrics.CoalescingStats;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent identical reads share one computation: the first caller for a key computes, and callers arriving
+ * while it is in flight wait for and return its result. Nothing is kept once the computation completes, so this
+ * only collapses bursts and never serves a result to a caller that arrived after it was produced.
+ * <p>
+ * Each flight is tagged with the table version its caller read. A caller that has seen a newer version does not
+ * join an older flight, which could miss the mutation; it starts its own, replacing the older one for later
+ * callers. Callers already waiting on the older flight still get its result, which was current when they arrived.
+ */
+final class SingleFlight<K, V> {
+
+    private final ConcurrentHashMap<K, Flight<V>> flights = new ConcurrentHashMap<>();
+    private final CoalescingStats stats;
+
+    SingleFlight(CoalescingStats stats) {
+        this.stats = stats;
+    }
+
+    /**
+     * @param version the table version read before calling, so that the result reflects at least that version
+     * @return the result of {@code computation}, run by this caller or by a concurrent one
+     */
+    V execute(K key, long version, Supplier<V> computation) {
+        Flight<V> flight = new Flight<>(version);
+        for (;;) {
+            Flight<V> current = flights.putIfAbsent(key, flight);
+            if (current == null) {
+                break;
+            }
+            if (current.version >= version) {
+                stats.coalesced();
+                return current.await();
+            }
+            if (flights.replace(key, current, flight)) {
+                break;
+            }
+        }
+        stats.executed();
+        try {
+            V value = computation.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    int inFlight() {
+        return flights.size();
+    }
+
+    private static final class Flight<V> extends CompletableFuture<V> {
+
+        final long version;
+
+        Flight(long version) {
+            this.version = version;
+        }
+
+        /**
+         * Rethrows the computation's failure as it was thrown, so waiters see the same error as the caller that
+         * computed.
+         */
+        V await() {
+            try {
+                return join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
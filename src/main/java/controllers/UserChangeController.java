@@ -0,0 +1,73 @@
+package controllers;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import services.UserService;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+/**
+ * Change data capture: consumers follow user mutations instead of polling {@code user/all}.
+ */
+@RestController
+public class UserChangeController {
+
+    @Autowired
+    private UserService userService;
+
+    @Value("${changes.max-subscribers:256}")
+    private int maxSubscribers;
+
+    @Value("${changes.timeout-ms:300000}")
+    private long timeoutMillis;
+
+    private UserChangeStreams streams;
+
+    @PostConstruct
+    public void start() {
+        streams = new UserChangeStreams(userService.getChangeLog(), maxSubscribers, timeoutMillis);
+    }
+
+    @PreDestroy
+    public void stop() {
+        streams.close();
+    }
+
+    /**
+     * One Server-Sent Event per change: the {@code id} is its version, the {@code event} its type and the
+     * {@code data} the {@link entities.UserChange}. Resumes after {@code Last-Event-ID}, or after the version in
+     * {@code after}; without either the stream starts with the next change.
+     * <p>
+     * A consumer the log cannot serve, because it asks for changes older than the log holds or falls that far
+     * behind while connected, receives a {@code reset} event carrying the current table version and is
+     * disconnected. It then re-reads {@code user/all} and resumes after the version in its ETag.
+     */
+    @GetMapping(value = "user/changes", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> streamChanges(@RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+                                                    @RequestParam(value = "after", required = false) Long after) {
+        long from;
+        if (lastEventId != null) {
+            try {
+                from = Long.parseLong(lastEventId.trim());
+            } catch (NumberFormatException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        } else {
+            from = after != null ? after : userService.getChangeLog().last();
+        }
+        SseEmitter emitter = streams.subscribe(from);
+        if (emitter == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+}
@@ -0,0 +1,169 @@
+package controllers;
+
+import entities.UserChange;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import services.UserChangeLog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fans the {@link UserChangeLog} out to Server-Sent Events subscribers. The writer only wakes a notifier thread;
+ * the notifier hands every subscriber with pending changes to a sender, at most one sender per subscriber. Each
+ * subscriber has its own cursor into the log, so a slow one holds back nobody but itself: its sender blocks on
+ * the socket and the cursor advances at the pace the client reads. Once the log has moved on by more than its
+ * capacity, the subscriber is sent a {@code reset} event and dropped.
+ */
+final class UserChangeStreams implements Closeable {
+
+    static final String RESET = "reset";
+
+    /**
+     * Changes sent per turn before a sender yields to the other subscribers.
+     */
+    private static final int BATCH = 256;
+
+    private final UserChangeLog log;
+    private final int maxSubscribers;
+    private final long timeoutMillis;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger threads = new AtomicInteger();
+    private final ThreadPoolExecutor senders;
+    private final Thread notifier;
+    private final Runnable listener;
+    private volatile boolean running = true;
+
+    /**
+     * @param timeoutMillis after which a stream is closed for the client to reconnect; {@code 0} never closes it
+     */
+    UserChangeStreams(UserChangeLog log, int maxSubscribers, long timeoutMillis) {
+        this.log = log;
+        this.maxSubscribers = maxSubscribers;
+        this.timeoutMillis = timeoutMillis;
+        // one task per subscriber at most, so a direct hand-off never runs out of threads
+        this.senders = new ThreadPoolExecutor(0, maxSubscribers, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), runnable -> {
+            Thread thread = new Thread(runnable, "user-changes-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.notifier = new Thread(this::notifyLoop, "user-changes-notifier");
+        notifier.setDaemon(true);
+        notifier.start();
+        this.listener = () -> LockSupport.unpark(notifier);
+        log.addListener(listener);
+    }
+
+    /**
+     * @param after version of the last change the client has seen
+     * @return the stream, or {@code null} if {@code maxSubscribers} streams are open
+     */
+    SseEmitter subscribe(long after) {
+        if (subscribers.size() >= maxSubscribers || !running) {
+            return null;
+        }
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, after);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        schedule(subscriber);
+        return emitter;
+    }
+
+    int subscribers() {
+        return subscribers.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        log.removeListener(listener);
+        LockSupport.unpark(notifier);
+        senders.shutdownNow();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    /**
+     * Wake-ups during a pass leave the permit set, so changes published meanwhile are picked up by the next pass.
+     */
+    private void notifyLoop() {
+        while (running) {
+            LockSupport.park(this);
+            long last = log.last();
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.cursor != last) {
+                    schedule(subscriber);
+                }
+            }
+        }
+    }
+
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled.compareAndSet(false, true)) {
+            try {
+                senders.execute(() -> send(subscriber));
+            } catch (RejectedExecutionException e) {
+                subscriber.scheduled.set(false);
+            }
+        }
+    }
+
+    private void send(Subscriber subscriber) {
+        try {
+            for (int sent = 0; sent < BATCH && subscriber.cursor != log.last(); sent++) {
+                long next = subscriber.cursor + 1;
+                UserChange change = next < log.first() ? null : log.get(next);
+                if (change == null) {
+                    subscribers.remove(subscriber);
+                    subscriber.emitter.send(SseEmitter.event().name(RESET)
+                            .data(Collections.singletonMap("version", log.last()), MediaType.APPLICATION_JSON));
+                    subscriber.emitter.complete();
+                    return;
+                }
+                subscriber.emitter.send(SseEmitter.event().id(Long.toString(next))
+                        .name(change.getType().name().toLowerCase(Locale.ROOT))
+                        .data(change, MediaType.APPLICATION_JSON));
+                subscriber.cursor = next;
+            }
+        } catch (IOException | IllegalStateException e) {
+            // the client went away, or the stream timed out
+            subscribers.remove(subscriber);
+            subscriber.emitter.completeWithError(e);
+            return;
+        } finally {
+            subscriber.scheduled.set(false);
+        }
+        if (subscriber.cursor != log.last()) {
+            schedule(subscriber);
+        }
+    }
+
+    private static final class Subscriber {
+        final SseEmitter emitter;
+        final AtomicBoolean scheduled = new AtomicBoolean();
+        /**
+         * Version of the last change sent; written by one sender at a time.
+         */
+        volatile long cursor;
+
+        Subscriber(SseEmitter emitter, long cursor) {
+            this.emitter = emitter;
+            this.cursor = cursor;
+        }
+    }
+}
@@ -1,42 +1,170 @@
 package controllers;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import entities.User;
+import entities.UserOperation;
+import entities.UserOperationResult;
 import entities.UserWithLinks;
+import exceptions.VersionMismatchException;
+import exceptions.advice.ErrorResponses;
+import metrics.CoalescingStats;
+import metrics.Metrics;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.springframework.hateoas.Link;
 import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import org.springframework.web.util.UriComponentsBuilder;
 import services.UserService;
+import services.store.UserColumns;
+import services.store.UserSearchIndex;
 
+import javax.annotation.PostConstruct;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
-import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
 
 @RestController
 public class UserController {
 
+    public static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
+    private static final int MAX_PAGE_SIZE = 1000;
+
+    private static final int BATCH_CHUNK_SIZE = 1000;
+
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ErrorResponses errorResponses;
+
+    @Autowired
+    private ObjectProvider<Metrics> metrics;
+
+    private ObjectWriter userWriter;
+
+    private ObjectWriter userListWriter;
+
+    private SingleFlight<Long, Optional<User>> userFlights;
+
+    private SingleFlight<List<Object>, byte[]> allUsersFlights;
+
+    private SingleFlight<List<Object>, byte[]> allUsersV2Flights;
+
+    @PostConstruct
+    public void start() {
+        userWriter = objectMapper.writerFor(User.class);
+        userListWriter = objectMapper.writerFor(new TypeReference<List<User>>() {
+        });
+        userFlights = new SingleFlight<>(coalescingStats("user/{value}"));
+        allUsersFlights = new SingleFlight<>(coalescingStats("user/all"));
+        allUsersV2Flights = new SingleFlight<>(coalescingStats("v2/user/all"));
+    }
+
+    private CoalescingStats coalescingStats(String endpoint) {
+        Metrics registry = metrics.getIfAvailable();
+        return registry == null ? new CoalescingStats() : registry.coalescing(endpoint);
+    }
+
+    /**
+     * Concurrent identical requests share one lookup and one serialized body, see {@link SingleFlight}.
+     */
     @GetMapping(value = "user/all", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public List<User> getAllUsers() {
-        return userService.getAllUsers();
+    public ResponseEntity<byte[]> getAllUsers(@RequestParam(value = "role", required = false) String role,
+                                              @RequestParam(value = "active", required = false) Boolean active) {
+        long version = userService.getVersion();
+        if (notModified(UserETags.ofTable(version))) {
+            return null;
+        }
+        return json(allUsersFlights.execute(Arrays.asList(role, active), version, () -> serialize(
+                role == null && active == null ? userService.getAllUsers() : userService.getUsers(role, active))));
     }
 
+    /**
+     * An unknown id is answered with a prebuilt 404, see {@link ErrorResponses}. Concurrent requests for the same
+     * id share one lookup, which also caches the user's JSON for the converter to write.
+     */
     @GetMapping(value = "user/{value}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public User getUser(@PathVariable long value) {
-        return userService.getUserWithId(value);
+    public ResponseEntity<Object> getUser(@PathVariable long value) {
+        User user = userFlights.execute(value, userService.getVersion(), () -> {
+            Optional<User> found = userService.findUser(value);
+            found.ifPresent(this::serialize);
+            return found;
+        }).orElse(null);
+        if (user == null) {
+            return errorResponses.notFound();
+        }
+        return notModified(UserETags.of(user)) ? null : ResponseEntity.ok(user);
+    }
+
+    /**
+     * Case-insensitive name search; {@code match=substring} needs at least
+     * {@value UserSearchIndex#MIN_SUBSTRING_LENGTH} characters.
+     */
+    @GetMapping(value = "user/search", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<User>> searchUsers(@RequestParam("q") String query,
+                                                  @RequestParam(value = "match", defaultValue = "prefix") String match,
+                                                  @RequestParam(value = "limit", defaultValue = "20") int limit) {
+        boolean substring = match.equals("substring");
+        if (limit < 1 || limit > MAX_PAGE_SIZE || !substring && !match.equals("prefix")
+                || substring && query.length() < UserSearchIndex.MIN_SUBSTRING_LENGTH) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(userService.searchUsers(query, substring, limit));
     }
 
+    /**
+     * With {@code If-Match} the update only applies if the user is still at the version the ETag names.
+     */
     @PutMapping("v2/user/")
     public ResponseEntity updateUser(@RequestBody User user) {
-        userService.updateUser(user);
+        String ifMatch = currentRequest().getHeader(HttpHeaders.IF_MATCH);
+        User updated;
+        if (ifMatch == null) {
+            updated = userService.updateUser(user);
+        } else {
+            long expectedVersion = UserETags.expectedVersion(ifMatch, user.getUserId());
+            if (expectedVersion == UserETags.NO_MATCH) {
+                throw new VersionMismatchException("If-Match " + ifMatch + " does not match user " + user.getUserId());
+            }
+            updated = userService.updateUser(user, expectedVersion);
+        }
+        if (updated == null) {
+            return errorResponses.notFound();
+        }
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
@@ -45,17 +173,22 @@ public class UserController {
      * =================================================================================
      * */
     @GetMapping(value = "user/firstUser", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    @Cacheable(value = "employeeID1")
     public ResponseEntity getCachedUser() {
+        User user = userService.findUser(1).orElse(null);
+        if (user == null) {
+            return errorResponses.notFound();
+        }
         return ResponseEntity.ok()
                 .cacheControl(CacheControl.maxAge(60, TimeUnit.SECONDS))
-                .body(userService.getUserWithId(1));
+                .body(user);
     }
 
     @PutMapping(value = "user/firstUser", consumes = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    @CacheEvict(value = "employeeID1", allEntries = true)
+    @CacheEvict(value = UserService.USERS_CACHE, allEntries = true)
     public ResponseEntity clearCache(@RequestBody User user) {
-        userService.updateUser(user);
+        if (userService.updateUser(user) == null) {
+            return errorResponses.notFound();
+        }
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
 
@@ -65,8 +198,139 @@ public class UserController {
      * */
 
     @GetMapping(value = "v2/user/all", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public List<User> getAllUsersV2() {
-        return userService.getAllUsersV2();
+    public ResponseEntity<byte[]> getAllUsersV2(@RequestParam(value = "role", required = false) String role,
+                                                @RequestParam(value = "active", required = false) Boolean active) {
+        long version = userService.getVersion();
+        if (notModified(UserETags.ofTable(version))) {
+            return null;
+        }
+        return json(allUsersV2Flights.execute(Arrays.asList(role, active), version, () -> serialize(
+                role == null && active == null ? userService.getAllUsersV2() : userService.getUsersV2(role, active))));
+    }
+
+    private byte[] serialize(List<User> users) {
+        try {
+            return userListWriter.writeValueAsBytes(users);
+        } catch (JsonProcessingException e) {
+            throw notWritable(e);
+        }
+    }
+
+    private void serialize(User user) {
+        try {
+            UserJsonHttpMessageConverter.json(userWriter, user);
+        } catch (JsonProcessingException e) {
+            throw notWritable(e);
+        }
+    }
+
+    private static HttpMessageNotWritableException notWritable(JsonProcessingException e) {
+        return new HttpMessageNotWritableException("Could not write JSON: " + e.getOriginalMessage(), e);
+    }
+
+    private static ResponseEntity<byte[]> json(byte[] body) {
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON_UTF8).body(body);
+    }
+
+    /*
+     * Pagination and streaming example
+     * =================================================================================
+     * */
+
+    @GetMapping(value = "user/all", params = "limit", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<User>> getUserPage(@RequestParam("limit") int limit,
+                                                  @RequestParam(value = "after", defaultValue = "0") long after,
+                                                  @RequestParam(value = "role", required = false) String role,
+                                                  @RequestParam(value = "active", required = false) Boolean active) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (notModified(UserETags.ofTable(userService.getVersion()))) {
+            return null;
+        }
+        List<User> page = userService.getUserPage(after, limit, role, active);
+        return page(page, limit, role, active, page.isEmpty() ? null : Long.toString(page.get(page.size() - 1).getUserId()));
+    }
+
+    @GetMapping(value = "v2/user/all", params = "limit", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public ResponseEntity<List<User>> getUserPageV2(@RequestParam("limit") int limit,
+                                                    @RequestParam(value = "after", required = false) String after,
+                                                    @RequestParam(value = "role", required = false) String role,
+                                                    @RequestParam(value = "active", required = false) Boolean active) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            return ResponseEntity.badRequest().build();
+        }
+        String afterName = null;
+        long afterId = Long.MIN_VALUE;
+        if (after != null) {
+            try {
+                UserCursor cursor = UserCursor.decode(after);
+                afterName = cursor.name;
+                afterId = cursor.id;
+            } catch (IllegalArgumentException e) {
+                return ResponseEntity.badRequest().build();
+            }
+        }
+        if (notModified(UserETags.ofTable(userService.getVersion()))) {
+            return null;
+        }
+        List<User> page = userService.getUserPageV2(afterName, afterId, limit, role, active);
+        User last = page.isEmpty() ? null : page.get(page.size() - 1);
+        return page(page, limit, role, active, last == null ? null : UserCursor.encode(last.getUserName(), last.getUserId()));
+    }
+
+    /**
+     * A full page may have a successor, advertised as an RFC 5988 {@code Link: <...>; rel="next"} header.
+     */
+    private ResponseEntity<List<User>> page(List<User> page, int limit, String role, Boolean active, String nextCursor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.size() == limit) {
+            UriComponentsBuilder next = ServletUriComponentsBuilder.fromCurrentRequestUri().queryParam("limit", limit);
+            if (role != null) {
+                next.queryParam("role", role);
+            }
+            if (active != null) {
+                next.queryParam("active", active);
+            }
+            next.queryParam("after", nextCursor);
+            response.header(HttpHeaders.LINK, "<" + next.build().encode().toUriString() + ">; rel=\"next\"");
+        }
+        return response.body(page);
+    }
+
+    @GetMapping(value = "user/all", produces = APPLICATION_NDJSON_VALUE)
+    public void streamAllUsers(@RequestParam(value = "role", required = false) String role,
+                               @RequestParam(value = "active", required = false) Boolean active,
+                               HttpServletResponse response) throws IOException {
+        streamUsers(response, action -> userService.forEachUser(role, active, action));
+    }
+
+    @GetMapping(value = "v2/user/all", produces = APPLICATION_NDJSON_VALUE)
+    public void streamAllUsersV2(@RequestParam(value = "role", required = false) String role,
+                                 @RequestParam(value = "active", required = false) Boolean active,
+                                 HttpServletResponse response) throws IOException {
+        streamUsers(response, action -> userService.forEachUserV2(role, active, action));
+    }
+
+    /**
+     * Writes one JSON document per line straight to the response, so the user list is never materialized.
+     */
+    private void streamUsers(HttpServletResponse response, Consumer<Consumer<User>> source) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE + ";charset=UTF-8");
+        ObjectWriter writer = objectMapper.writerFor(User.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            source.accept(user -> {
+                try {
+                    writer.writeValue(generator, user);
+                    generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /*
@@ -74,19 +338,54 @@ public class UserController {
      * */
 
     @GetMapping(value = "user/{value}/org", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public User getUserOrg(@PathVariable long value) {
-        return userService.getUserWithId(value);
+    public ResponseEntity<Object> getUserOrg(@PathVariable long value) {
+        User user = userService.findUser(value).orElse(null);
+        return user == null ? errorResponses.notFound() : ResponseEntity.ok(user);
     }
 
     @GetMapping(value = "v2/user/{value}", produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
-    public UserWithLinks getUserLinks(@PathVariable long value) {
-        User user = userService.getUserWithId(value);
+    public ResponseEntity<Object> getUserLinks(@PathVariable long value) {
+        User user = userService.findUser(value).orElse(null);
+        if (user == null) {
+            return errorResponses.notFound();
+        }
+        if (notModified(UserETags.of(user))) {
+            return null;
+        }
+        String baseUri = LinkTemplate.baseUri(UserController.class);
         UserWithLinks linkedUser = new UserWithLinks(user);
-        linkedUser.add(linkTo(methodOn(UserController.class).getUserLinks(value)).withSelfRel());
-        linkedUser.add(linkTo(methodOn(UserController.class).getUserOrg(value)).withRel("Get users organization"));
-        linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Update with PUT method"));
-        linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Delete with DELETE method"));
-        return linkedUser;
+        linkedUser.add(UserLinks.SELF.expand(baseUri, value));
+        linkedUser.add(UserLinks.ORGANIZATION.expand(baseUri, value));
+        linkedUser.add(UserLinks.UPDATE.expand(baseUri));
+        linkedUser.add(UserLinks.DELETE.expand(baseUri));
+        return ResponseEntity.ok(linkedUser);
+    }
+
+    /**
+     * Resolved on first use rather than with the controller class, so the {@code methodOn} proxies are built once
+     * the controller is fully initialized.
+     */
+    private static final class UserLinks {
+        static final LinkTemplate SELF =
+                LinkTemplate.to(methodOn(UserController.class).getUserLinks(0), Link.REL_SELF);
+        static final LinkTemplate ORGANIZATION =
+                LinkTemplate.to(methodOn(UserController.class).getUserOrg(0), "Get users organization");
+        static final LinkTemplate UPDATE =
+                LinkTemplate.to(methodOn(UserController.class).updateUser(null), "Update with PUT method");
+        static final LinkTemplate DELETE =
+                LinkTemplate.to(methodOn(UserController.class).updateUser(null), "Delete with DELETE method");
+    }
+
+    /**
+     * Answers {@code If-None-Match} with 304 before any body is built, and sets the ETag otherwise.
+     */
+    private static boolean notModified(String etag) {
+        return currentRequest().checkNotModified(etag);
+    }
+
+    private static ServletWebRequest currentRequest() {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.currentRequestAttributes();
+        return new ServletWebRequest(attributes.getRequest(), attributes.getResponse());
     }
 
     /*
@@ -104,4 +403,73 @@ public class UserController {
         userService.createUser(user);
         return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
     }
+
+    /*
+     * Bulk export and import
+     * =================================================================================
+     * */
+
+    @GetMapping(value = "v2/user/export", produces = UserColumns.MEDIA_TYPE)
+    public void exportUsers(HttpServletResponse response) throws IOException {
+        response.setContentType(UserColumns.MEDIA_TYPE);
+        try (UserColumns.Writer writer = new UserColumns.Writer(response.getOutputStream())) {
+            userService.exportUsers(writer);
+        }
+    }
+
+    /**
+     * Upserts the users of an export; a malformed export is rejected with 400, though chunks read before the
+     * malformed one stay imported.
+     */
+    @PostMapping(value = "v2/user/import", consumes = UserColumns.MEDIA_TYPE,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public Map<String, Integer> importUsers(HttpServletRequest request) throws IOException {
+        try {
+            return Collections.singletonMap("imported",
+                    userService.importUsers(new UserColumns.Reader(request.getInputStream())));
+        } catch (StreamCorruptedException e) {
+            throw new HttpMessageNotReadableException(e.getMessage());
+        }
+    }
+
+    /*
+     * Batch example
+     * =================================================================================
+     * */
+
+    @PostMapping(value = "v2/user/batch", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_UTF8_VALUE)
+    public List<UserOperationResult> applyBatch(@RequestBody List<UserOperation> operations) {
+        return userService.applyBatch(operations);
+    }
+
+    /**
+     * NDJSON batch of unbounded length: applied in chunks of {@value #BATCH_CHUNK_SIZE} operations, results are
+     * streamed back one per line as each chunk completes.
+     */
+    @PostMapping(value = "v2/user/batch", consumes = APPLICATION_NDJSON_VALUE)
+    public void applyBatchStream(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        response.setContentType(APPLICATION_NDJSON_VALUE + ";charset=UTF-8");
+        ObjectWriter writer = objectMapper.writerFor(UserOperationResult.class)
+                .without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (MappingIterator<UserOperation> operations = objectMapper.readerFor(UserOperation.class)
+                .readValues(request.getInputStream());
+             JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.setRootValueSeparator(null);
+            List<UserOperation> chunk = new ArrayList<>(BATCH_CHUNK_SIZE);
+            int offset = 0;
+            while (operations.hasNextValue()) {
+                chunk.add(operations.nextValue());
+                if (chunk.size() == BATCH_CHUNK_SIZE || !operations.hasNextValue()) {
+                    for (UserOperationResult result : userService.applyBatch(chunk)) {
+                        result.setIndex(result.getIndex() + offset);
+                        writer.writeValue(generator, result);
+                        generator.writeRaw('\n');
+                    }
+                    offset += chunk.size();
+                    chunk.clear();
+                }
+            }
+        }
+    }
 }
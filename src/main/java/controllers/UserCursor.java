@@ -0,0 +1,35 @@
+package controllers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Opaque keyset cursor for v2/user/all: the (userName, id) of the last user on a page, URL-safe Base64 encoded.
+ */
+final class UserCursor {
+
+    final String name;
+    final long id;
+
+    private UserCursor(String name, long id) {
+        this.name = name;
+        this.id = id;
+    }
+
+    static String encode(String name, long id) {
+        String key = name == null ? Long.toString(id) : id + ":" + name;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @throws IllegalArgumentException if the cursor was not produced by {@link #encode}
+     */
+    static UserCursor decode(String cursor) {
+        String key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        int separator = key.indexOf(':');
+        if (separator < 0) {
+            return new UserCursor(null, Long.parseLong(key));
+        }
+        return new UserCursor(key.substring(separator + 1), Long.parseLong(key.substring(0, separator)));
+    }
+}
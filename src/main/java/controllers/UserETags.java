@@ -0,0 +1,50 @@
+package controllers;
+
+import entities.User;
+
+/**
+ * Strong ETags derived from store versions, so revalidation needs neither serialization nor hashing of the body.
+ */
+final class UserETags {
+
+    /**
+     * {@code If-Match: *} matches any current version.
+     */
+    static final long ANY_VERSION = -1;
+
+    /**
+     * The {@code If-Match} header cannot match the target user.
+     */
+    static final long NO_MATCH = -2;
+
+    private UserETags() {
+    }
+
+    static String of(User user) {
+        return "\"" + user.getUserId() + '.' + user.getVersion() + '"';
+    }
+
+    static String ofTable(long version) {
+        return "\"" + version + '"';
+    }
+
+    /**
+     * @return the version the {@code If-Match} header requires for user {@code id}, {@link #ANY_VERSION}
+     * or {@link #NO_MATCH}
+     */
+    static long expectedVersion(String ifMatch, long id) {
+        String tag = ifMatch.trim();
+        if ("*".equals(tag)) {
+            return ANY_VERSION;
+        }
+        String prefix = "\"" + id + '.';
+        if (!tag.startsWith(prefix) || !tag.endsWith("\"") || tag.length() <= prefix.length() + 1) {
+            return NO_MATCH;
+        }
+        try {
+            return Long.parseLong(tag.substring(prefix.length(), tag.length() - 1));
+        } catch (NumberFormatException e) {
+            return NO_MATCH;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package controllers;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import entities.User;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link User} response body from the JSON bytes cached on the record, so Jackson runs once per stored
+ * version instead of once per request. Reading is left to the regular Jackson converter.
+ */
+public class UserJsonHttpMessageConverter extends AbstractHttpMessageConverter<User> {
+
+    private final ObjectWriter writer;
+
+    public UserJsonHttpMessageConverter(ObjectMapper objectMapper) {
+        super(MediaType.APPLICATION_JSON_UTF8, MediaType.APPLICATION_JSON);
+        this.writer = objectMapper.writerFor(User.class);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return clazz == User.class;
+    }
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected User readInternal(Class<? extends User> clazz, HttpInputMessage inputMessage) {
+        throw new HttpMessageNotReadableException("Use the Jackson converter to read users");
+    }
+
+    @Override
+    protected Long getContentLength(User user, MediaType contentType) {
+        try {
+            return (long) json(writer, user).length;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    @Override
+    protected void writeInternal(User user, HttpOutputMessage outputMessage) throws IOException {
+        try {
+            outputMessage.getBody().write(json(writer, user));
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotWritableException("Could not write JSON: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    /**
+     * Two threads may both serialize an uncached record; they produce equal bytes, so either one may win.
+     */
+    static byte[] json(ObjectWriter writer, User user) throws JsonProcessingException {
+        byte[] json = user.getJson();
+        if (json == null) {
+            json = writer.writeValueAsBytes(user);
+            user.setJson(json);
+        }
+        return json;
+    }
+}
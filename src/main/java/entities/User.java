@@ -1,5 +1,6 @@
 package entities;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 public class User {
@@ -8,6 +9,10 @@ public class User {
     private String userName;
     private String role;
     private boolean active;
+    @JsonIgnore
+    private long version;
+    @JsonIgnore
+    private transient volatile byte[] json;
 
     public User() {};
 
@@ -22,12 +27,18 @@ public class User {
         this.active = active;
     }
 
+    public User(long id, String userName, String role, boolean active, long version) {
+        this(id, userName, role, active);
+        this.version = version;
+    }
+
     public long getUserId() {
         return userId;
     }
 
     public void setUserId(long id) {
-        this.userId =  userId;
+        this.userId = id;
+        this.json = null;
     }
 
     public String getUserName() {
@@ -36,6 +47,7 @@ public class User {
 
     public void setUserName(String userName) {
         this.userName = userName;
+        this.json = null;
     }
 
     public String getRole() {
@@ -44,6 +56,7 @@ public class User {
 
     public void setRole(String role) {
         this.role = role;
+        this.json = null;
     }
 
     public boolean isActive() {
@@ -52,6 +65,35 @@ public class User {
 
     public void setActive(boolean active) {
         this.active = active;
+        this.json = null;
+    }
+
+    /**
+     * Store-assigned version of this record, changes on every mutation.
+     */
+    @JsonIgnore
+    public long getVersion() {
+        return version;
+    }
+
+    @JsonIgnore
+    public void setVersion(long version) {
+        this.version = version;
+        this.json = null;
+    }
+
+    /**
+     * Serialized JSON of this record, cached by the message converter. Every setter drops it, and the store
+     * writes each version as a new record, so the bytes never outlive the state they encode.
+     */
+    @JsonIgnore
+    public byte[] getJson() {
+        return json;
+    }
+
+    @JsonIgnore
+    public void setJson(byte[] json) {
+        this.json = json;
     }
 
     @Override
@@ -0,0 +1,47 @@
+package entities;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One user mutation as published to change consumers: {@code {"version": 8, "type": "update", "id": 3, "user": {...}}}.
+ * The version is the table version the mutation produced, so it doubles as the sequence number of the change and
+ * matches the ETag of {@code user/all} right after it. A delete carries no user.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserChange {
+
+    public enum Type {
+        @JsonProperty("create") CREATE,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("delete") DELETE
+    }
+
+    private final long version;
+    private final Type type;
+    private final long id;
+    private final User user;
+
+    public UserChange(long version, Type type, long id, User user) {
+        this.version = version;
+        this.type = type;
+        this.id = id;
+        this.user = user;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public User getUser() {
+        return user;
+    }
+}
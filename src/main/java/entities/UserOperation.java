@@ -0,0 +1,63 @@
+package entities;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * One item of a batch request: {@code {"op": "update", "user": {...}, "version": 7}}.
+ * A delete names its target by {@code id}, or by {@code user.id}.
+ */
+public class UserOperation {
+
+    public enum Type {
+        @JsonProperty("create") CREATE,
+        @JsonProperty("update") UPDATE,
+        @JsonProperty("delete") DELETE
+    }
+
+    private Type op;
+    private User user;
+    private Long id;
+    private Long version;
+
+    public UserOperation() {};
+
+    public UserOperation(Type op, User user) {
+        this.op = op;
+        this.user = user;
+    }
+
+    public Type getOp() {
+        return op;
+    }
+
+    public void setOp(Type op) {
+        this.op = op;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    /**
+     * Optional expected version, the batch counterpart of {@code If-Match}.
+     */
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+}
@@ -0,0 +1,55 @@
+package entities;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * Outcome of one batch item, with the HTTP status the equivalent single request would have produced.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class UserOperationResult {
+    private int index;
+    private long id;
+    private int status;
+    private String message;
+
+    public UserOperationResult() {};
+
+    public UserOperationResult(int index, long id, int status, String message) {
+        this.index = index;
+        this.id = id;
+        this.status = status;
+        this.message = message;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public void setIndex(int index) {
+        this.index = index;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    public void setMessage(String message) {
+        this.message = message;
+    }
+}
@@ -0,0 +1,8 @@
+package exceptions;
+
+public class UserTooLargeException extends RuntimeException {
+
+    public UserTooLargeException(String message) {
+        super(message);
+    }
+}
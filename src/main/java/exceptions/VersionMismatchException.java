@@ -0,0 +1,8 @@
+package exceptions;
+
+public class VersionMismatchException extends RuntimeException {
+
+    public VersionMismatchException(String message) {
+        super(message);
+    }
+}
@@ -1,5 +1,8 @@
 package exceptions.advice;
 
+import exceptions.UserTooLargeException;
+import exceptions.VersionMismatchException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -12,9 +15,24 @@ import java.util.NoSuchElementException;
 @RestControllerAdvice
 public class ControllerExceptionHandler extends ResponseEntityExceptionHandler {
 
+    @Value("${errors.lean:false}")
+    private boolean lean;
+
     @ExceptionHandler({NoSuchElementException.class})
     protected ResponseEntity<Object> handleNoSuchElementInternalError(Exception e) {
-        ExceptionMapper exceptionMapper = new ExceptionMapper(e, HttpStatus.INTERNAL_SERVER_ERROR);
+        ExceptionMapper exceptionMapper = new ExceptionMapper(e, HttpStatus.INTERNAL_SERVER_ERROR, lean);
+        return new ResponseEntity<>(exceptionMapper, new HttpHeaders(), exceptionMapper.getStatus());
+    }
+
+    @ExceptionHandler({VersionMismatchException.class})
+    protected ResponseEntity<Object> handleVersionMismatch(Exception e) {
+        ExceptionMapper exceptionMapper = new ExceptionMapper(e, HttpStatus.PRECONDITION_FAILED, lean);
+        return new ResponseEntity<>(exceptionMapper, new HttpHeaders(), exceptionMapper.getStatus());
+    }
+
+    @ExceptionHandler({UserTooLargeException.class})
+    protected ResponseEntity<Object> handleUserTooLarge(Exception e) {
+        ExceptionMapper exceptionMapper = new ExceptionMapper(e, HttpStatus.PAYLOAD_TOO_LARGE, lean);
         return new ResponseEntity<>(exceptionMapper, new HttpHeaders(), exceptionMapper.getStatus());
     }
 }
@@ -0,0 +1,47 @@
+package exceptions.advice;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Component;
+import services.UserService;
+
+/**
+ * Error responses built once and returned as they are: the {@link ExceptionMapper} body is serialized up front with
+ * the application's {@link ObjectMapper}, so answering an expected failure such as an unknown id neither throws nor
+ * runs Jackson.
+ */
+@Component
+public class ErrorResponses {
+
+    private final ResponseEntity<Object> notFound;
+
+    /**
+     * @param lean without {@code systemError}, see {@link ExceptionMapper}
+     */
+    public ErrorResponses(ObjectMapper objectMapper, @Value("${errors.lean:false}") boolean lean) {
+        this.notFound = build(objectMapper, HttpStatus.NOT_FOUND, UserService.NOT_FOUND_MESSAGE, lean);
+    }
+
+    public ResponseEntity<Object> notFound() {
+        return notFound;
+    }
+
+    private static ResponseEntity<Object> build(ObjectMapper objectMapper, HttpStatus status, String message,
+                                                boolean lean) {
+        byte[] body;
+        try {
+            body = objectMapper.writeValueAsBytes(new ExceptionMapper(status, message, lean));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+        headers.setContentLength(body.length);
+        return new ResponseEntity<>(body, HttpHeaders.readOnlyHttpHeaders(headers), status);
+    }
+}
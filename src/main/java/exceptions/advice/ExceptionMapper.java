@@ -1,5 +1,6 @@
 package exceptions.advice;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import org.springframework.http.HttpStatus;
 import org.springframework.web.context.request.WebRequest;
 
@@ -9,9 +10,22 @@ public class ExceptionMapper {
     private String systemError;
 
     public ExceptionMapper(Exception e, HttpStatus status) {
-        this.message = e.getMessage();
+        this(e, status, false);
+    }
+
+    /**
+     * @param lean leave out {@code systemError}, which only repeats the status and the message
+     */
+    public ExceptionMapper(Exception e, HttpStatus status, boolean lean) {
+        this(status, e.getMessage(), lean);
+    }
+
+    public ExceptionMapper(HttpStatus status, String message, boolean lean) {
+        this.message = message;
         this.status = status;
-        this.systemError = status.value() + ": " + status.getReasonPhrase() + ". Request has failed. Error message: " + e.getMessage();
+        if (!lean) {
+            this.systemError = status.value() + ": " + status.getReasonPhrase() + ". Request has failed. Error message: " + message;
+        }
     }
 
     public HttpStatus getStatus() {
@@ -30,6 +44,7 @@ public class ExceptionMapper {
         this.message = message;
     }
 
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     public String getSystemError() {
         return systemError;
     }
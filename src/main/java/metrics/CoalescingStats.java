@@ -0,0 +1,33 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * How often requests ran a computation themselves and how often they shared one already in flight.
+ */
+public class CoalescingStats {
+
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public void executed() {
+        executed.increment();
+    }
+
+    public void coalesced() {
+        coalesced.increment();
+    }
+
+    public Map<String, Object> snapshot() {
+        long executedCount = executed.sum();
+        long coalescedCount = coalesced.sum();
+        long total = executedCount + coalescedCount;
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("executed", executedCount);
+        snapshot.put("coalesced", coalescedCount);
+        snapshot.put("ratio", total == 0 ? 0.0 : (double) coalescedCount / total);
+        return snapshot;
+    }
+}
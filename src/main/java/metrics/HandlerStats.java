@@ -0,0 +1,37 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Latency and responses by status code of one handler method.
+ */
+public class HandlerStats {
+
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final AtomicLongArray statuses = new AtomicLongArray(600);
+
+    public void record(long nanos, int status) {
+        latency.record(nanos);
+        statuses.incrementAndGet(status >= 0 && status < 600 ? status : 0);
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = latency.snapshot();
+        Map<String, Long> byStatus = new TreeMap<>();
+        long errors = 0;
+        for (int status = 0; status < statuses.length(); status++) {
+            long count = statuses.get(status);
+            if (count > 0) {
+                byStatus.put(Integer.toString(status), count);
+                if (status >= 400 || status == 0) {
+                    errors += count;
+                }
+            }
+        }
+        snapshot.put("errors", errors);
+        snapshot.put("statuses", byStatus);
+        return snapshot;
+    }
+}
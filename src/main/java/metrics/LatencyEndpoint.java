@@ -0,0 +1,25 @@
+package metrics;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+
+/**
+ * {@code GET /actuator/latency}: per-handler latency percentiles and status counts, store operation timings and
+ * how often concurrent identical reads were coalesced.
+ */
+@Endpoint(id = "latency")
+public class LatencyEndpoint {
+
+    private final Metrics metrics;
+
+    public LatencyEndpoint(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @ReadOperation
+    public Map<String, Object> latency() {
+        return metrics.snapshot();
+    }
+}
@@ -0,0 +1,45 @@
+package metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution in nanoseconds, recorded into an HdrHistogram {@link Recorder}: recording is wait-free and
+ * allocation-free from any number of threads. Values above one minute are clamped, so recording never resizes.
+ */
+public class LatencyHistogram {
+
+    static final long HIGHEST_TRACKABLE = TimeUnit.MINUTES.toNanos(1);
+
+    private final Recorder recorder = new Recorder(HIGHEST_TRACKABLE, 2);
+    private final Histogram total = new Histogram(HIGHEST_TRACKABLE, 2);
+    private Histogram interval;
+
+    public void record(long nanos) {
+        recorder.recordValue(nanos < 0 ? 0 : Math.min(nanos, HIGHEST_TRACKABLE));
+    }
+
+    /**
+     * Cumulative statistics since start, in microseconds.
+     */
+    public synchronized Map<String, Object> snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        total.add(interval);
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("count", total.getTotalCount());
+        snapshot.put("mean", micros(total.getMean()));
+        snapshot.put("p50", micros(total.getValueAtPercentile(50)));
+        snapshot.put("p99", micros(total.getValueAtPercentile(99)));
+        snapshot.put("p999", micros(total.getValueAtPercentile(99.9)));
+        snapshot.put("max", micros(total.getMaxValue()));
+        return snapshot;
+    }
+
+    private static double micros(double nanos) {
+        return Math.round(nanos / 100) / 10.0;
+    }
+}
@@ -0,0 +1,55 @@
+package metrics;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of handler, store and coalescing statistics. Entries are created on first use; looking up an existing
+ * one does not allocate.
+ */
+public class Metrics {
+
+    public static final String UNMATCHED = "unmatched";
+
+    private final ConcurrentHashMap<Method, HandlerStats> handlers = new ConcurrentHashMap<>();
+    private final HandlerStats unmatched = new HandlerStats();
+    private final ConcurrentHashMap<String, LatencyHistogram> store = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, CoalescingStats> coalescing = new ConcurrentHashMap<>();
+
+    /**
+     * @param handler the handler method, or {@code null} for requests no handler was mapped to
+     */
+    public HandlerStats handler(Method handler) {
+        if (handler == null) {
+            return unmatched;
+        }
+        HandlerStats stats = handlers.get(handler);
+        return stats != null ? stats : handlers.computeIfAbsent(handler, method -> new HandlerStats());
+    }
+
+    public LatencyHistogram store(String operation) {
+        return store.computeIfAbsent(operation, name -> new LatencyHistogram());
+    }
+
+    public CoalescingStats coalescing(String endpoint) {
+        return coalescing.computeIfAbsent(endpoint, name -> new CoalescingStats());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> handlerSnapshots = new TreeMap<>();
+        handlers.forEach((method, stats) ->
+                handlerSnapshots.put(method.getDeclaringClass().getSimpleName() + "." + method.getName(), stats.snapshot()));
+        handlerSnapshots.put(UNMATCHED, unmatched.snapshot());
+        Map<String, Object> storeSnapshots = new TreeMap<>();
+        store.forEach((operation, latency) -> storeSnapshots.put(operation, latency.snapshot()));
+        Map<String, Object> coalescingSnapshots = new TreeMap<>();
+        coalescing.forEach((endpoint, stats) -> coalescingSnapshots.put(endpoint, stats.snapshot()));
+        Map<String, Object> snapshot = new TreeMap<>();
+        snapshot.put("handlers", handlerSnapshots);
+        snapshot.put("store", storeSnapshots);
+        snapshot.put("coalescing", coalescingSnapshots);
+        return snapshot;
+    }
+}
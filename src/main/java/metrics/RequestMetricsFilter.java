@@ -0,0 +1,116 @@
+package metrics;
+
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Times every request and files it under the handler method Spring MVC dispatched it to, with its final status,
+ * including the statuses set by {@code ControllerExceptionHandler}. An exception that escapes the dispatcher
+ * counts as a 500. Asynchronous requests are timed until their handler returns.
+ * <p>
+ * The recording path does not allocate: the start time is a local, and the {@link #handlerInterceptor()} hands the
+ * handler method over in a slot of a fixed table rather than a request attribute. A request claims the free slot
+ * nearest to its thread's id for as long as it runs, so unlike a thread-local the slots are not made anew for every
+ * virtual thread. Only when all slots near it are taken does the hand-over fall back to a request attribute.
+ */
+public class RequestMetricsFilter implements Filter {
+
+    private static final String HANDLER_ATTRIBUTE = RequestMetricsFilter.class.getName() + ".handler";
+
+    private static final int SLOTS = 1024;
+    private static final int PROBES = 16;
+
+    private final Metrics metrics;
+    private final AtomicReferenceArray<Thread> owners = new AtomicReferenceArray<>(SLOTS);
+    /**
+     * Read and written only by the thread owning the slot.
+     */
+    private final Method[] handlers = new Method[SLOTS];
+
+    public RequestMetricsFilter(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Has to be registered with Spring MVC for requests to be attributed to their handler method.
+     */
+    public HandlerCapture handlerInterceptor() {
+        return new HandlerCapture();
+    }
+
+    public final class HandlerCapture implements HandlerInterceptor {
+        @Override
+        public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+            if (handler instanceof HandlerMethod) {
+                int slot = find(Thread.currentThread());
+                if (slot >= 0) {
+                    handlers[slot] = ((HandlerMethod) handler).getMethod();
+                } else {
+                    request.setAttribute(HANDLER_ATTRIBUTE, ((HandlerMethod) handler).getMethod());
+                }
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        int slot = claim(Thread.currentThread());
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            chain.doFilter(request, response);
+            failed = false;
+        } finally {
+            int status = failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : ((HttpServletResponse) response).getStatus();
+            Method handler;
+            if (slot >= 0) {
+                handler = handlers[slot];
+                handlers[slot] = null;
+                owners.set(slot, null);
+            } else {
+                handler = (Method) request.getAttribute(HANDLER_ATTRIBUTE);
+            }
+            metrics.handler(handler).record(System.nanoTime() - start, status);
+        }
+    }
+
+    private int claim(Thread thread) {
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (int) (thread.getId() + probe) & (SLOTS - 1);
+            if (owners.get(slot) == null && owners.compareAndSet(slot, null, thread)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the slot claimed by the filter on this thread, or -1 if it had to do without one
+     */
+    private int find(Thread thread) {
+        for (int probe = 0; probe < PROBES; probe++) {
+            int slot = (int) (thread.getId() + probe) & (SLOTS - 1);
+            if (owners.get(slot) == thread) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void destroy() {
+    }
+}
@@ -0,0 +1,231 @@
+package replication;
+
+import entities.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.UserService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static replication.ReplicationProtocol.*;
+
+/**
+ * Replica side of replication: keeps a connection to the primary, reconnecting after failures, and applies what
+ * it receives to the local {@link UserService}, which then serves reads at the primary's versions. The first
+ * connection of a run always starts from a snapshot; reconnecting to the same primary run continues after the
+ * last applied change.
+ * <p>
+ * Lag is tracked in versions, against the primary version of the latest heartbeat, and in time since this replica
+ * was last known to hold everything the primary had.
+ */
+public class ReplicaClient implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicaClient.class);
+
+    private final UserService userService;
+    private final InetSocketAddress primary;
+    private final long heartbeatMillis;
+    private final Thread thread;
+    private final LongAdder snapshots = new LongAdder();
+    private final LongAdder reconnects = new LongAdder();
+    private final Object progress = new Object();
+    private volatile int waiters;
+    private volatile boolean running = true;
+    private volatile Socket socket;
+    private volatile boolean connected;
+    private volatile long primaryVersion = -1;
+    private volatile long caughtUpMillis;
+    /**
+     * Epoch of the primary run the local table was synchronized from, {@code 0} before the first snapshot.
+     */
+    private volatile long epoch;
+
+    public ReplicaClient(UserService userService, InetSocketAddress primary, long heartbeatMillis) {
+        this.userService = userService;
+        this.primary = primary;
+        this.heartbeatMillis = heartbeatMillis;
+        this.thread = new Thread(this::run, "user-replica");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Whether the local table was loaded from a primary yet; until then it holds no data of the primary.
+     */
+    public boolean isSynchronized() {
+        return epoch != 0;
+    }
+
+    /**
+     * Waits until the local table holds version {@code version}, the read-your-writes token a client got from
+     * the primary.
+     *
+     * @return whether it does within the timeout
+     */
+    public boolean awaitVersion(long version, long timeoutMillis) throws InterruptedException {
+        if (reached(version)) {
+            return true;
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        synchronized (progress) {
+            waiters++;
+            try {
+                while (!reached(version)) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    progress.wait(remaining);
+                }
+                return true;
+            } finally {
+                waiters--;
+            }
+        }
+    }
+
+    private boolean reached(long version) {
+        return epoch != 0 && userService.getVersion() >= version;
+    }
+
+    public long lagVersions() {
+        long primary = primaryVersion;
+        return primary < 0 ? -1 : Math.max(0, primary - userService.getVersion());
+    }
+
+    /**
+     * {@code 0} while connected and up to date, otherwise milliseconds since the replica last was; {@code -1}
+     * before it ever was.
+     */
+    public long lagMillis() {
+        if (caughtUpMillis == 0) {
+            return -1;
+        }
+        return connected && lagVersions() == 0 ? 0 : Math.max(0, System.currentTimeMillis() - caughtUpMillis);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "replica");
+        status.put("primary", primary.getHostString() + ":" + primary.getPort());
+        status.put("connected", connected);
+        status.put("synchronized", isSynchronized());
+        status.put("version", userService.getVersion());
+        status.put("primaryVersion", primaryVersion);
+        status.put("lagVersions", lagVersions());
+        status.put("lagMillis", lagMillis());
+        status.put("snapshots", snapshots.sum());
+        status.put("reconnects", reconnects.sum());
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        thread.interrupt();
+        Socket current = socket;
+        if (current != null) {
+            current.close();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try (Socket connection = new Socket()) {
+                socket = connection;
+                connection.connect(primary, (int) Math.max(1000, heartbeatMillis * 10));
+                connection.setSoTimeout((int) Math.max(1000, heartbeatMillis * 20));
+                connection.setTcpNoDelay(true);
+                follow(connection);
+            } catch (IOException e) {
+                if (running) {
+                    log.info("Replication from {} interrupted: {}", primary, e.toString());
+                }
+            } finally {
+                connected = false;
+                socket = null;
+            }
+            if (running) {
+                reconnects.increment();
+                try {
+                    Thread.sleep(Math.max(100, heartbeatMillis * 5));
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void follow(Socket connection) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream(), 1 << 16));
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+        out.writeInt(MAGIC);
+        out.writeLong(epoch);
+        out.writeLong(epoch == 0 ? NO_STATE : userService.getVersion());
+        out.flush();
+        connected = true;
+        while (running) {
+            byte type = in.readByte();
+            switch (type) {
+                case SNAPSHOT:
+                    long snapshotEpoch = in.readLong();
+                    long snapshotVersion = in.readLong();
+                    List<User> users = new ArrayList<>();
+                    for (byte next = in.readByte(); next != END; next = in.readByte()) {
+                        if (next != USER) {
+                            throw new StreamCorruptedException("Unexpected frame " + next + " in a snapshot");
+                        }
+                        users.add(readUser(in));
+                    }
+                    userService.loadReplicated(users, snapshotVersion);
+                    epoch = snapshotEpoch;
+                    snapshots.increment();
+                    log.info("Loaded a snapshot of {} users at version {} from {}", users.size(), snapshotVersion, primary);
+                    progressed();
+                    break;
+                case CHANGE:
+                    userService.applyReplicated(readChange(in));
+                    progressed();
+                    break;
+                case HEARTBEAT:
+                    primaryVersion = in.readLong();
+                    long primaryMillis = in.readLong();
+                    long applied = userService.getVersion();
+                    if (applied >= primaryVersion) {
+                        caughtUpMillis = primaryMillis;
+                    }
+                    out.writeByte(ACK);
+                    out.writeLong(applied);
+                    out.flush();
+                    break;
+                default:
+                    throw new StreamCorruptedException("Unexpected frame " + type);
+            }
+        }
+    }
+
+    private void progressed() {
+        if (primaryVersion >= 0 && userService.getVersion() >= primaryVersion) {
+            caughtUpMillis = System.currentTimeMillis();
+        }
+        if (waiters > 0) {
+            synchronized (progress) {
+                progress.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package replication;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * {@code GET /actuator/replication}: on the primary its version and each replica's acknowledged version, on a
+ * replica its connection state and lag behind the primary.
+ */
+@Endpoint(id = "replication")
+public class ReplicationEndpoint {
+
+    private final Supplier<Map<String, Object>> status;
+
+    public ReplicationEndpoint(Supplier<Map<String, Object>> status) {
+        this.status = status;
+    }
+
+    @ReadOperation
+    public Map<String, Object> replication() {
+        return status.get();
+    }
+}
@@ -0,0 +1,253 @@
+package replication;
+
+import org.springframework.http.HttpHeaders;
+import services.UserService;
+
+import javax.servlet.*;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+/**
+ * Read-your-writes over replicas. On the primary, a mutation of {@code user/*} is answered with the table version
+ * after it in {@value #VERSION_TOKEN}. Controllers commit their responses before the filter chain returns, so the
+ * token is set again before each write to the body, and a streamed batch carries the version of the operations
+ * applied before its headers went out. A read that sends that token back to a replica waits until the replica has applied the version; if it has not within
+ * the wait, the read is redirected to the primary, or refused with 503 when no primary URL is configured.
+ * <p>
+ * A replica that has not loaded a snapshot of the primary yet treats reads like reads it could not wait for.
+ * Replicas are read-only: mutations are redirected to the primary with 307, which keeps method and body, or
+ * refused with 405 without a primary URL.
+ */
+public class ReplicationFilter implements Filter {
+
+    public static final String VERSION_TOKEN = "X-Version-Token";
+
+    private final UserService userService;
+    private final ReplicaClient replica;
+    private final String primaryUrl;
+    private final long readWaitMillis;
+
+    /**
+     * @param replica    {@code null} on the primary
+     * @param primaryUrl base URL of the primary's HTTP server for redirects from a replica; {@code null} for none
+     */
+    public ReplicationFilter(UserService userService, ReplicaClient replica, String primaryUrl, long readWaitMillis) {
+        this.userService = userService;
+        this.replica = replica;
+        this.primaryUrl = primaryUrl;
+        this.readWaitMillis = readWaitMillis;
+    }
+
+    @Override
+    public void init(FilterConfig filterConfig) {
+    }
+
+    @Override
+    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        HttpServletRequest httpRequest = (HttpServletRequest) request;
+        HttpServletResponse httpResponse = (HttpServletResponse) response;
+        String path = httpRequest.getRequestURI().substring(httpRequest.getContextPath().length());
+        if (!path.startsWith("/user") && !path.startsWith("/v2/user")) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String method = httpRequest.getMethod();
+        if (!method.equals("GET") && !method.equals("HEAD")) {
+            if (replica != null) {
+                redirectOrRefuse(httpRequest, httpResponse, HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+                return;
+            }
+            VersionTokenResponse tokenResponse = new VersionTokenResponse(httpResponse);
+            chain.doFilter(request, tokenResponse);
+            tokenResponse.setToken();
+            return;
+        }
+        if (replica == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        String token = httpRequest.getHeader(VERSION_TOKEN);
+        if (token == null && !replica.isSynchronized()) {
+            redirectOrRefuse(httpRequest, httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            return;
+        }
+        if (token != null) {
+            long version;
+            try {
+                version = Long.parseLong(token.trim());
+            } catch (NumberFormatException e) {
+                httpResponse.sendError(HttpServletResponse.SC_BAD_REQUEST);
+                return;
+            }
+            boolean applied;
+            try {
+                applied = replica.awaitVersion(version, readWaitMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                applied = false;
+            }
+            if (!applied) {
+                redirectOrRefuse(httpRequest, httpResponse, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+                return;
+            }
+        }
+        chain.doFilter(request, response);
+    }
+
+    @Override
+    public void destroy() {
+    }
+
+    private void redirectOrRefuse(HttpServletRequest request, HttpServletResponse response, int status) {
+        if (primaryUrl != null) {
+            String query = request.getQueryString();
+            response.setStatus(307);
+            response.setHeader(HttpHeaders.LOCATION, primaryUrl + request.getRequestURI() + (query == null ? "" : "?" + query));
+        } else {
+            response.setStatus(status);
+            if (status == HttpServletResponse.SC_METHOD_NOT_ALLOWED) {
+                response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+            } else {
+                response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            }
+        }
+        response.setContentLength(0);
+    }
+
+    /**
+     * Sets the token to the current version before anything that may commit the response.
+     */
+    private final class VersionTokenResponse extends HttpServletResponseWrapper {
+
+        private ServletOutputStream stream;
+        private PrintWriter writer;
+
+        VersionTokenResponse(HttpServletResponse response) {
+            super(response);
+        }
+
+        void setToken() {
+            if (!isCommitted()) {
+                setHeader(VERSION_TOKEN, Long.toString(userService.getVersion()));
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (stream == null) {
+                stream = new TokenStream(super.getOutputStream());
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            if (writer == null) {
+                writer = new PrintWriter(new FilterWriter(super.getWriter()) {
+                    @Override
+                    public void write(int c) throws IOException {
+                        setToken();
+                        super.write(c);
+                    }
+
+                    @Override
+                    public void write(char[] chars, int offset, int length) throws IOException {
+                        setToken();
+                        super.write(chars, offset, length);
+                    }
+
+                    @Override
+                    public void write(String string, int offset, int length) throws IOException {
+                        setToken();
+                        super.write(string, offset, length);
+                    }
+
+                    @Override
+                    public void flush() throws IOException {
+                        setToken();
+                        super.flush();
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        setToken();
+                        super.close();
+                    }
+                });
+            }
+            return writer;
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            setToken();
+            super.flushBuffer();
+        }
+
+        @Override
+        public void sendError(int status) throws IOException {
+            setToken();
+            super.sendError(status);
+        }
+
+        @Override
+        public void sendError(int status, String message) throws IOException {
+            setToken();
+            super.sendError(status, message);
+        }
+
+        @Override
+        public void sendRedirect(String location) throws IOException {
+            setToken();
+            super.sendRedirect(location);
+        }
+
+        private final class TokenStream extends ServletOutputStream {
+
+            private final ServletOutputStream out;
+
+            TokenStream(ServletOutputStream out) {
+                this.out = out;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                setToken();
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                setToken();
+                out.write(bytes, offset, length);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                setToken();
+                out.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                setToken();
+                out.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return out.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                out.setWriteListener(writeListener);
+            }
+        }
+    }
+}
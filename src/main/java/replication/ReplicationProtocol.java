@@ -0,0 +1,106 @@
+package replication;
+
+import entities.User;
+import entities.UserChange;
+import services.UserService;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format between a primary and its replicas, over one TCP connection per replica.
+ * <p>
+ * The replica opens with {@code int magic, long epoch, long after}: the primary run it last synchronized from and
+ * the version it has applied, or {@value #NO_STATE} to ask for a snapshot. The primary answers with frames, each
+ * starting with a type byte:
+ * <ul>
+ * <li>{@code SNAPSHOT long epoch, long version}, then one {@code USER record} per user and {@code END}: the whole table,
+ * holding every change up to at least {@code version};</li>
+ * <li>{@code CHANGE long version, long id, byte hasUser[, record]}: one mutation, in version order;</li>
+ * <li>{@code HEARTBEAT long version, long millis}: the primary's version and clock, after every batch of changes
+ * and while idle.</li>
+ * </ul>
+ * The replica answers every heartbeat with {@code ACK long version}, the version it has applied. A record is
+ * {@code long id, long version, boolean active, string userName, string role}, strings as {@code int length}
+ * ({@code -1} for {@code null}) and UTF-8 bytes.
+ */
+final class ReplicationProtocol {
+
+    static final int MAGIC = 0x55535250;
+    static final long NO_STATE = -1;
+
+    static final byte SNAPSHOT = 1;
+    static final byte USER = 2;
+    static final byte END = 3;
+    static final byte CHANGE = 4;
+    static final byte HEARTBEAT = 5;
+    static final byte ACK = 6;
+
+    private ReplicationProtocol() {
+    }
+
+    static void writeChange(DataOutputStream out, UserChange change) throws IOException {
+        out.writeByte(CHANGE);
+        out.writeLong(change.getVersion());
+        out.writeLong(change.getId());
+        out.writeBoolean(change.getUser() != null);
+        if (change.getUser() != null) {
+            writeUser(out, change.getUser());
+        }
+    }
+
+    /**
+     * Reads the body of a {@link #CHANGE} frame.
+     */
+    static UserChange readChange(DataInputStream in) throws IOException {
+        long version = in.readLong();
+        long id = in.readLong();
+        if (!in.readBoolean()) {
+            return new UserChange(version, UserChange.Type.DELETE, id, null);
+        }
+        // create or update is the primary's distinction; a replica applies both as an upsert
+        return new UserChange(version, UserChange.Type.UPDATE, id, readUser(in));
+    }
+
+    static void writeUser(DataOutputStream out, User user) throws IOException {
+        out.writeLong(user.getUserId());
+        out.writeLong(user.getVersion());
+        out.writeBoolean(user.isActive());
+        writeString(out, user.getUserName());
+        writeString(out, user.getRole());
+    }
+
+    static User readUser(DataInputStream in) throws IOException {
+        long id = in.readLong();
+        long version = in.readLong();
+        boolean active = in.readBoolean();
+        String userName = readString(in);
+        return new User(id, userName, readString(in), active, version);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        if (length > UserService.MAX_STRING_BYTES) {
+            throw new StreamCorruptedException("String of " + length + " bytes");
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
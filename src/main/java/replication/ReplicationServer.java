@@ -0,0 +1,227 @@
+package replication;
+
+import entities.UserChange;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import services.UserChangeLog;
+import services.UserService;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import static replication.ReplicationProtocol.*;
+
+/**
+ * Primary side of replication: ships the {@link UserChangeLog} to every connected replica, one sender thread per
+ * replica, woken by the log on every change. A replica that asks for changes the log no longer holds, that comes
+ * from another primary or from an earlier run of this one, or that falls behind by more than the log holds while
+ * connected, first receives a snapshot of the table.
+ * <p>
+ * Snapshots are fuzzy like those of the write-ahead log: they are taken without stopping writers, so they may
+ * already hold records newer than their version. The changes after that version are sent anyway, and replaying
+ * them brings the replica to the primary's state.
+ */
+public class ReplicationServer implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationServer.class);
+
+    private final UserService userService;
+    private final UserChangeLog changeLog;
+    private final ServerSocket serverSocket;
+    private final long heartbeatNanos;
+    /**
+     * Identifies this run of the primary, so a replica never continues from a version of another history.
+     */
+    private final long epoch = ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final LongAdder snapshots = new LongAdder();
+    private final Runnable listener = this::wakeSessions;
+    private final Thread acceptor;
+    private volatile boolean running = true;
+
+    public ReplicationServer(UserService userService, InetSocketAddress address, long heartbeatMillis) throws IOException {
+        this.userService = userService;
+        this.changeLog = userService.getChangeLog();
+        this.heartbeatNanos = TimeUnit.MILLISECONDS.toNanos(heartbeatMillis);
+        this.serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address);
+        changeLog.addListener(listener);
+        this.acceptor = new Thread(this::acceptLoop, "user-replication-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        log.info("Replicating users on {}", serverSocket.getLocalSocketAddress());
+    }
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    public Map<String, Object> status() {
+        long version = changeLog.last();
+        List<Map<String, Object>> replicas = new ArrayList<>();
+        for (Session session : sessions) {
+            Map<String, Object> replica = new LinkedHashMap<>();
+            replica.put("address", session.remote);
+            replica.put("sentVersion", session.sent);
+            replica.put("ackedVersion", session.acked);
+            replica.put("lagVersions", session.acked < 0 ? null : Math.max(0, version - session.acked));
+            replicas.add(replica);
+        }
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("role", "primary");
+        status.put("port", port());
+        status.put("version", version);
+        status.put("snapshots", snapshots.sum());
+        status.put("replicas", replicas);
+        return status;
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        changeLog.removeListener(listener);
+        serverSocket.close();
+        for (Session session : sessions) {
+            session.socket.close();
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(socket);
+                sessions.add(session);
+                session.thread.start();
+            } catch (IOException e) {
+                if (running) {
+                    log.warn("Accepting a replica failed", e);
+                }
+            }
+        }
+    }
+
+    private void wakeSessions() {
+        for (Session session : sessions) {
+            LockSupport.unpark(session.thread);
+        }
+    }
+
+    private final class Session implements Runnable {
+
+        final Socket socket;
+        final String remote;
+        final Thread thread;
+        volatile long sent = -1;
+        volatile long acked = -1;
+
+        Session(Socket socket) {
+            this.socket = socket;
+            this.remote = socket.getRemoteSocketAddress().toString();
+            this.thread = new Thread(this, "user-replication-" + remote);
+            thread.setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (Socket ignored = socket) {
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), 1 << 16));
+                if (in.readInt() != MAGIC) {
+                    throw new StreamCorruptedException("Not a replica");
+                }
+                long replicaEpoch = in.readLong();
+                long after = in.readLong();
+                log.info("Replica {} connected after version {}", remote, after);
+                long next = replicaEpoch != epoch || after == NO_STATE || after < changeLog.first() - 1
+                        || after > changeLog.last() ? snapshot(out) + 1 : after + 1;
+                long lastHeartbeat = 0;
+                while (running) {
+                    boolean wrote = false;
+                    for (long last = changeLog.last(); next <= last; next++) {
+                        UserChange change = changeLog.get(next);
+                        if (change == null) {
+                            // lapped by the writers: start over from the table
+                            next = snapshot(out);
+                            last = changeLog.last();
+                            continue;
+                        }
+                        writeChange(out, change);
+                        wrote = true;
+                    }
+                    sent = next - 1;
+                    long now = System.nanoTime();
+                    if (wrote || now - lastHeartbeat >= heartbeatNanos) {
+                        out.writeByte(HEARTBEAT);
+                        out.writeLong(next - 1);
+                        out.writeLong(System.currentTimeMillis());
+                        out.flush();
+                        lastHeartbeat = now;
+                    }
+                    while (in.available() >= 9) {
+                        if (in.readByte() != ACK) {
+                            throw new StreamCorruptedException("Expected an ack");
+                        }
+                        acked = in.readLong();
+                    }
+                    if (changeLog.last() < next) {
+                        LockSupport.parkNanos(this, heartbeatNanos);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    log.info("Replica {} disconnected: {}", remote, e.toString());
+                }
+            } finally {
+                sessions.remove(this);
+            }
+        }
+
+        /**
+         * @return the version the snapshot holds every change up to
+         */
+        private long snapshot(DataOutputStream out) throws IOException {
+            long version = changeLog.last();
+            out.writeByte(SNAPSHOT);
+            out.writeLong(epoch);
+            out.writeLong(version);
+            try {
+                userService.forEachUser(null, null, user -> {
+                    try {
+                        out.writeByte(USER);
+                        writeUser(out, user);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeByte(END);
+            snapshots.increment();
+            log.info("Sent replica {} a snapshot at version {}", remote, version);
+            return version;
+        }
+    }
+}
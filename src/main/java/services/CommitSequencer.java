@@ -0,0 +1,164 @@
+package services;
+
+import entities.UserChange;
+import services.store.ConcurrentLongHashMap;
+import services.store.UserJournal;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Orders the mutations of all shards. Versions are handed out without a lock, and writers of different shards
+ * finish their mutations in parallel and in any order. A finished mutation is committed: the journal and the
+ * change log receive it in version order and without gaps, written by whichever writer finds the next version
+ * finished, while the others return at once. The only serial step left is that append.
+ * <p>
+ * A version whose append fails is committed all the same, so later ones are not held up, and the failure is kept
+ * for the writer that owns the version: it is rethrown by {@link #await}, never to the writer that happened to be
+ * publishing.
+ */
+final class CommitSequencer {
+
+    /**
+     * Stands in for a version whose mutation failed half-way; it is committed without being journaled.
+     */
+    private static final UserChange SKIPPED = new UserChange(-1, UserChange.Type.DELETE, 0, null);
+
+    private final UserJournal journal;
+    private final UserChangeLog changeLog;
+    private final AtomicLong assigned;
+    private final ConcurrentLongHashMap<UserChange> finished = new ConcurrentLongHashMap<>();
+    private final ConcurrentSkipListMap<Long, RuntimeException> failures = new ConcurrentSkipListMap<>();
+    private final ReentrantLock publisher = new ReentrantLock();
+    private volatile long committed;
+
+    /*
+     * Waiters park on their own lock: one holding the publisher lock would make a publisher's tryLock fail and
+     * leave its change to a thread that is not going to publish it.
+     */
+    private final ReentrantLock waiting = new ReentrantLock();
+    private final Condition advanced = waiting.newCondition();
+    private volatile int waiters;
+
+    CommitSequencer(long version, UserJournal journal, UserChangeLog changeLog) {
+        this.journal = journal;
+        this.changeLog = changeLog;
+        this.assigned = new AtomicLong(version);
+        this.committed = version;
+    }
+
+    long next() {
+        return assigned.incrementAndGet();
+    }
+
+    long assigned() {
+        return assigned.get();
+    }
+
+    /**
+     * Every version up to this one is journaled and published.
+     */
+    long committed() {
+        return committed;
+    }
+
+    void commit(UserChange change) {
+        finished.put(change.getVersion(), change);
+        publish();
+    }
+
+    /**
+     * Commits all the changes, also when journaling one of them fails.
+     */
+    void commitAll(List<UserChange> changes) {
+        for (UserChange change : changes) {
+            finished.put(change.getVersion(), change);
+        }
+        publish();
+    }
+
+    void skip(long version) {
+        finished.put(version, SKIPPED);
+        publish();
+    }
+
+    /**
+     * Waits until {@code to} is committed; only writers of earlier versions, which hold no lock the caller needs,
+     * stand in the way.
+     *
+     * @param from first of the versions the caller owns; with {@code to}, a range only the caller has taken
+     *             versions from, which writes under the locks of all shards can be sure of
+     * @throws RuntimeException the first failure to journal one of the caller's versions
+     */
+    void await(long from, long to) {
+        if (committed < to) {
+            waiting.lock();
+            try {
+                waiters++;
+                while (committed < to) {
+                    advanced.awaitUninterruptibly();
+                }
+            } finally {
+                waiters--;
+                waiting.unlock();
+            }
+        }
+        if (!failures.isEmpty()) {
+            ConcurrentNavigableMap<Long, RuntimeException> owned = failures.subMap(from, true, to, true);
+            Iterator<RuntimeException> failed = owned.values().iterator();
+            if (failed.hasNext()) {
+                RuntimeException failure = failed.next();
+                owned.clear();
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Continues from {@code version}; only while no version is in flight, that is under the locks of all shards.
+     */
+    void reset(long version) {
+        assigned.set(version);
+        committed = version;
+        failures.clear();
+    }
+
+    private void publish() {
+        long before = committed;
+        while (publisher.tryLock()) {
+            try {
+                for (UserChange change = finished.remove(committed + 1); change != null; change = finished.remove(committed + 1)) {
+                    try {
+                        if (change != SKIPPED) {
+                            journal.append(change.getVersion(), change.getId(), change.getUser());
+                            changeLog.publish(change);
+                        }
+                    } catch (RuntimeException e) {
+                        failures.put(change.getVersion(), e);
+                    } finally {
+                        committed++;
+                    }
+                }
+            } finally {
+                publisher.unlock();
+            }
+            // a writer that finished the next version while the lock was held left publishing it to us
+            if (!finished.containsKey(committed + 1)) {
+                break;
+            }
+        }
+        if (committed != before && waiters > 0) {
+            waiting.lock();
+            try {
+                advanced.signalAll();
+            } finally {
+                waiting.unlock();
+            }
+        }
+    }
+}
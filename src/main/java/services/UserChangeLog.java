@@ -0,0 +1,96 @@
+package services;
+
+import entities.UserChange;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * The most recent user changes in a bounded ring, addressed by version. There is one writer at a time, the thread
+ * committing the changes of {@link UserService} in version order, and any number of lock-free readers: a slot is written before the volatile
+ * {@link #last()} that publishes it, and a reader that was lapped notices because the slot then holds a change of
+ * another version. The ring never blocks the writer; a reader that falls more than the capacity behind loses the
+ * changes in between and has to resynchronize from the full table.
+ */
+public class UserChangeLog {
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final AtomicReferenceArray<UserChange> slots;
+    private final int mask;
+    private volatile long first;
+    private volatile long last;
+    private volatile Runnable[] listeners = new Runnable[0];
+
+    /**
+     * @param capacity rounded up to a power of two
+     * @param version  the table version the log starts after
+     */
+    public UserChangeLog(int capacity, long version) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) * 2 - 1);
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.first = version + 1;
+        this.last = version;
+    }
+
+    /**
+     * Must not be called concurrently. A version that does not follow {@link #last()} starts the log over, so
+     * readers behind it resynchronize.
+     */
+    void publish(UserChange change) {
+        long version = change.getVersion();
+        if (version != last + 1) {
+            first = version;
+        }
+        slots.lazySet((int) version & mask, change);
+        last = version;
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Version of the latest change, or the version the log started after if there is none yet.
+     */
+    public long last() {
+        return last;
+    }
+
+    /**
+     * Version of the oldest change still held.
+     */
+    public long first() {
+        return Math.max(first, last - mask);
+    }
+
+    /**
+     * @return the change that produced {@code version}, or {@code null} if it is not published yet or already
+     * overwritten
+     */
+    public UserChange get(long version) {
+        if (version > last) {
+            return null;
+        }
+        UserChange change = slots.get((int) version & mask);
+        return change != null && change.getVersion() == version ? change : null;
+    }
+
+    /**
+     * Runs on the committing thread after every change, while other writers wait for their commit, so it has to be
+     * quick.
+     */
+    public synchronized void addListener(Runnable listener) {
+        Runnable[] added = Arrays.copyOf(listeners, listeners.length + 1);
+        added[listeners.length] = listener;
+        listeners = added;
+    }
+
+    public synchronized void removeListener(Runnable listener) {
+        List<Runnable> remaining = new ArrayList<>(Arrays.asList(listeners));
+        remaining.remove(listener);
+        listeners = remaining.toArray(new Runnable[0]);
+    }
+}
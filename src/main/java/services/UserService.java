@@ -1,56 +1,657 @@
 package services;
 
 import entities.User;
+import entities.UserChange;
+import entities.UserOperation;
+import entities.UserOperationResult;
+import exceptions.UserTooLargeException;
+import exceptions.VersionMismatchException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.CachePut;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
+import org.springframework.beans.factory.annotation.Value;
+import services.store.ConcurrentLongHashSet;
+import services.store.HashUserRepository;
+import services.store.ShardedUserIndexes;
+import services.store.UserColumns;
+import services.store.UserJournal;
+import services.store.UserRepository;
+import services.store.UserSearchIndex;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 @Service
 public class UserService {
 
-    private static List<User> userList = new ArrayList<>();
+    public static final String USERS_CACHE = "users";
 
-    private static AtomicLong counter = new AtomicLong();
+    /**
+     * Message of a lookup or update of an unknown id.
+     */
+    public static final String NOT_FOUND_MESSAGE = "No value present";
 
-    static {
-        userList.add(new User(counter.incrementAndGet(), "Vitalii", "Chief", true));
-        userList.add(new User(counter.incrementAndGet(), "Volodya", "Chief", true));
-        userList.add(new User(counter.incrementAndGet(), "Petro", "Developer", false));
-        userList.add(new User(counter.incrementAndGet(), "Oleg", "Manager", false));
-        userList.add(new User(counter.incrementAndGet(), "Nazar", "Homeless", true));
-        userList.add(new User(counter.incrementAndGet(), "Adam", "Homeless", true));
+    /**
+     * Longest user name or role in UTF-8 bytes; replicas refuse longer strings from the primary.
+     */
+    public static final int MAX_STRING_BYTES = 1 << 20;
+
+    private final UserRepository repository;
+
+    private final UserJournal journal;
+
+    private final ShardedUserIndexes indexes;
+
+    /**
+     * Writers lock the shard of the user they write, so the secondary indexes of a shard always agree with the
+     * repository, and writers of different shards run in parallel; readers never lock.
+     */
+    private final Shard[] shards;
+
+    /**
+     * Shard of the next user created without an id, round robin so ids stay dense.
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Hands out a new version to every mutation. It becomes the version of the written record, so versions are
+     * never reused, not even by a user re-created under a deleted id.
+     */
+    private final CommitSequencer sequencer;
+
+    private final UserChangeLog changeLog;
+
+    public UserService() {
+        this(new HashUserRepository());
+    }
+
+    public UserService(UserRepository repository) {
+        this(repository, UserJournal.NONE);
+    }
+
+    public UserService(UserRepository repository, UserJournal journal) {
+        this(repository, journal, 1);
+    }
+
+    /**
+     * @param shards number of write partitions, see {@link ShardedUserIndexes}; {@code -1} for one per CPU
+     */
+    @Autowired
+    public UserService(UserRepository repository, UserJournal journal, @Value("${users.shards:-1}") int shards) {
+        this.repository = repository;
+        this.journal = journal;
+        this.indexes = new ShardedUserIndexes(shards == -1 ? Runtime.getRuntime().availableProcessors() : shards);
+        this.shards = new Shard[indexes.shards()];
+        for (int i = 0; i < this.shards.length; i++) {
+            this.shards[i] = new Shard(i + 1 - this.shards.length);
+        }
+        AtomicLong recoveredVersion = new AtomicLong(journal.recover(repository));
+        List<User[]> recovered = new ArrayList<>(repository.count());
+        repository.forEach(user -> {
+            recovered.add(new User[]{null, user});
+            Shard shard = shardOf(user.getUserId());
+            shard.lastId = Math.max(shard.lastId, user.getUserId());
+            recoveredVersion.accumulateAndGet(user.getVersion(), Math::max);
+        });
+        indexes.updateAll(recovered);
+        changeLog = new UserChangeLog(UserChangeLog.DEFAULT_CAPACITY, recoveredVersion.get());
+        sequencer = new CommitSequencer(recoveredVersion.get(), journal, changeLog);
+        if (repository.count() == 0) {
+            createUser(new User(0, "Vitalii", "Chief", true));
+            createUser(new User(0, "Volodya", "Chief", true));
+            createUser(new User(0, "Petro", "Developer", false));
+            createUser(new User(0, "Oleg", "Manager", false));
+            createUser(new User(0, "Nazar", "Homeless", true));
+            createUser(new User(0, "Adam", "Homeless", true));
+        }
+    }
+
+    /**
+     * Version of the whole user table: changes whenever any user is created, updated or deleted. It is the committed
+     * version, advanced only once the repository and the indexes hold every change up to it, so a response built
+     * after reading it includes at least that state and may tag itself with it.
+     */
+    public long getVersion() {
+        return sequencer.committed();
+    }
+
+    /**
+     * Every mutation from construction on, by version; recovered users are not replayed into it.
+     */
+    public UserChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    public int getShards() {
+        return shards.length;
     }
 
     public List<User> getAllUsers(){
-        return userList;
+        return repository.findAll();
     }
 
     public List<User> getAllUsersV2() {
-        return userList.stream().sorted( Comparator.comparing(User::getUserName)).collect(Collectors.toList());
+        return indexes.sortedByName(repository);
     }
 
+    /**
+     * @param role   exact role to match, or {@code null} for any
+     * @param active flag to match, or {@code null} for any
+     */
+    public List<User> getUsers(String role, Boolean active) {
+        return indexes.find(role, active, repository);
+    }
+
+    public List<User> getUsersV2(String role, Boolean active) {
+        return getUsers(role, active).stream()
+                .sorted(Comparator.comparing(User::getUserName, Comparator.nullsFirst(Comparator.naturalOrder()))
+                        .thenComparingLong(User::getUserId))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Keyset page in id order: up to {@code limit} users with an id greater than {@code afterId}.
+     */
+    public List<User> getUserPage(long afterId, int limit, String role, Boolean active) {
+        return indexes.pageById(afterId, limit, role, active, repository);
+    }
 
+    /**
+     * Keyset page in (userName, id) order, starting right after the given key; pass a {@code null} name and
+     * {@link Long#MIN_VALUE} for the first page.
+     */
+    public List<User> getUserPageV2(String afterName, long afterId, int limit, String role, Boolean active) {
+        return indexes.pageByName(afterName, afterId, limit, role, active, repository);
+    }
+
+    /**
+     * Case-insensitive search on user names, at most {@code limit} results.
+     *
+     * @param substring match anywhere in the name, which needs a query of at least
+     *                  {@value UserSearchIndex#MIN_SUBSTRING_LENGTH} characters; otherwise match name prefixes
+     */
+    public List<User> searchUsers(String query, boolean substring, int limit) {
+        return indexes.search(query, substring, limit, repository);
+    }
+
+    /**
+     * Streams the matching users without materializing a list.
+     */
+    public void forEachUser(String role, Boolean active, Consumer<User> action) {
+        indexes.forEach(role, active, repository, action);
+    }
+
+    /**
+     * Streams the matching users in (userName, id) order without materializing a list.
+     */
+    public void forEachUserV2(String role, Boolean active, Consumer<User> action) {
+        indexes.forEachByName(role, active, repository, action);
+    }
+
+    /**
+     * Result-type lookup: an unknown id is {@link Optional#empty()} rather than an exception, which scanners and
+     * stale clients would otherwise pay a stack trace for on every probe. Cached per id, misses included; creating
+     * the user replaces a cached miss. {@code sync} makes a concurrent eviction wait for an in-flight load instead
+     * of being overwritten by the stale value it loaded.
+     */
+    @Cacheable(cacheNames = USERS_CACHE, key = "#id", sync = true)
+    public Optional<User> findUser(long id) {
+        return Optional.ofNullable(repository.findById(id));
+    }
+
+    /**
+     * Uncached; prefer {@link #findUser} wherever a missing user is an expected outcome.
+     *
+     * @throws NoSuchElementException if there is no user with that id
+     */
     public User getUserWithId(long id) {
-        return userList.stream().filter(u -> u.getUserId() == id).findFirst().get();
+        User user = repository.findById(id);
+        if (user == null) {
+            throw new NoSuchElementException(NOT_FOUND_MESSAGE);
+        }
+        return user;
     }
 
-    public void createUser(User user) {
-        userList.add((int) user.getUserId(), user);
+    /**
+     * Stores the user under its own id, or under the next free id when it has none.
+     */
+    @CachePut(cacheNames = USERS_CACHE, key = "#result.userId")
+    public User createUser(User user) {
+        User created;
+        Shard shard = shardForInsert(user);
+        shard.lock.lock();
+        try {
+            created = insert(user, shard, indexes::update, sequencer::commit);
+        } finally {
+            shard.lock.unlock();
+        }
+        finish(created.getVersion(), created.getVersion());
+        return created;
     }
 
+    /**
+     * Stored users are never modified in place, so concurrent readers always see a consistent record.
+     *
+     * @return the updated user, or {@code null} if there is no user with that id
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#user.userId")
     public User updateUser(User user) {
-        User nativeUser = userList.stream().filter(u -> u.getUserId() == user.getUserId()).findFirst().get();
-        nativeUser.setUserName(user.getUserName());
-        nativeUser.setRole(user.getRole());
-        nativeUser.setActive(user.isActive());
-        return nativeUser;
+        return updateUser(user, -1);
     }
 
+    /**
+     * Optimistic update: applies only if the stored record still has {@code expectedVersion}.
+     *
+     * @return the updated user, or {@code null} if there is no user with that id
+     * @throws VersionMismatchException if the record was changed in the meantime
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#user.userId")
+    public User updateUser(User user, long expectedVersion) {
+        User updated;
+        Shard shard = shardOf(user.getUserId());
+        shard.lock.lock();
+        try {
+            updated = replace(user, expectedVersion, indexes::update, sequencer::commit);
+        } finally {
+            shard.lock.unlock();
+        }
+        if (updated != null) {
+            finish(updated.getVersion(), updated.getVersion());
+        }
+        return updated;
+    }
+
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#id")
     public void deleteUser(long id) {
-        userList.remove(id);
+        long written;
+        Shard shard = shardOf(id);
+        shard.lock.lock();
+        try {
+            written = remove(id, indexes::update, sequencer::commit);
+        } finally {
+            shard.lock.unlock();
+        }
+        finish(written, written);
+    }
+
+    /**
+     * Applies all operations holding the locks of all shards. Secondary indexes receive only the net
+     * change per user once the whole batch is applied, and the cache is cleared once. A failing item does not
+     * stop the batch; its result carries the status the single request would have returned.
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, allEntries = true)
+    public List<UserOperationResult> applyBatch(List<UserOperation> operations) {
+        List<UserOperationResult> results = new ArrayList<>(operations.size());
+        Map<Long, User[]> changes = new LinkedHashMap<>();
+        BiConsumer<User, User> collector = (previous, current) -> {
+            long id = previous != null ? previous.getUserId() : current.getUserId();
+            User[] change = changes.get(id);
+            if (change == null) {
+                changes.put(id, new User[]{previous, current});
+            } else {
+                change[1] = current;
+            }
+        };
+        List<UserChange> committed = new ArrayList<>();
+        long first;
+        long written;
+        lockAll();
+        try {
+            first = sequencer.assigned() + 1;
+            try {
+                for (int i = 0; i < operations.size(); i++) {
+                    results.add(apply(i, operations.get(i), collector, committed::add));
+                }
+                indexes.updateAll(changes.values());
+            } finally {
+                sequencer.commitAll(committed);
+            }
+            written = sequencer.assigned();
+        } finally {
+            unlockAll();
+        }
+        finish(first, written);
+        return results;
+    }
+
+    /**
+     * Writes every user, in no particular order, to the export.
+     */
+    public void exportUsers(UserColumns.Writer writer) throws IOException {
+        try {
+            repository.forEach(user -> {
+                try {
+                    writer.write(user);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Upserts every user of the export under its own id, one chunk of at most {@value UserColumns#CHUNK_SIZE}
+     * users at a time. A chunk is read without locks and then applied under the locks of all shards, which are
+     * released again before the next one, so other writers get in between chunks. Secondary indexes are built in
+     * bulk per chunk; when the import fails half-way, chunks read before a corrupt one stay imported.
+     *
+     * @return the number of imported users
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, allEntries = true)
+    public int importUsers(UserColumns.Reader reader) throws IOException {
+        List<User[]> changes = new ArrayList<>();
+        List<UserChange> committed = new ArrayList<>();
+        int imported = 0;
+        long written = 0;
+        for (List<User> chunk = reader.readChunk(); chunk != null; chunk = reader.readChunk()) {
+            long start;
+            lockAll();
+            try {
+                start = sequencer.assigned();
+                BiConsumer<User, User> collector = (previous, current) -> {
+                    if (previous != null && previous.getVersion() > start) {
+                        // the same id twice in one chunk: apply what is pending so each change sees its predecessor
+                        indexes.updateAll(changes);
+                        changes.clear();
+                    }
+                    changes.add(new User[]{previous, current});
+                };
+                try {
+                    for (User user : chunk) {
+                        insert(user, shardForInsert(user), collector, committed::add);
+                    }
+                } finally {
+                    try {
+                        indexes.updateAll(changes);
+                    } finally {
+                        changes.clear();
+                        try {
+                            sequencer.commitAll(committed);
+                        } finally {
+                            committed.clear();
+                        }
+                    }
+                }
+                written = sequencer.assigned();
+            } finally {
+                unlockAll();
+            }
+            sequencer.await(start + 1, written);
+            imported += chunk.size();
+        }
+        journal.awaitDurable(written);
+        return imported;
+    }
+
+    /**
+     * Replica side of replication: applies a change of the primary under the primary's version, so versions,
+     * ETags and the change log agree across nodes. Changes must arrive in version order; one at or below the
+     * current version is ignored.
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, key = "#change.id")
+    public void applyReplicated(UserChange change) {
+        lockAll();
+        try {
+            if (change.getVersion() <= sequencer.assigned()) {
+                return;
+            }
+            if (change.getVersion() != sequencer.assigned() + 1) {
+                sequencer.reset(change.getVersion() - 1);
+            }
+            sequencer.next();
+            try {
+                User previous = change.getUser() == null ? repository.delete(change.getId()) : repository.save(change.getUser());
+                Shard shard = shardOf(change.getId());
+                shard.lastId = Math.max(shard.lastId, change.getId());
+                if (previous != null || change.getUser() != null) {
+                    indexes.update(previous, change.getUser());
+                }
+            } finally {
+                sequencer.commit(change);
+            }
+        } finally {
+            unlockAll();
+        }
+        sequencer.await(change.getVersion(), change.getVersion());
+    }
+
+    /**
+     * Replica side of replication: replaces the whole table with a snapshot of the primary taken at
+     * {@code snapshotVersion}. The change log starts over after it, so change streams of this node resynchronize.
+     */
+    @CacheEvict(cacheNames = USERS_CACHE, allEntries = true)
+    public void loadReplicated(List<User> users, long snapshotVersion) {
+        ConcurrentLongHashSet ids = new ConcurrentLongHashSet();
+        List<User[]> changes = new ArrayList<>(users.size());
+        lockAll();
+        try {
+            for (User user : users) {
+                ids.add(user.getUserId());
+                Shard shard = shardOf(user.getUserId());
+                shard.lastId = Math.max(shard.lastId, user.getUserId());
+                changes.add(new User[]{repository.save(user), user});
+                journal.append(user.getVersion(), user.getUserId(), user);
+            }
+            List<User> absent = new ArrayList<>();
+            repository.forEach(user -> {
+                if (!ids.contains(user.getUserId())) {
+                    absent.add(user);
+                }
+            });
+            for (User user : absent) {
+                changes.add(new User[]{repository.delete(user.getUserId()), null});
+                journal.append(snapshotVersion, user.getUserId(), null);
+            }
+            sequencer.reset(snapshotVersion);
+            indexes.updateAll(changes);
+        } finally {
+            unlockAll();
+        }
+    }
+
+    private UserOperationResult apply(int index, UserOperation operation, BiConsumer<User, User> changes,
+                                      Consumer<UserChange> commits) {
+        User user = operation.getUser();
+        long expectedVersion = operation.getVersion() == null ? -1 : operation.getVersion();
+        long id = operation.getId() != null ? operation.getId() : user != null ? user.getUserId() : 0;
+        if (operation.getOp() == null) {
+            return new UserOperationResult(index, 0, 400, "Missing op");
+        }
+        try {
+            switch (operation.getOp()) {
+                case CREATE:
+                    if (user == null) {
+                        return new UserOperationResult(index, 0, 400, "Missing user");
+                    }
+                    return new UserOperationResult(index, insert(user, shardForInsert(user), changes, commits).getUserId(), 201, null);
+                case UPDATE:
+                    if (user == null) {
+                        return new UserOperationResult(index, 0, 400, "Missing user");
+                    }
+                    User updated = replace(user, expectedVersion, changes, commits);
+                    if (updated == null) {
+                        return new UserOperationResult(index, id, 404, NOT_FOUND_MESSAGE);
+                    }
+                    return new UserOperationResult(index, updated.getUserId(), 204, null);
+                default:
+                    User current = repository.findById(id);
+                    if (current != null && expectedVersion >= 0 && current.getVersion() != expectedVersion) {
+                        throw new VersionMismatchException("User " + id + " is at version " + current.getVersion());
+                    }
+                    remove(id, changes, commits);
+                    return new UserOperationResult(index, id, 204, null);
+            }
+        } catch (VersionMismatchException e) {
+            return new UserOperationResult(index, id, 412, e.getMessage());
+        } catch (UserTooLargeException e) {
+            return new UserOperationResult(index, id, 413, e.getMessage());
+        }
+    }
+
+    private Shard shardOf(long id) {
+        return shards[indexes.shardOf(id)];
+    }
+
+    private Shard shardForInsert(User user) {
+        if (user.getUserId() > 0) {
+            return shardOf(user.getUserId());
+        }
+        return shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)];
+    }
+
+    /**
+     * In shard order, so batches never deadlock with each other.
+     */
+    private void lockAll() {
+        for (Shard shard : shards) {
+            shard.lock.lock();
+        }
+    }
+
+    private void unlockAll() {
+        for (int i = shards.length - 1; i >= 0; i--) {
+            shards[i].lock.unlock();
+        }
+    }
+
+    /**
+     * Returns once the caller's versions {@code from} to {@code to} are committed and, if the journal waits for
+     * that, durable; rethrows a failure to journal one of them.
+     */
+    private void finish(long from, long to) {
+        sequencer.await(from, to);
+        journal.awaitDurable(to);
+    }
+
+    /*
+     * Mutations below expect the lock of the user's shard to be held. They take a version, write the repository,
+     * report (previous, current) to the index sink, and pass the change to the commit sink: the sequencer itself
+     * when the sink updates the indexes, a list committed after the bulk index update otherwise. The repository is
+     * written before the change is committed, so a journaled version is always visible to snapshots. A mutation
+     * that fails half-way still commits its version, so later ones are not held up.
+     */
+
+    private User insert(User user, Shard shard, BiConsumer<User, User> changes, Consumer<UserChange> commits) {
+        check(user);
+        long id = user.getUserId();
+        if (id > 0) {
+            shard.lastId = Math.max(shard.lastId, id);
+        } else {
+            id = shard.lastId += shards.length;
+        }
+        long version = sequencer.next();
+        UserChange change = null;
+        try {
+            User created = new User(id, user.getUserName(), user.getRole(), user.isActive(), version);
+            User previous = repository.save(created);
+            changes.accept(previous, created);
+            change = new UserChange(version, previous == null ? UserChange.Type.CREATE : UserChange.Type.UPDATE, id, created);
+            return created;
+        } finally {
+            commit(version, change, commits);
+        }
+    }
+
+    private User replace(User user, long expectedVersion, BiConsumer<User, User> changes, Consumer<UserChange> commits) {
+        check(user);
+        User nativeUser = repository.findById(user.getUserId());
+        if (nativeUser == null) {
+            return null;
+        }
+        if (expectedVersion >= 0 && nativeUser.getVersion() != expectedVersion) {
+            throw new VersionMismatchException("User " + user.getUserId() + " is at version " + nativeUser.getVersion());
+        }
+        long version = sequencer.next();
+        UserChange change = null;
+        try {
+            User updated = new User(nativeUser.getUserId(), user.getUserName(), user.getRole(), user.isActive(), version);
+            repository.save(updated);
+            changes.accept(nativeUser, updated);
+            change = new UserChange(version, UserChange.Type.UPDATE, updated.getUserId(), updated);
+            return updated;
+        } finally {
+            commit(version, change, commits);
+        }
+    }
+
+    /**
+     * @return the version of the deletion, {@code 0} if there was no user with that id
+     */
+    private long remove(long id, BiConsumer<User, User> changes, Consumer<UserChange> commits) {
+        User deleted = repository.delete(id);
+        if (deleted == null) {
+            return 0;
+        }
+        long version = sequencer.next();
+        UserChange change = null;
+        try {
+            changes.accept(deleted, null);
+            change = new UserChange(version, UserChange.Type.DELETE, id, null);
+            return version;
+        } finally {
+            commit(version, change, commits);
+        }
+    }
+
+    /**
+     * Rejects a user that could not be replicated or journaled, before anything of the mutation is applied.
+     */
+    private void check(User user) {
+        checkLength(user, user.getUserName());
+        checkLength(user, user.getRole());
+        journal.check(user);
+    }
+
+    private static void checkLength(User user, String value) {
+        // a char takes at most three bytes in UTF-8, so only long strings need encoding to be measured
+        if (value != null && 3L * value.length() > MAX_STRING_BYTES
+                && value.getBytes(StandardCharsets.UTF_8).length > MAX_STRING_BYTES) {
+            throw new UserTooLargeException("User " + user.getUserId() + " has a name or role longer than "
+                    + MAX_STRING_BYTES + " bytes");
+        }
+    }
+
+    private void commit(long version, UserChange change, Consumer<UserChange> commits) {
+        if (change != null) {
+            commits.accept(change);
+        } else {
+            sequencer.skip(version);
+        }
+    }
+
+    /**
+     * A write partition: its lock, and the ids it hands out, which are those of its {@link ShardedUserIndexes}
+     * shard.
+     */
+    private static final class Shard {
+
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * The highest id in the shard, or the one before its first; guarded by {@link #lock}.
+         */
+        long lastId;
+
+        Shard(long lastId) {
+            this.lastId = lastId;
+        }
     }
 }
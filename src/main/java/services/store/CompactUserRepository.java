@@ -0,0 +1,228 @@
+package services.store;
+
+import entities.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Memory-lean engine: users are stored column-wise in flat arrays indexed by slot, not as one {@link User} each.
+ * Roles are dictionary-encoded to an {@code int} code, active flags are packed into a bitset, and names keep the
+ * {@code String} they were saved with, which the name index already holds. Ids map to slots through an
+ * {@link SlotIndex}, so nothing is boxed.
+ * <p>
+ * {@link User}s are materialized on every read. Writers take a {@link StampedLock}; lookups are optimistic and
+ * only fall back to the read lock when a write overlapped them.
+ */
+public class CompactUserRepository implements UserRepository {
+
+    private static final int ITERATION_BATCH = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Integer> roleCodes = new HashMap<>();
+
+    private volatile String[] roles = new String[0];
+    private volatile SlotIndex index;
+    private volatile Columns columns;
+    private volatile int count;
+    private int used;
+    private int[] free = new int[16];
+    private int freeCount;
+
+    public CompactUserRepository() {
+        this(64);
+    }
+
+    public CompactUserRepository(int expectedSize) {
+        int capacity = Math.max(16, expectedSize);
+        this.columns = new Columns(capacity);
+        this.index = SlotIndex.forSize(capacity);
+    }
+
+    @Override
+    public User findById(long id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                User user = read(id);
+                if (lock.validate(stamp)) {
+                    return user;
+                }
+            } catch (RuntimeException e) {
+                // arrays swapped half-way through the optimistic read, retried under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public User save(User user) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = index.get(user.getUserId());
+            User previous = null;
+            if (slot >= 0) {
+                previous = columns.materialize(slot, roles);
+            } else {
+                slot = allocate();
+                index.put(user.getUserId(), slot);
+                if (index.isFull()) {
+                    index = index.resize();
+                }
+                count++;
+            }
+            Columns target = columns;
+            target.ids[slot] = user.getUserId();
+            target.versions[slot] = user.getVersion();
+            target.names[slot] = user.getUserName();
+            target.roles[slot] = roleCode(user.getRole());
+            set(target.active, slot, user.isActive());
+            set(target.used, slot, true);
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public User delete(long id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = index.remove(id);
+            if (slot < 0) {
+                return null;
+            }
+            User previous = columns.materialize(slot, roles);
+            columns.names[slot] = null;
+            set(columns.used, slot, false);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+            count--;
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Weakly consistent: slots are materialized in batches under the read lock, and the action runs outside it.
+     */
+    @Override
+    public void forEach(Consumer<User> action) {
+        List<User> batch = new ArrayList<>(ITERATION_BATCH);
+        for (int from = 0; ; from += ITERATION_BATCH) {
+            long stamp = lock.readLock();
+            try {
+                if (from >= used) {
+                    return;
+                }
+                for (int slot = from; slot < Math.min(from + ITERATION_BATCH, used); slot++) {
+                    if (get(columns.used, slot)) {
+                        batch.add(columns.materialize(slot, roles));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    private User read(long id) {
+        int slot = index.get(id);
+        return slot < 0 ? null : columns.materialize(slot, roles);
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (used == columns.ids.length) {
+            columns = columns.grow(used * 2);
+        }
+        return used++;
+    }
+
+    private int roleCode(String role) {
+        if (role == null) {
+            return -1;
+        }
+        Integer code = roleCodes.get(role);
+        if (code == null) {
+            code = roles.length;
+            roleCodes.put(role, code);
+            String[] grown = Arrays.copyOf(roles, code + 1);
+            grown[code] = role;
+            roles = grown;
+        }
+        return code;
+    }
+
+    private static void set(long[] bits, int slot, boolean value) {
+        if (value) {
+            bits[slot >>> 6] |= 1L << slot;
+        } else {
+            bits[slot >>> 6] &= ~(1L << slot);
+        }
+    }
+
+    private static boolean get(long[] bits, int slot) {
+        return (bits[slot >>> 6] & 1L << slot) != 0;
+    }
+
+    /**
+     * One array per field, all of the same length; replaced as a whole when it grows.
+     */
+    private static final class Columns {
+        final long[] ids;
+        final long[] versions;
+        final String[] names;
+        final int[] roles;
+        final long[] active;
+        final long[] used;
+
+        Columns(int capacity) {
+            this(new long[capacity], new long[capacity], new String[capacity], new int[capacity],
+                    new long[(capacity + 63) >>> 6], new long[(capacity + 63) >>> 6]);
+        }
+
+        private Columns(long[] ids, long[] versions, String[] names, int[] roles, long[] active, long[] used) {
+            this.ids = ids;
+            this.versions = versions;
+            this.names = names;
+            this.roles = roles;
+            this.active = active;
+            this.used = used;
+        }
+
+        Columns grow(int capacity) {
+            return new Columns(Arrays.copyOf(ids, capacity), Arrays.copyOf(versions, capacity),
+                    Arrays.copyOf(names, capacity), Arrays.copyOf(roles, capacity),
+                    Arrays.copyOf(active, (capacity + 63) >>> 6), Arrays.copyOf(used, (capacity + 63) >>> 6));
+        }
+
+        User materialize(int slot, String[] roleDictionary) {
+            int role = roles[slot];
+            return new User(ids[slot], names[slot], role < 0 ? null : roleDictionary[role], get(active, slot),
+                    versions[slot]);
+        }
+    }
+}
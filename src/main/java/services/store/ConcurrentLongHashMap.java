@@ -0,0 +1,267 @@
+package services.store;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hash map keyed by a primitive {@code long}, so lookups never box the key.
+ * <p>
+ * The table is split into segments. Writers lock only their segment, readers take no lock at all:
+ * bucket chains are immutable and published through an {@link AtomicReferenceArray}, so a reader
+ * always sees a consistent chain, either from before or after a concurrent write.
+ */
+public class ConcurrentLongHashMap<V> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int DEFAULT_CAPACITY = 64;
+    private static final float LOAD_FACTOR = 0.75f;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+
+    public ConcurrentLongHashMap() {
+        this(DEFAULT_CAPACITY, DEFAULT_SEGMENTS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public ConcurrentLongHashMap(int expectedSize, int concurrencyLevel) {
+        int segmentCount = powerOfTwo(Math.max(1, concurrencyLevel));
+        int segmentCapacity = powerOfTwo(Math.max(2, (int) (expectedSize / LOAD_FACTOR) / segmentCount));
+        this.segments = new Segment[segmentCount];
+        this.segmentMask = segmentCount - 1;
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment<>(segmentCapacity);
+        }
+    }
+
+    public V get(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * @return the previous value stored under the key, or {@code null}
+     */
+    public V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, false);
+    }
+
+    public V putIfAbsent(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        int hash = hash(key);
+        return segmentFor(hash).put(key, hash, value, true);
+    }
+
+    /**
+     * @return the removed value, or {@code null} if the key was not present
+     */
+    public V remove(long key) {
+        int hash = hash(key);
+        return segmentFor(hash).remove(key, hash);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.count;
+        }
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * Weakly consistent traversal: never throws on concurrent modification and sees every entry
+     * that was present for the whole duration of the call.
+     */
+    public void forEach(EntryConsumer<? super V> action) {
+        for (Segment<V> segment : segments) {
+            AtomicReferenceArray<Node<V>> table = segment.table;
+            for (int i = 0; i < table.length(); i++) {
+                for (Node<V> node = table.get(i); node != null; node = node.next) {
+                    action.accept(node.key, node.value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Weakly consistent like {@link #forEach}; stops at the first entry the action returns {@code false} for.
+     */
+    public void forEachWhile(EntryPredicate<? super V> action) {
+        for (Segment<V> segment : segments) {
+            AtomicReferenceArray<Node<V>> table = segment.table;
+            for (int i = 0; i < table.length(); i++) {
+                for (Node<V> node = table.get(i); node != null; node = node.next) {
+                    if (!action.test(node.key, node.value)) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size());
+        forEach((key, value) -> values.add(value));
+        return values;
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[(hash >>> 24) & segmentMask];
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    private static int powerOfTwo(int value) {
+        int n = Integer.highestOneBit(value);
+        return n == value ? n : n << 1;
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer<V> {
+        void accept(long key, V value);
+    }
+
+    @FunctionalInterface
+    public interface EntryPredicate<V> {
+        boolean test(long key, V value);
+    }
+
+    private static final class Node<V> {
+        final long key;
+        final int hash;
+        final V value;
+        final Node<V> next;
+
+        Node(long key, int hash, V value, Node<V> next) {
+            this.key = key;
+            this.hash = hash;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    private static final class Segment<V> extends ReentrantLock {
+        volatile AtomicReferenceArray<Node<V>> table;
+        volatile int count;
+        private int threshold;
+
+        Segment(int capacity) {
+            this.table = new AtomicReferenceArray<>(capacity);
+            this.threshold = (int) (capacity * LOAD_FACTOR);
+        }
+
+        V get(long key, int hash) {
+            AtomicReferenceArray<Node<V>> tab = table;
+            for (Node<V> node = tab.get(hash & (tab.length() - 1)); node != null; node = node.next) {
+                if (node.key == key) {
+                    return node.value;
+                }
+            }
+            return null;
+        }
+
+        V put(long key, int hash, V value, boolean onlyIfAbsent) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<V> head = tab.get(index);
+                for (Node<V> node = head; node != null; node = node.next) {
+                    if (node.key == key) {
+                        if (!onlyIfAbsent) {
+                            tab.set(index, replace(head, node, new Node<>(key, hash, value, node.next)));
+                        }
+                        return node.value;
+                    }
+                }
+                tab.set(index, new Node<>(key, hash, value, head));
+                if (++count > threshold) {
+                    rehash();
+                }
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        V remove(long key, int hash) {
+            lock();
+            try {
+                AtomicReferenceArray<Node<V>> tab = table;
+                int index = hash & (tab.length() - 1);
+                Node<V> head = tab.get(index);
+                for (Node<V> node = head; node != null; node = node.next) {
+                    if (node.key == key) {
+                        tab.set(index, replace(head, node, node.next));
+                        count--;
+                        return node.value;
+                    }
+                }
+                return null;
+            } finally {
+                unlock();
+            }
+        }
+
+        void clear() {
+            lock();
+            try {
+                table = new AtomicReferenceArray<>(table.length());
+                count = 0;
+            } finally {
+                unlock();
+            }
+        }
+
+        /**
+         * Copies the chain prefix in front of {@code target} and links it to {@code tail}, leaving
+         * the original chain untouched for readers still walking it.
+         */
+        private Node<V> replace(Node<V> head, Node<V> target, Node<V> tail) {
+            Node<V> result = tail;
+            for (Node<V> node = head; node != target; node = node.next) {
+                result = new Node<>(node.key, node.hash, node.value, result);
+            }
+            return result;
+        }
+
+        private void rehash() {
+            AtomicReferenceArray<Node<V>> oldTable = table;
+            int capacity = oldTable.length() << 1;
+            AtomicReferenceArray<Node<V>> newTable = new AtomicReferenceArray<>(capacity);
+            for (int i = 0; i < oldTable.length(); i++) {
+                for (Node<V> node = oldTable.get(i); node != null; node = node.next) {
+                    int index = node.hash & (capacity - 1);
+                    newTable.set(index, new Node<>(node.key, node.hash, node.value, newTable.get(index)));
+                }
+            }
+            threshold = (int) (capacity * LOAD_FACTOR);
+            table = newTable;
+        }
+    }
+}
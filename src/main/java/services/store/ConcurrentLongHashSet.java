@@ -0,0 +1,43 @@
+package services.store;
+
+import java.util.function.LongPredicate;
+
+/**
+ * Set of primitive {@code long} values on top of {@link ConcurrentLongHashMap}, with the same locking guarantees.
+ */
+public class ConcurrentLongHashSet {
+
+    @FunctionalInterface
+    public interface LongConsumer {
+        void accept(long value);
+    }
+
+    private final ConcurrentLongHashMap<Boolean> map = new ConcurrentLongHashMap<>();
+
+    public boolean add(long value) {
+        return map.putIfAbsent(value, Boolean.TRUE) == null;
+    }
+
+    public boolean remove(long value) {
+        return map.remove(value) != null;
+    }
+
+    public boolean contains(long value) {
+        return map.containsKey(value);
+    }
+
+    public int size() {
+        return map.size();
+    }
+
+    public void forEach(LongConsumer action) {
+        map.forEach((value, present) -> action.accept(value));
+    }
+
+    /**
+     * Like {@link #forEach}, but stops at the first value the action returns {@code false} for.
+     */
+    public void forEachWhile(LongPredicate action) {
+        map.forEachWhile((value, present) -> action.test(value));
+    }
+}
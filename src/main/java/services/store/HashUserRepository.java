@@ -0,0 +1,52 @@
+package services.store;
+
+import entities.User;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Default engine: users indexed by id in a {@link ConcurrentLongHashMap}, O(1) lookups without locking.
+ */
+public class HashUserRepository implements UserRepository {
+
+    private final ConcurrentLongHashMap<User> users;
+
+    public HashUserRepository() {
+        this.users = new ConcurrentLongHashMap<>();
+    }
+
+    public HashUserRepository(int expectedSize) {
+        this.users = new ConcurrentLongHashMap<>(expectedSize, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @Override
+    public User findById(long id) {
+        return users.get(id);
+    }
+
+    @Override
+    public User save(User user) {
+        return users.put(user.getUserId(), user);
+    }
+
+    @Override
+    public User delete(long id) {
+        return users.remove(id);
+    }
+
+    @Override
+    public int count() {
+        return users.size();
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        users.forEach((id, user) -> action.accept(user));
+    }
+
+    @Override
+    public List<User> findAll() {
+        return users.values();
+    }
+}
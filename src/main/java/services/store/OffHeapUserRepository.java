@@ -0,0 +1,345 @@
+package services.store;
+
+import entities.User;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * Off-heap engine: records live in direct {@link ByteBuffer}s outside the Java heap, so a large table gives the
+ * garbage collector nothing to trace or copy. Every user takes one fixed-layout slot of {@value #SLOT_SIZE} bytes:
+ * <pre>
+ * long id, long version, long name reference, int name length (-1 for null), int role code, int flags
+ * </pre>
+ * Names are UTF-8 in a separate variable-length string area the slot points into; roles are dictionary-encoded as
+ * in {@link CompactUserRepository}. Deleted slots are reused, and an update that does not lengthen the name
+ * rewrites it in place. Space left behind by deletes and renames is reclaimed by compacting the string area once
+ * more than half of it is garbage.
+ * <p>
+ * {@link User}s are materialized on every read. Locking follows {@link CompactUserRepository}: writers take a
+ * {@link StampedLock}, lookups are optimistic. Buffers are left to the garbage collector rather than freed, so an
+ * optimistic reader racing a compaction reads stale bytes and retries, but never touches released memory.
+ */
+public class OffHeapUserRepository implements UserRepository {
+
+    static final int SLOT_SIZE = 40;
+    static final int STRING_PAGE_SIZE = 1 << 20;
+
+    private static final int ID = 0;
+    private static final int VERSION = 8;
+    private static final int NAME = 16;
+    private static final int NAME_LENGTH = 24;
+    private static final int ROLE = 28;
+    private static final int FLAGS = 32;
+
+    private static final int USED = 1;
+    private static final int ACTIVE = 2;
+
+    private static final int SLOT_PAGE_SHIFT = 14;
+    private static final int SLOT_PAGE_MASK = (1 << SLOT_PAGE_SHIFT) - 1;
+    private static final int ITERATION_BATCH = 1024;
+
+    private final StampedLock lock = new StampedLock();
+    private final Map<String, Integer> roleCodes = new HashMap<>();
+
+    private volatile String[] roles = new String[0];
+    private volatile SlotIndex index;
+    private volatile ByteBuffer[] slotPages = new ByteBuffer[0];
+    private volatile Strings strings = new Strings();
+    private volatile int count;
+    private int used;
+    private int[] free = new int[16];
+    private int freeCount;
+    private long garbage;
+
+    public OffHeapUserRepository() {
+        this(64);
+    }
+
+    public OffHeapUserRepository(int expectedSize) {
+        this.index = SlotIndex.forSize(expectedSize);
+    }
+
+    @Override
+    public User findById(long id) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            try {
+                User user = read(id);
+                if (lock.validate(stamp)) {
+                    return user;
+                }
+            } catch (RuntimeException e) {
+                // torn slot or a compaction half-way through the optimistic read, retried under the lock
+            }
+        }
+        stamp = lock.readLock();
+        try {
+            return read(id);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public User save(User user) {
+        byte[] name = user.getUserName() == null ? null : user.getUserName().getBytes(StandardCharsets.UTF_8);
+        long stamp = lock.writeLock();
+        try {
+            int slot = index.get(user.getUserId());
+            User previous = null;
+            if (slot >= 0) {
+                previous = materialize(slot);
+            } else {
+                slot = allocate();
+                index.put(user.getUserId(), slot);
+                if (index.isFull()) {
+                    index = index.resize();
+                }
+                count++;
+            }
+            ByteBuffer page = slotPages[slot >>> SLOT_PAGE_SHIFT];
+            int base = (slot & SLOT_PAGE_MASK) * SLOT_SIZE;
+            writeName(page, base, previous != null, name);
+            page.putLong(base + ID, user.getUserId());
+            page.putLong(base + VERSION, user.getVersion());
+            page.putInt(base + ROLE, roleCode(user.getRole()));
+            page.putInt(base + FLAGS, USED | (user.isActive() ? ACTIVE : 0));
+            compactIfWasteful();
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public User delete(long id) {
+        long stamp = lock.writeLock();
+        try {
+            int slot = index.remove(id);
+            if (slot < 0) {
+                return null;
+            }
+            User previous = materialize(slot);
+            ByteBuffer page = slotPages[slot >>> SLOT_PAGE_SHIFT];
+            int base = (slot & SLOT_PAGE_MASK) * SLOT_SIZE;
+            garbage += Math.max(0, page.getInt(base + NAME_LENGTH));
+            page.putInt(base + NAME_LENGTH, -1);
+            page.putInt(base + FLAGS, 0);
+            if (freeCount == free.length) {
+                free = Arrays.copyOf(free, freeCount * 2);
+            }
+            free[freeCount++] = slot;
+            count--;
+            compactIfWasteful();
+            return previous;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Weakly consistent: slots are materialized in batches under the read lock, and the action runs outside it.
+     */
+    @Override
+    public void forEach(Consumer<User> action) {
+        List<User> batch = new ArrayList<>(ITERATION_BATCH);
+        for (int from = 0; ; from += ITERATION_BATCH) {
+            long stamp = lock.readLock();
+            try {
+                if (from >= used) {
+                    return;
+                }
+                for (int slot = from; slot < Math.min(from + ITERATION_BATCH, used); slot++) {
+                    if ((slotPages[slot >>> SLOT_PAGE_SHIFT].getInt((slot & SLOT_PAGE_MASK) * SLOT_SIZE + FLAGS) & USED) != 0) {
+                        batch.add(materialize(slot));
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    /**
+     * @return native memory held by the slots and the string area
+     */
+    public long offHeapBytes() {
+        long stamp = lock.readLock();
+        try {
+            return (long) slotPages.length * (SLOT_SIZE << SLOT_PAGE_SHIFT) + strings.capacity();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private User read(long id) {
+        int slot = index.get(id);
+        return slot < 0 ? null : materialize(slot);
+    }
+
+    private User materialize(int slot) {
+        ByteBuffer page = slotPages[slot >>> SLOT_PAGE_SHIFT];
+        int base = (slot & SLOT_PAGE_MASK) * SLOT_SIZE;
+        int role = page.getInt(base + ROLE);
+        return new User(page.getLong(base + ID), strings.read(page.getLong(base + NAME), page.getInt(base + NAME_LENGTH)),
+                role < 0 ? null : roles[role], (page.getInt(base + FLAGS) & ACTIVE) != 0, page.getLong(base + VERSION));
+    }
+
+    /**
+     * Rewrites the name of an existing record in place when it fits, appends it otherwise.
+     */
+    private void writeName(ByteBuffer page, int base, boolean existing, byte[] name) {
+        int length = existing ? page.getInt(base + NAME_LENGTH) : -1;
+        int newLength = name == null ? -1 : name.length;
+        if (newLength >= 0 && newLength <= length) {
+            strings.write(page.getLong(base + NAME), name);
+            garbage += length - newLength;
+        } else {
+            if (newLength >= 0) {
+                page.putLong(base + NAME, strings.append(name));
+            }
+            garbage += Math.max(0, length);
+        }
+        page.putInt(base + NAME_LENGTH, newLength);
+    }
+
+    private void compactIfWasteful() {
+        Strings current = strings;
+        if (garbage < STRING_PAGE_SIZE || garbage * 2 < current.allocated) {
+            return;
+        }
+        Strings compacted = new Strings();
+        byte[] buffer = new byte[64];
+        for (int slot = 0; slot < used; slot++) {
+            ByteBuffer page = slotPages[slot >>> SLOT_PAGE_SHIFT];
+            int base = (slot & SLOT_PAGE_MASK) * SLOT_SIZE;
+            int length = page.getInt(base + NAME_LENGTH);
+            if ((page.getInt(base + FLAGS) & USED) == 0 || length < 0) {
+                continue;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Integer.highestOneBit(length) << 1];
+            }
+            current.copy(page.getLong(base + NAME), buffer, length);
+            page.putLong(base + NAME, compacted.append(buffer, length));
+        }
+        strings = compacted;
+        garbage = 0;
+    }
+
+    private int allocate() {
+        if (freeCount > 0) {
+            return free[--freeCount];
+        }
+        if (used >>> SLOT_PAGE_SHIFT == slotPages.length) {
+            ByteBuffer[] grown = Arrays.copyOf(slotPages, slotPages.length + 1);
+            grown[slotPages.length] = ByteBuffer.allocateDirect(SLOT_SIZE << SLOT_PAGE_SHIFT);
+            slotPages = grown;
+        }
+        return used++;
+    }
+
+    private int roleCode(String role) {
+        if (role == null) {
+            return -1;
+        }
+        Integer code = roleCodes.get(role);
+        if (code == null) {
+            code = roles.length;
+            roleCodes.put(role, code);
+            String[] grown = Arrays.copyOf(roles, code + 1);
+            grown[code] = role;
+            roles = grown;
+        }
+        return code;
+    }
+
+    /**
+     * Append-only pages of UTF-8 bytes addressed by {@code page << 32 | offset}; a string never spans pages, so
+     * one longer than {@value #STRING_PAGE_SIZE} bytes gets a page of its own.
+     */
+    private static final class Strings {
+
+        volatile ByteBuffer[] pages = new ByteBuffer[0];
+        long allocated;
+        private int position = STRING_PAGE_SIZE;
+
+        long append(byte[] bytes) {
+            return append(bytes, bytes.length);
+        }
+
+        long append(byte[] bytes, int length) {
+            ByteBuffer[] current = pages;
+            ByteBuffer page = current.length == 0 ? null : current[current.length - 1];
+            if (page == null || length > page.capacity() - position) {
+                page = ByteBuffer.allocateDirect(Math.max(STRING_PAGE_SIZE, length));
+                current = Arrays.copyOf(current, current.length + 1);
+                current[current.length - 1] = page;
+                pages = current;
+                position = 0;
+            }
+            long reference = (long) (current.length - 1) << 32 | position;
+            ByteBuffer target = page.duplicate();
+            target.position(position);
+            target.put(bytes, 0, length);
+            position += length;
+            allocated += length;
+            return reference;
+        }
+
+        void write(long reference, byte[] bytes) {
+            ByteBuffer target = pages[(int) (reference >>> 32)].duplicate();
+            target.position((int) reference);
+            target.put(bytes);
+        }
+
+        void copy(long reference, byte[] bytes, int length) {
+            ByteBuffer page = pages[(int) (reference >>> 32)];
+            for (int i = 0, offset = (int) reference; i < length; i++) {
+                bytes[i] = page.get(offset + i);
+            }
+        }
+
+        /**
+         * @throws IndexOutOfBoundsException for a reference torn by a concurrent writer
+         */
+        String read(long reference, int length) {
+            if (length < 0) {
+                return null;
+            }
+            ByteBuffer page = pages[(int) (reference >>> 32)];
+            int offset = (int) reference;
+            if (offset < 0 || length > page.capacity() - offset) {
+                throw new IndexOutOfBoundsException();
+            }
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = page.get(offset + i);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        long capacity() {
+            long capacity = 0;
+            for (ByteBuffer page : pages) {
+                capacity += page.capacity();
+            }
+            return capacity;
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package services.store;
+
+import entities.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * {@link UserIndexes} hash-partitioned by user id, so writers of different shards update their indexes in
+ * parallel. Shard {@code s} holds the ids {@code s + 1, s + 1 + n, s + 1 + 2n, ...} of {@code n} shards.
+ * <p>
+ * Queries scatter to every shard and gather the results: ordered walks and pages merge the shards' ordered keys
+ * lazily, so a page still reads about {@code limit} keys per shard, and unordered ones concatenate. With a single
+ * shard every query goes straight to it.
+ * <p>
+ * Updates of a shard must be serialized by the caller; queries may run concurrently with them.
+ */
+public class ShardedUserIndexes {
+
+    private static final Comparator<User> BY_LOWER_NAME = Comparator
+            .comparing((User user) -> UserSearchIndex.lowerCase(user.getUserName()), Comparator.nullsFirst(Comparator.naturalOrder()))
+            .thenComparingLong(User::getUserId);
+
+    private final UserIndexes[] shards;
+
+    public ShardedUserIndexes(int shards) {
+        if (shards < 1) {
+            throw new IllegalArgumentException("shards must be positive");
+        }
+        this.shards = new UserIndexes[shards];
+        for (int i = 0; i < shards; i++) {
+            this.shards[i] = new UserIndexes();
+        }
+    }
+
+    public int shards() {
+        return shards.length;
+    }
+
+    public int shardOf(long id) {
+        return (int) Math.floorMod(id - 1, (long) shards.length);
+    }
+
+    /**
+     * Moves a user from its {@code previous} to its {@code current} state in the shard of its id; the caller holds
+     * that shard's writer lock.
+     */
+    public void update(User previous, User current) {
+        shards[shardOf(previous != null ? previous.getUserId() : current.getUserId())].update(previous, current);
+    }
+
+    /**
+     * Splits the changes by shard and applies each part with {@link UserIndexes#updateAll}; the caller holds the
+     * writer locks of all shards. A {@code (null, null)} change, a user created and deleted by the same batch, is
+     * skipped.
+     */
+    public void updateAll(Collection<User[]> changes) {
+        if (shards.length == 1) {
+            shards[0].updateAll(changes);
+            return;
+        }
+        List<List<User[]>> byShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            byShard.add(new ArrayList<>());
+        }
+        for (User[] change : changes) {
+            if (change[0] == null && change[1] == null) {
+                continue;
+            }
+            byShard.get(shardOf(change[0] != null ? change[0].getUserId() : change[1].getUserId())).add(change);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!byShard.get(i).isEmpty()) {
+                shards[i].updateAll(byShard.get(i));
+            }
+        }
+    }
+
+    /**
+     * Prefix matches are merged in lower-cased name order, substring matches are concatenated.
+     */
+    public List<User> search(String query, boolean substring, int limit, UserRepository repository) {
+        if (shards.length == 1) {
+            return shards[0].search(query, substring, limit, repository);
+        }
+        List<User> users = new ArrayList<>();
+        for (UserIndexes shard : shards) {
+            users.addAll(shard.search(query, substring, substring ? limit - users.size() : limit, repository));
+            if (substring && users.size() == limit) {
+                return users;
+            }
+        }
+        if (!substring) {
+            users.sort(BY_LOWER_NAME);
+        }
+        return users.size() > limit ? new ArrayList<>(users.subList(0, limit)) : users;
+    }
+
+    public List<User> find(String role, Boolean active, UserRepository repository) {
+        if (shards.length == 1 || role == null && active == null) {
+            return shards[0].find(role, active, repository);
+        }
+        List<User> users = new ArrayList<>();
+        forEach(role, active, repository, users::add);
+        return users;
+    }
+
+    public void forEach(String role, Boolean active, UserRepository repository, Consumer<User> action) {
+        if (role == null && active == null) {
+            repository.forEach(action);
+            return;
+        }
+        for (UserIndexes shard : shards) {
+            shard.forEach(role, active, repository, action);
+        }
+    }
+
+    public List<User> sortedByName(UserRepository repository) {
+        if (shards.length == 1) {
+            return shards[0].sortedByName(repository);
+        }
+        int size = 0;
+        for (UserIndexes shard : shards) {
+            size += shard.size();
+        }
+        List<User> users = new ArrayList<>(size);
+        forEachByName(null, null, repository, users::add);
+        return users;
+    }
+
+    public void forEachByName(String role, Boolean active, UserRepository repository, Consumer<User> action) {
+        if (shards.length == 1) {
+            shards[0].forEachByName(role, active, repository, action);
+            return;
+        }
+        for (Iterator<UserIndexes.NameKey> keys = merge(shard -> shard.namesAfter(null)); keys.hasNext(); ) {
+            User user = UserIndexes.resolve(keys.next(), repository);
+            if (user != null && UserIndexes.matches(user, role, active)) {
+                action.accept(user);
+            }
+        }
+    }
+
+    public List<User> pageById(long afterId, int limit, String role, Boolean active, UserRepository repository) {
+        if (shards.length == 1) {
+            return shards[0].pageById(afterId, limit, role, active, repository);
+        }
+        List<User> users = new ArrayList<>(limit);
+        for (Iterator<Long> ids = merge(shard -> shard.idsAfter(afterId)); ids.hasNext() && users.size() < limit; ) {
+            User user = repository.findById(ids.next());
+            if (user != null && UserIndexes.matches(user, role, active)) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    public List<User> pageByName(String afterName, long afterId, int limit, String role, Boolean active,
+                                 UserRepository repository) {
+        if (shards.length == 1) {
+            return shards[0].pageByName(afterName, afterId, limit, role, active, repository);
+        }
+        UserIndexes.NameKey after = new UserIndexes.NameKey(afterName, afterId);
+        List<User> users = new ArrayList<>(limit);
+        for (Iterator<UserIndexes.NameKey> keys = merge(shard -> shard.namesAfter(after));
+             keys.hasNext() && users.size() < limit; ) {
+            User user = UserIndexes.resolve(keys.next(), repository);
+            if (user != null && UserIndexes.matches(user, role, active)) {
+                users.add(user);
+            }
+        }
+        return users;
+    }
+
+    private <K extends Comparable<K>> Iterator<K> merge(Function<UserIndexes, Iterator<K>> keys) {
+        List<Iterator<K>> iterators = new ArrayList<>(shards.length);
+        for (UserIndexes shard : shards) {
+            iterators.add(keys.apply(shard));
+        }
+        return new MergingIterator<>(iterators);
+    }
+
+    /**
+     * K-way merge of ascending iterators through a heap of their current heads.
+     */
+    private static final class MergingIterator<K extends Comparable<K>> implements Iterator<K> {
+
+        private final PriorityQueue<Head<K>> heads;
+
+        MergingIterator(List<Iterator<K>> iterators) {
+            heads = new PriorityQueue<>(iterators.size());
+            for (Iterator<K> iterator : iterators) {
+                if (iterator.hasNext()) {
+                    heads.add(new Head<>(iterator.next(), iterator));
+                }
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !heads.isEmpty();
+        }
+
+        @Override
+        public K next() {
+            Head<K> head = heads.poll();
+            if (head == null) {
+                throw new NoSuchElementException();
+            }
+            K key = head.key;
+            if (head.rest.hasNext()) {
+                head.key = head.rest.next();
+                heads.add(head);
+            }
+            return key;
+        }
+    }
+
+    private static final class Head<K extends Comparable<K>> implements Comparable<Head<K>> {
+        K key;
+        final Iterator<K> rest;
+
+        Head(K key, Iterator<K> rest) {
+            this.key = key;
+            this.rest = rest;
+        }
+
+        @Override
+        public int compareTo(Head<K> other) {
+            return key.compareTo(other.key);
+        }
+    }
+}
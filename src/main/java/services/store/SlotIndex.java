@@ -0,0 +1,95 @@
+package services.store;
+
+/**
+ * Linear-probing id to slot table of the slot-based engines; {@code slots} holds {@code slot + 1}, so {@code 0}
+ * marks a free bucket. Probes are bounded by the table length, so an optimistic reader racing a writer always
+ * terminates. Not thread-safe: writers replace a full table with {@link #resize()} under their own lock.
+ */
+final class SlotIndex {
+
+    private final long[] keys;
+    private final int[] slots;
+    private int size;
+
+    private SlotIndex(int capacity) {
+        this.keys = new long[capacity];
+        this.slots = new int[capacity];
+    }
+
+    /**
+     * @return an index holding {@code expectedSize} ids without resizing
+     */
+    static SlotIndex forSize(int expectedSize) {
+        return new SlotIndex(Integer.highestOneBit(Math.max(16, expectedSize) * 2 - 1) << 1);
+    }
+
+    int get(long key) {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask, probes = 0; probes <= mask; i = (i + 1) & mask, probes++) {
+            if (slots[i] == 0) {
+                return -1;
+            }
+            if (keys[i] == key) {
+                return slots[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    void put(long key, int slot) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (slots[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        keys[i] = key;
+        slots[i] = slot + 1;
+        size++;
+    }
+
+    /**
+     * Backward-shift deletion, so no tombstones accumulate.
+     */
+    int remove(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (slots[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        if (slots[i] == 0) {
+            return -1;
+        }
+        int slot = slots[i] - 1;
+        for (int gap = i, next = (i + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int home = hash(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                slots[gap] = slots[next];
+                gap = next;
+            }
+            i = gap;
+        }
+        slots[i] = 0;
+        size--;
+        return slot;
+    }
+
+    boolean isFull() {
+        return size > keys.length * 3 / 4;
+    }
+
+    SlotIndex resize() {
+        SlotIndex resized = new SlotIndex(keys.length * 2);
+        for (int i = 0; i < keys.length; i++) {
+            if (slots[i] != 0) {
+                resized.put(keys[i], slots[i] - 1);
+            }
+        }
+        return resized;
+    }
+
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
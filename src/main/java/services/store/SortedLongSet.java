@@ -0,0 +1,173 @@
+package services.store;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Ordered set of primitive {@code long} values: sorted arrays of up to {@value #CHUNK_SIZE} values, found through a
+ * skip list keyed by the smallest value each chunk may hold. A value costs eight bytes rather than a boxed key and a
+ * skip list node of its own.
+ * <p>
+ * Writes must be serialized by the caller. They replace whole chunks, so readers take no lock and see every chunk
+ * either before or after a write. Iteration is weakly consistent like that of the concurrent collections, and
+ * ascending without repeats also across a chunk split by a concurrent write. Chunks emptied by removals are dropped,
+ * but chunks thinned out by them are not merged again.
+ */
+public class SortedLongSet {
+
+    static final int CHUNK_SIZE = 256;
+
+    private static final long[] EMPTY = new long[0];
+
+    /**
+     * Never empty: the first chunk, keyed by {@link Long#MIN_VALUE}, stays even when it holds no values.
+     */
+    private final ConcurrentSkipListMap<Long, long[]> chunks = new ConcurrentSkipListMap<>();
+    private volatile int size;
+
+    public SortedLongSet() {
+        chunks.put(Long.MIN_VALUE, EMPTY);
+    }
+
+    public boolean add(long value) {
+        Map.Entry<Long, long[]> entry = chunks.floorEntry(value);
+        long[] chunk = entry.getValue();
+        int at = Arrays.binarySearch(chunk, value);
+        if (at >= 0) {
+            return false;
+        }
+        at = -at - 1;
+        long[] grown = new long[chunk.length + 1];
+        System.arraycopy(chunk, 0, grown, 0, at);
+        grown[at] = value;
+        System.arraycopy(chunk, at, grown, at + 1, chunk.length - at);
+        publish(entry.getKey(), grown, grown.length);
+        size++;
+        return true;
+    }
+
+    /**
+     * Adds the first {@code count} values of {@code sorted}, which must be in ascending order, merging them into each
+     * chunk they fall into at once.
+     */
+    public void addAll(long[] sorted, int count) {
+        for (int from = 0; from < count; ) {
+            Map.Entry<Long, long[]> entry = chunks.floorEntry(sorted[from]);
+            Long next = chunks.higherKey(entry.getKey());
+            int to = from;
+            while (to < count && (next == null || sorted[to] < next)) {
+                to++;
+            }
+            long[] chunk = entry.getValue();
+            long[] merged = new long[chunk.length + to - from];
+            int length = 0;
+            for (int i = 0, j = from; i < chunk.length || j < to; ) {
+                long value = j == to || (i < chunk.length && chunk[i] <= sorted[j]) ? chunk[i++] : sorted[j++];
+                if (length == 0 || merged[length - 1] != value) {
+                    merged[length++] = value;
+                }
+            }
+            size += length - chunk.length;
+            publish(entry.getKey(), merged, length);
+            from = to;
+        }
+    }
+
+    public boolean remove(long value) {
+        Map.Entry<Long, long[]> entry = chunks.floorEntry(value);
+        long[] chunk = entry.getValue();
+        int at = Arrays.binarySearch(chunk, value);
+        if (at < 0) {
+            return false;
+        }
+        if (chunk.length == 1 && entry.getKey() != Long.MIN_VALUE) {
+            chunks.remove(entry.getKey());
+        } else {
+            long[] shrunk = new long[chunk.length - 1];
+            System.arraycopy(chunk, 0, shrunk, 0, at);
+            System.arraycopy(chunk, at + 1, shrunk, at, shrunk.length - at);
+            chunks.put(entry.getKey(), shrunk);
+        }
+        size--;
+        return true;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values greater than {@code after}, in ascending order
+     */
+    public PrimitiveIterator.OfLong iterator(long after) {
+        return new Ascending(after);
+    }
+
+    /**
+     * Stores the first {@code length} values under {@code key}, split into chunks of at most {@value #CHUNK_SIZE}.
+     * The upper chunks are published before the lower one shrinks, so a reader racing the split may meet a value
+     * twice but never misses one.
+     */
+    private void publish(Long key, long[] values, int length) {
+        if (length <= CHUNK_SIZE) {
+            chunks.put(key, length == values.length ? values : Arrays.copyOf(values, length));
+            return;
+        }
+        int pieces = (length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        for (int piece = pieces - 1; piece > 0; piece--) {
+            int from = (int) ((long) piece * length / pieces);
+            int to = (int) ((long) (piece + 1) * length / pieces);
+            chunks.put(values[from], Arrays.copyOfRange(values, from, to));
+        }
+        chunks.put(key, Arrays.copyOf(values, length / pieces));
+    }
+
+    private final class Ascending implements PrimitiveIterator.OfLong {
+
+        private long last;
+        private Long key;
+        private long[] chunk = EMPTY;
+        private int index;
+        private boolean ready;
+
+        Ascending(long after) {
+            this.last = after;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (!ready) {
+                if (index < chunk.length) {
+                    // skips what a split has shown already
+                    ready = chunk[index] > last;
+                    if (!ready) {
+                        index++;
+                    }
+                    continue;
+                }
+                Map.Entry<Long, long[]> entry = key == null ? chunks.floorEntry(last) : chunks.higherEntry(key);
+                if (entry == null) {
+                    return false;
+                }
+                key = entry.getKey();
+                chunk = entry.getValue();
+                int at = Arrays.binarySearch(chunk, last);
+                index = at >= 0 ? at + 1 : -at - 1;
+            }
+            return true;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            last = chunk[index++];
+            return last;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package services.store;
+
+import entities.User;
+import metrics.LatencyHistogram;
+import metrics.Metrics;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Times the point operations of another repository into the {@code store} section of {@link Metrics}.
+ */
+public class TimedUserRepository implements UserRepository {
+
+    private final UserRepository delegate;
+    private final LatencyHistogram findById;
+    private final LatencyHistogram save;
+    private final LatencyHistogram delete;
+    private final LatencyHistogram findAll;
+
+    public TimedUserRepository(UserRepository delegate, Metrics metrics) {
+        this.delegate = delegate;
+        this.findById = metrics.store("findById");
+        this.save = metrics.store("save");
+        this.delete = metrics.store("delete");
+        this.findAll = metrics.store("findAll");
+    }
+
+    @Override
+    public User findById(long id) {
+        long start = System.nanoTime();
+        User user = delegate.findById(id);
+        findById.record(System.nanoTime() - start);
+        return user;
+    }
+
+    @Override
+    public User save(User user) {
+        long start = System.nanoTime();
+        User previous = delegate.save(user);
+        save.record(System.nanoTime() - start);
+        return previous;
+    }
+
+    @Override
+    public User delete(long id) {
+        long start = System.nanoTime();
+        User deleted = delegate.delete(id);
+        delete.record(System.nanoTime() - start);
+        return deleted;
+    }
+
+    @Override
+    public int count() {
+        return delegate.count();
+    }
+
+    @Override
+    public void forEach(Consumer<User> action) {
+        delegate.forEach(action);
+    }
+
+    @Override
+    public List<User> findAll() {
+        long start = System.nanoTime();
+        List<User> users = delegate.findAll();
+        findAll.record(System.nanoTime() - start);
+        return users;
+    }
+}
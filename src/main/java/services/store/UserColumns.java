@@ -0,0 +1,283 @@
+package services.store;
+
+import entities.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Columnar binary export format for users ({@code id, userName, role, active}; versions are not exported), written
+ * and read in chunks of at most {@value #CHUNK_SIZE} users so neither side ever holds more than one chunk.
+ * <p>
+ * Layout: {@code int magic, int format}, then per chunk {@code int rows, int length, body, int crc32(body)}, ended by
+ * a chunk of zero rows. A body holds one column after the other:
+ * <ul>
+ * <li>ids as zig-zag varint deltas from the previous id of the chunk,</li>
+ * <li>active flags as a bitset of {@code (rows + 7) / 8} bytes,</li>
+ * <li>roles as a dictionary (varint size, strings) followed by one varint dictionary index per row,</li>
+ * <li>names as one varint length per row followed by all UTF-8 bytes.</li>
+ * </ul>
+ * Strings are encoded as a varint of {@code length + 1}, {@code 0} standing for {@code null}.
+ */
+public final class UserColumns {
+
+    public static final String MEDIA_TYPE = "application/vnd.users.columnar";
+
+    public static final int CHUNK_SIZE = 65536;
+
+    private static final int MAGIC = 0x55535243;
+    private static final int FORMAT = 1;
+    private static final int MAX_CHUNK_BYTES = 1 << 26;
+
+    private UserColumns() {
+    }
+
+    public static final class Writer implements Closeable {
+
+        private final DataOutputStream out;
+        private final User[] rows = new User[CHUNK_SIZE];
+        private final Body body = new Body();
+        private final CRC32 crc = new CRC32();
+        private int size;
+
+        public Writer(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(out);
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(FORMAT);
+        }
+
+        public void write(User user) throws IOException {
+            rows[size++] = user;
+            if (size == CHUNK_SIZE) {
+                flushChunk();
+            }
+        }
+
+        /**
+         * Writes the pending chunk and the end marker; does not close the underlying stream.
+         */
+        @Override
+        public void close() throws IOException {
+            if (size > 0) {
+                flushChunk();
+            }
+            out.writeInt(0);
+            out.flush();
+        }
+
+        private void flushChunk() throws IOException {
+            body.reset();
+            long previous = 0;
+            for (int i = 0; i < size; i++) {
+                long id = rows[i].getUserId();
+                body.writeVarLong((id - previous) << 1 ^ (id - previous) >> 63);
+                previous = id;
+            }
+            for (int i = 0; i < size; i += 8) {
+                int bits = 0;
+                for (int j = i; j < Math.min(i + 8, size); j++) {
+                    bits |= rows[j].isActive() ? 1 << (j - i) : 0;
+                }
+                body.write(bits);
+            }
+            Map<String, Integer> dictionary = new HashMap<>();
+            List<String> roles = new ArrayList<>();
+            int[] roleIndexes = new int[size];
+            for (int i = 0; i < size; i++) {
+                String role = rows[i].getRole();
+                Integer index = dictionary.get(role);
+                if (index == null) {
+                    index = roles.size();
+                    dictionary.put(role, index);
+                    roles.add(role);
+                }
+                roleIndexes[i] = index;
+            }
+            body.writeVarLong(roles.size());
+            for (String role : roles) {
+                body.writeString(role == null ? null : role.getBytes(StandardCharsets.UTF_8));
+            }
+            for (int i = 0; i < size; i++) {
+                body.writeVarLong(roleIndexes[i]);
+            }
+            byte[][] names = new byte[size][];
+            for (int i = 0; i < size; i++) {
+                String name = rows[i].getUserName();
+                names[i] = name == null ? null : name.getBytes(StandardCharsets.UTF_8);
+                body.writeVarLong(names[i] == null ? 0 : names[i].length + 1);
+            }
+            for (byte[] name : names) {
+                if (name != null) {
+                    body.write(name, 0, name.length);
+                }
+            }
+            crc.reset();
+            crc.update(body.buffer(), 0, body.size());
+            out.writeInt(size);
+            out.writeInt(body.size());
+            body.writeTo(out);
+            out.writeInt((int) crc.getValue());
+            Arrays.fill(rows, 0, size, null);
+            size = 0;
+        }
+    }
+
+    public static final class Reader {
+
+        private final DataInputStream in;
+        private final CRC32 crc = new CRC32();
+        private byte[] body = new byte[0];
+        private boolean finished;
+
+        /**
+         * @throws StreamCorruptedException if the stream is not a user export of a supported format
+         */
+        public Reader(InputStream in) throws IOException {
+            this.in = new DataInputStream(in);
+            try {
+                if (this.in.readInt() != MAGIC) {
+                    throw new StreamCorruptedException("Not a user export");
+                }
+                int format = this.in.readInt();
+                if (format != FORMAT) {
+                    throw new StreamCorruptedException("Unsupported user export format " + format);
+                }
+            } catch (EOFException e) {
+                throw new StreamCorruptedException("Not a user export");
+            }
+        }
+
+        /**
+         * @return the next chunk of users, or {@code null} after the last one
+         * @throws StreamCorruptedException if the chunk is truncated or fails its checksum
+         */
+        public List<User> readChunk() throws IOException {
+            if (finished) {
+                return null;
+            }
+            try {
+                int rows = in.readInt();
+                if (rows == 0) {
+                    finished = true;
+                    return null;
+                }
+                int length = in.readInt();
+                if (rows < 0 || rows > CHUNK_SIZE || length < 0 || length > MAX_CHUNK_BYTES) {
+                    throw new StreamCorruptedException("Corrupt user export chunk");
+                }
+                if (body.length < length) {
+                    body = new byte[Integer.highestOneBit(length) << 1];
+                }
+                in.readFully(body, 0, length);
+                crc.reset();
+                crc.update(body, 0, length);
+                if (in.readInt() != (int) crc.getValue()) {
+                    throw new StreamCorruptedException("Corrupt user export chunk");
+                }
+                return decode(ByteBuffer.wrap(body, 0, length), rows);
+            } catch (EOFException e) {
+                throw new StreamCorruptedException("Truncated user export");
+            }
+        }
+
+        private static List<User> decode(ByteBuffer buffer, int rows) throws StreamCorruptedException {
+            try {
+                long[] ids = new long[rows];
+                long previous = 0;
+                for (int i = 0; i < rows; i++) {
+                    long delta = readVarLong(buffer);
+                    previous += delta >>> 1 ^ -(delta & 1);
+                    ids[i] = previous;
+                }
+                byte[] active = new byte[(rows + 7) / 8];
+                buffer.get(active);
+                String[] roles = new String[(int) readVarLong(buffer)];
+                for (int i = 0; i < roles.length; i++) {
+                    roles[i] = readString(buffer, (int) readVarLong(buffer));
+                }
+                int[] roleIndexes = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    roleIndexes[i] = (int) readVarLong(buffer);
+                }
+                int[] nameLengths = new int[rows];
+                for (int i = 0; i < rows; i++) {
+                    nameLengths[i] = (int) readVarLong(buffer);
+                }
+                List<User> users = new ArrayList<>(rows);
+                for (int i = 0; i < rows; i++) {
+                    users.add(new User(ids[i], readString(buffer, nameLengths[i]), roles[roleIndexes[i]],
+                            (active[i >> 3] & 1 << (i & 7)) != 0));
+                }
+                return users;
+            } catch (RuntimeException e) {
+                // BufferUnderflowException, NegativeArraySizeException, ArrayIndexOutOfBoundsException
+                throw new StreamCorruptedException("Corrupt user export chunk");
+            }
+        }
+
+        private static long readVarLong(ByteBuffer buffer) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = buffer.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        private static String readString(ByteBuffer buffer, int encodedLength) {
+            if (encodedLength == 0) {
+                return null;
+            }
+            String value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), encodedLength - 1,
+                    StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + encodedLength - 1);
+            return value;
+        }
+    }
+
+    /**
+     * Reusable chunk buffer with direct access to its bytes.
+     */
+    private static final class Body extends ByteArrayOutputStream {
+
+        Body() {
+            super(1 << 16);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        void writeString(byte[] value) {
+            writeVarLong(value == null ? 0 : value.length + 1);
+            if (value != null) {
+                write(value, 0, value.length);
+            }
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package services.store;
+
+import entities.User;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Consumer;
+
+/**
+ * Secondary indexes on {@code role}, {@code active}, {@code userName}, id order and name search. Only ids are indexed, records
+ * are resolved through the repository, so a filtered query costs time in proportion to the smallest matching index,
+ * not to the table.
+ * <p>
+ * Updates must be serialized by the caller; queries may run concurrently with them.
+ */
+public class UserIndexes {
+
+    private static final ConcurrentLongHashSet EMPTY = new ConcurrentLongHashSet();
+
+    /**
+     * Below this many changes {@link #updateAll} applies them one by one.
+     */
+    private static final int BULK_THRESHOLD = 1024;
+
+    private final ConcurrentHashMap<String, ConcurrentLongHashSet> byRole = new ConcurrentHashMap<>();
+    private final ConcurrentLongHashSet active = new ConcurrentLongHashSet();
+    private final ConcurrentLongHashSet inactive = new ConcurrentLongHashSet();
+    private final ConcurrentSkipListSet<NameKey> byName = new ConcurrentSkipListSet<>();
+    private final SortedLongSet byId = new SortedLongSet();
+    private final UserSearchIndex search = new UserSearchIndex();
+
+    /**
+     * Moves a user from its {@code previous} to its {@code current} state; either may be {@code null}.
+     */
+    public void update(User previous, User current) {
+        if (previous != null) {
+            removeHashed(previous);
+            byName.remove(new NameKey(previous.getUserName(), previous.getUserId()));
+            if (current == null) {
+                byId.remove(previous.getUserId());
+            }
+        }
+        if (current != null) {
+            addHashed(current);
+            byName.add(new NameKey(current.getUserName(), current.getUserId()));
+            byId.add(current.getUserId());
+        }
+        search.update(previous, current);
+    }
+
+    /**
+     * Applies many {@code (previous, current)} changes, at most one per user. A large batch inserts its keys into
+     * the ordered indexes in key order, which a skip list takes several times faster than random order, and which
+     * lets the id index merge new ids into each of its chunks at once.
+     */
+    public void updateAll(Collection<User[]> changes) {
+        if (changes.size() < BULK_THRESHOLD) {
+            changes.forEach(change -> update(change[0], change[1]));
+            return;
+        }
+        List<NameKey> addedNames = new ArrayList<>(changes.size());
+        long[] addedIds = new long[changes.size()];
+        int addedIdCount = 0;
+        for (User[] change : changes) {
+            User previous = change[0];
+            User current = change[1];
+            if (previous != null) {
+                removeHashed(previous);
+                byName.remove(new NameKey(previous.getUserName(), previous.getUserId()));
+                if (current == null) {
+                    byId.remove(previous.getUserId());
+                }
+            }
+            if (current != null) {
+                addHashed(current);
+                addedNames.add(new NameKey(current.getUserName(), current.getUserId()));
+                if (previous == null) {
+                    addedIds[addedIdCount++] = current.getUserId();
+                }
+            }
+        }
+        Collections.sort(addedNames);
+        byName.addAll(addedNames);
+        Arrays.sort(addedIds, 0, addedIdCount);
+        byId.addAll(addedIds, addedIdCount);
+        search.updateAll(changes);
+    }
+
+    /**
+     * Case-insensitive name search, see {@link UserSearchIndex}.
+     *
+     * @param substring match anywhere in the name rather than at its start
+     */
+    public List<User> search(String query, boolean substring, int limit, UserRepository repository) {
+        return substring ? search.findBySubstring(query, limit, repository) : search.findByPrefix(query, limit, repository);
+    }
+
+    private void removeHashed(User user) {
+        if (user.getRole() != null) {
+            ConcurrentLongHashSet ids = byRole.get(user.getRole());
+            if (ids != null) {
+                ids.remove(user.getUserId());
+            }
+        }
+        (user.isActive() ? active : inactive).remove(user.getUserId());
+    }
+
+    private void addHashed(User user) {
+        if (user.getRole() != null) {
+            byRole.computeIfAbsent(user.getRole(), role -> new ConcurrentLongHashSet()).add(user.getUserId());
+        }
+        (user.isActive() ? active : inactive).add(user.getUserId());
+    }
+
+    /**
+     * @param role   exact role to match, or {@code null} for any
+     * @param active flag to match, or {@code null} for any
+     */
+    public List<User> find(String role, Boolean active, UserRepository repository) {
+        if (role == null && active == null) {
+            return repository.findAll();
+        }
+        List<User> users = new ArrayList<>();
+        forEach(role, active, repository, users::add);
+        return users;
+    }
+
+    /**
+     * Unordered walk over the users matching the filter, without collecting them.
+     */
+    public void forEach(String role, Boolean active, UserRepository repository, Consumer<User> action) {
+        ConcurrentLongHashSet candidates = null;
+        if (role != null) {
+            candidates = byRole.getOrDefault(role, EMPTY);
+        }
+        if (active != null) {
+            ConcurrentLongHashSet flagged = active ? this.active : this.inactive;
+            if (candidates == null || flagged.size() < candidates.size()) {
+                candidates = flagged;
+            }
+        }
+        if (candidates == null) {
+            repository.forEach(action);
+            return;
+        }
+        candidates.forEach(id -> {
+            User user = repository.findById(id);
+            // re-check: the record may have changed since the index was read
+            if (user != null && matches(user, role, active)) {
+                action.accept(user);
+            }
+        });
+    }
+
+    /**
+     * Walks the name index in order, no sorting on read.
+     */
+    public List<User> sortedByName(UserRepository repository) {
+        List<User> users = new ArrayList<>(byName.size());
+        forEachByName(null, null, repository, users::add);
+        return users;
+    }
+
+    public void forEachByName(String role, Boolean active, UserRepository repository, Consumer<User> action) {
+        for (NameKey key : byName) {
+            User user = resolve(key, repository);
+            if (user != null && matches(user, role, active)) {
+                action.accept(user);
+            }
+        }
+    }
+
+    /**
+     * Keyset page in id order: up to {@code limit} users with an id greater than {@code afterId}.
+     */
+    public List<User> pageById(long afterId, int limit, String role, Boolean active, UserRepository repository) {
+        List<User> users = new ArrayList<>(limit);
+        for (PrimitiveIterator.OfLong ids = byId.iterator(afterId); ids.hasNext(); ) {
+            User user = repository.findById(ids.nextLong());
+            if (user != null && matches(user, role, active)) {
+                users.add(user);
+                if (users.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Keyset page in (userName, id) order, starting right after the given key.
+     */
+    public List<User> pageByName(String afterName, long afterId, int limit, String role, Boolean active,
+                                 UserRepository repository) {
+        List<User> users = new ArrayList<>(limit);
+        for (NameKey key : byName.tailSet(new NameKey(afterName, afterId), false)) {
+            User user = resolve(key, repository);
+            if (user != null && matches(user, role, active)) {
+                users.add(user);
+                if (users.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return users;
+    }
+
+    int size() {
+        return byId.size();
+    }
+
+    /**
+     * Name keys in order, starting right after {@code after}, or at the first one if it is {@code null}.
+     */
+    Iterator<NameKey> namesAfter(NameKey after) {
+        return (after == null ? byName : byName.tailSet(after, false)).iterator();
+    }
+
+    Iterator<Long> idsAfter(long afterId) {
+        return byId.iterator(afterId);
+    }
+
+    static boolean matches(User user, String role, Boolean active) {
+        return (role == null || Objects.equals(role, user.getRole())) && (active == null || active == user.isActive());
+    }
+
+    /**
+     * Skips keys whose user was renamed or deleted after the key was read, so a concurrent rename
+     * never shows the same user twice.
+     */
+    static User resolve(NameKey key, UserRepository repository) {
+        User user = repository.findById(key.id);
+        return user != null && Objects.equals(user.getUserName(), key.name) ? user : null;
+    }
+
+    static final class NameKey implements Comparable<NameKey> {
+        final String name;
+        final long id;
+
+        NameKey(String name, long id) {
+            this.name = name;
+            this.id = id;
+        }
+
+        /**
+         * (name, id) with {@code null} names first; spelled out rather than composed from {@link Comparator}s,
+         * which costs a third of the time when sorting millions of keys.
+         */
+        @Override
+        public int compareTo(NameKey other) {
+            if (name != other.name) {
+                if (name == null) {
+                    return -1;
+                }
+                if (other.name == null) {
+                    return 1;
+                }
+                int byName = name.compareTo(other.name);
+                if (byName != 0) {
+                    return byName;
+                }
+            }
+            return Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof NameKey && id == ((NameKey) o).id && Objects.equals(name, ((NameKey) o).name);
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(id) * 31 + Objects.hashCode(name);
+        }
+    }
+}
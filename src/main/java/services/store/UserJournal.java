@@ -0,0 +1,53 @@
+package services.store;
+
+import entities.User;
+import exceptions.UserTooLargeException;
+
+/**
+ * Ordered log of user mutations, appended to by one thread at a time in version order as {@link services.UserService}
+ * commits them. Every record carries the version the mutation was assigned, so the version doubles as the log
+ * sequence number.
+ */
+public interface UserJournal {
+
+    UserJournal NONE = new UserJournal() {
+        @Override
+        public long recover(UserRepository repository) {
+            return 0;
+        }
+
+        @Override
+        public void append(long version, long id, User user) {
+        }
+
+        @Override
+        public void awaitDurable(long version) {
+        }
+    };
+
+    /**
+     * Loads the journaled state into an empty repository.
+     *
+     * @return the last version the journal holds, {@code 0} if it is empty
+     */
+    long recover(UserRepository repository);
+
+    /**
+     * Rejects a user whose record could never be appended, before anything of the mutation is applied.
+     *
+     * @throws UserTooLargeException if the record would not fit into the journal
+     */
+    default void check(User user) {
+    }
+
+    /**
+     * @param user the stored record, or {@code null} if user {@code id} was deleted
+     */
+    void append(long version, long id, User user);
+
+    /**
+     * Blocks until every record up to {@code version} is durable, if the journal is configured to wait for that.
+     * Called after the writer locks are released, so concurrent writers share one fsync.
+     */
+    void awaitDurable(long version);
+}
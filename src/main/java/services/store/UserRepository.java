@@ -0,0 +1,40 @@
+package services.store;
+
+import entities.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage engine behind {@link services.UserService}. Implementations must be safe for concurrent use.
+ */
+public interface UserRepository {
+
+    /**
+     * @return the stored user, or {@code null} if there is none with this id
+     */
+    User findById(long id);
+
+    /**
+     * Stores the user under its id, replacing any previous record.
+     *
+     * @return the replaced user, or {@code null}
+     */
+    User save(User user);
+
+    /**
+     * @return the removed user, or {@code null} if there was none with this id
+     */
+    User delete(long id);
+
+    int count();
+
+    void forEach(Consumer<User> action);
+
+    default List<User> findAll() {
+        List<User> users = new ArrayList<>(count());
+        forEach(users::add);
+        return users;
+    }
+}
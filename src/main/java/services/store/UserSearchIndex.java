@@ -0,0 +1,162 @@
+package services.store;
+
+import entities.User;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Case-insensitive name search: prefixes through a skip list of lower-cased names, substrings through a trigram
+ * index of the lower-cased names. Candidates are always re-checked against the repository, so a query never returns
+ * a user whose name changed after the index was read.
+ * <p>
+ * Updates must be serialized by the caller; queries may run concurrently with them.
+ */
+public class UserSearchIndex {
+
+    /**
+     * Substring queries need at least one whole trigram.
+     */
+    public static final int MIN_SUBSTRING_LENGTH = 3;
+
+    private final ConcurrentSkipListSet<UserIndexes.NameKey> byLowerName = new ConcurrentSkipListSet<>();
+    private final ConcurrentLongHashMap<ConcurrentLongHashSet> byTrigram = new ConcurrentLongHashMap<>(1 << 14, 16);
+
+    public void update(User previous, User current) {
+        String previousName = previous == null ? null : lowerCase(previous.getUserName());
+        String currentName = current == null ? null : lowerCase(current.getUserName());
+        if (previousName != null && !(current != null && previousName.equals(currentName))) {
+            byLowerName.remove(new UserIndexes.NameKey(previousName, previous.getUserId()));
+            forEachTrigram(previousName, trigram -> {
+                ConcurrentLongHashSet ids = byTrigram.get(trigram);
+                if (ids != null) {
+                    ids.remove(previous.getUserId());
+                }
+            });
+        }
+        if (currentName != null && !(previous != null && currentName.equals(previousName))) {
+            byLowerName.add(new UserIndexes.NameKey(currentName, current.getUserId()));
+            forEachTrigram(currentName, trigram -> postings(trigram).add(current.getUserId()));
+        }
+    }
+
+    /**
+     * Bulk counterpart of {@link #update}, at most one change per user: new keys enter the prefix index in key
+     * order like those of the ordered indexes of {@link UserIndexes}.
+     */
+    void updateAll(Collection<User[]> changes) {
+        List<UserIndexes.NameKey> added = new ArrayList<>(changes.size());
+        for (User[] change : changes) {
+            String previousName = change[0] == null ? null : lowerCase(change[0].getUserName());
+            String currentName = change[1] == null ? null : lowerCase(change[1].getUserName());
+            if (previousName != null && !previousName.equals(currentName)) {
+                long id = change[0].getUserId();
+                byLowerName.remove(new UserIndexes.NameKey(previousName, id));
+                forEachTrigram(previousName, trigram -> {
+                    ConcurrentLongHashSet ids = byTrigram.get(trigram);
+                    if (ids != null) {
+                        ids.remove(id);
+                    }
+                });
+            }
+            if (currentName != null && !currentName.equals(previousName)) {
+                long id = change[1].getUserId();
+                added.add(new UserIndexes.NameKey(currentName, id));
+                forEachTrigram(currentName, trigram -> postings(trigram).add(id));
+            }
+        }
+        Collections.sort(added);
+        byLowerName.addAll(added);
+    }
+
+    /**
+     * Users whose name starts with {@code prefix}, ignoring case, in lower-cased name order.
+     */
+    public List<User> findByPrefix(String prefix, int limit, UserRepository repository) {
+        String lower = lowerCase(prefix);
+        List<User> users = new ArrayList<>(Math.min(limit, 64));
+        for (UserIndexes.NameKey key : byLowerName.tailSet(new UserIndexes.NameKey(lower, Long.MIN_VALUE))) {
+            if (!key.name.startsWith(lower)) {
+                break;
+            }
+            User user = repository.findById(key.id);
+            if (user != null && key.name.equals(lowerCase(user.getUserName()))) {
+                users.add(user);
+                if (users.size() == limit) {
+                    break;
+                }
+            }
+        }
+        return users;
+    }
+
+    /**
+     * Users whose name contains {@code text}, ignoring case, in no particular order. Walks the smallest posting
+     * set of the query's trigrams and checks the others by lookup before resolving a candidate.
+     *
+     * @throws IllegalArgumentException if {@code text} is shorter than {@value #MIN_SUBSTRING_LENGTH} characters
+     */
+    public List<User> findBySubstring(String text, int limit, UserRepository repository) {
+        String lower = lowerCase(text);
+        if (lower.length() < MIN_SUBSTRING_LENGTH) {
+            throw new IllegalArgumentException("Substring search needs at least " + MIN_SUBSTRING_LENGTH + " characters");
+        }
+        Map<Long, ConcurrentLongHashSet> postings = new LinkedHashMap<>();
+        forEachTrigram(lower, trigram -> postings.put(trigram, byTrigram.get(trigram)));
+        ConcurrentLongHashSet smallest = null;
+        for (ConcurrentLongHashSet ids : postings.values()) {
+            if (ids == null || ids.size() == 0) {
+                return new ArrayList<>();
+            }
+            if (smallest == null || ids.size() < smallest.size()) {
+                smallest = ids;
+            }
+        }
+        ConcurrentLongHashSet candidates = smallest;
+        List<ConcurrentLongHashSet> others = new ArrayList<>(postings.values());
+        others.remove(candidates);
+        List<User> users = new ArrayList<>(Math.min(limit, 64));
+        candidates.forEachWhile(id -> {
+            for (ConcurrentLongHashSet ids : others) {
+                if (!ids.contains(id)) {
+                    return true;
+                }
+            }
+            User user = repository.findById(id);
+            String name = user == null ? null : lowerCase(user.getUserName());
+            if (name != null && name.contains(lower)) {
+                users.add(user);
+            }
+            return users.size() < limit;
+        });
+        return users;
+    }
+
+    private ConcurrentLongHashSet postings(long trigram) {
+        ConcurrentLongHashSet ids = byTrigram.get(trigram);
+        if (ids == null) {
+            byTrigram.putIfAbsent(trigram, new ConcurrentLongHashSet());
+            ids = byTrigram.get(trigram);
+        }
+        return ids;
+    }
+
+    static String lowerCase(String name) {
+        return name == null ? null : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Trigrams packed as three 16-bit chars; a repeated trigram is passed again, which set updates ignore.
+     */
+    private static void forEachTrigram(String name, ConcurrentLongHashSet.LongConsumer action) {
+        for (int i = 0; i + MIN_SUBSTRING_LENGTH <= name.length(); i++) {
+            action.accept((long) name.charAt(i) << 32 | (long) name.charAt(i + 1) << 16 | name.charAt(i + 2));
+        }
+    }
+}
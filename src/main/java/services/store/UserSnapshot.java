@@ -0,0 +1,148 @@
+package services.store;
+
+import entities.User;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Compact binary image of the user table: {@code snapshot-<version>.bin}, holding every record with a version up to
+ * at least {@code version}, followed by a CRC32 of the whole file. Strings are written as in the WAL, an
+ * {@code int length} (-1 for null) plus UTF-8 bytes.
+ */
+final class UserSnapshot {
+
+    private static final int MAGIC = 0x55534E50;
+    private static final int FORMAT = 1;
+    private static final String PREFIX = "snapshot-";
+    private static final String SUFFIX = ".bin";
+
+    private UserSnapshot() {
+    }
+
+    /**
+     * Writes to a temporary file, syncs it and renames it into place, so a crash never leaves a partial snapshot.
+     */
+    static Path write(Path directory, long version, UserRepository repository) throws IOException {
+        Path target = directory.resolve(String.format("%s%020d%s", PREFIX, version, SUFFIX));
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new CheckedOutputStream(file, crc), 1 << 16));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeLong(version);
+            try {
+                repository.forEach(user -> {
+                    try {
+                        out.writeBoolean(true);
+                        out.writeLong(user.getUserId());
+                        out.writeLong(user.getVersion());
+                        out.writeBoolean(user.isActive());
+                        writeString(out, user.getUserName());
+                        writeString(out, user.getRole());
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.writeBoolean(false);
+            out.flush();
+            new DataOutputStream(file).writeInt((int) crc.getValue());
+            file.getFD().sync();
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        return target;
+    }
+
+    /**
+     * Loads the newest readable snapshot into the repository.
+     *
+     * @return its version, or {@code 0} if there is none
+     */
+    static long readLatest(Path directory, UserRepository repository) throws IOException {
+        List<Path> snapshots = list(directory);
+        Collections.reverse(snapshots);
+        for (Path snapshot : snapshots) {
+            List<User> users = new ArrayList<>();
+            long version = read(snapshot, users);
+            if (version >= 0) {
+                users.forEach(repository::save);
+                return version;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Snapshot files, oldest first.
+     */
+    static List<Path> list(Path directory) throws IOException {
+        List<Path> snapshots = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(snapshots::add);
+        }
+        Collections.sort(snapshots);
+        return snapshots;
+    }
+
+    /**
+     * @return the snapshot version, or {@code -1} if the file is truncated or corrupt
+     */
+    private static long read(Path snapshot, List<User> users) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream file = new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16)) {
+            DataInputStream in = new DataInputStream(new CheckedInputStream(file, crc));
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return -1;
+            }
+            long size = Files.size(snapshot);
+            long version = in.readLong();
+            while (in.readBoolean()) {
+                long id = in.readLong();
+                long userVersion = in.readLong();
+                boolean active = in.readBoolean();
+                users.add(new User(id, readString(in, size), readString(in, size), active, userVersion));
+            }
+            int expected = (int) crc.getValue();
+            return new DataInputStream(file).readInt() == expected ? version : -1;
+        } catch (EOFException e) {
+            return -1;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * @param size of the whole file, which a corrupt length must not make us allocate beyond
+     */
+    private static String readString(DataInputStream in, long size) throws IOException {
+        int length = in.readInt();
+        if (length < -1 || length > size) {
+            throw new EOFException("Corrupt string length " + length);
+        }
+        if (length == -1) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
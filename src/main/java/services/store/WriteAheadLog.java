@@ -0,0 +1,375 @@
+package services.store;
+
+import entities.User;
+import exceptions.UserTooLargeException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * Durable {@link UserJournal}: records are appended to memory-mapped segment files {@code wal-<firstVersion>.log}
+ * and made durable by a single sync thread, so writers that pile up during one fsync share the next one.
+ * <p>
+ * Every {@code snapshotEvery} records a {@link UserSnapshot} is written in the background without blocking writers.
+ * The snapshot is fuzzy: it may already contain records newer than the version it was started at, which is harmless
+ * because replaying the log from that version re-applies every later mutation in order. Segments wholly covered by
+ * the snapshot are deleted afterwards, so recovery reads one snapshot and the tail of the log.
+ * <p>
+ * Record layout: {@code int length, int crc32, byte type, long version, long id}, and for a put
+ * {@code byte active, name, role}, strings as {@code int length} (-1 for null) plus UTF-8 bytes.
+ * A zero length or a CRC mismatch marks the end of a segment.
+ * <p>
+ * A failed fsync is not retried, since the pages it failed to write may already count as clean: the sync thread
+ * stops, and every wait for durability from then on fails.
+ */
+public class WriteAheadLog implements UserJournal, Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final String PREFIX = "wal-";
+    private static final String SUFFIX = ".log";
+    private static final int HEADER = 8;
+    private static final byte PUT = 1;
+    private static final byte DELETE = 2;
+    private static final int PUT_FIXED = 26;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final long fsyncIntervalNanos;
+    private final boolean awaitFsync;
+    private final long snapshotEvery;
+
+    private final CRC32 crc = new CRC32();
+    /**
+     * A lock rather than a monitor, so writers waiting on a virtual thread release their carrier thread.
+     */
+    private final ReentrantLock durableLock = new ReentrantLock();
+    private final Condition durableCondition = durableLock.newCondition();
+    private final ExecutorService snapshotter = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "user-wal-snapshot");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ByteBuffer scratch = ByteBuffer.allocate(256);
+    private volatile MappedByteBuffer segment;
+    private volatile long appended;
+    private volatile long durable;
+    private volatile boolean running;
+    private volatile RuntimeException syncFailure;
+    private long sinceSnapshot;
+    private Thread syncer;
+    private UserRepository repository;
+
+    /**
+     * @param fsyncIntervalMillis minimum pause between two fsyncs; {@code 0} syncs as soon as records are pending
+     * @param awaitFsync          whether writers wait for their records to be durable before returning
+     * @param snapshotEvery       records between two snapshots; {@code 0} disables snapshots
+     */
+    public WriteAheadLog(Path directory, int segmentSize, long fsyncIntervalMillis, boolean awaitFsync, long snapshotEvery) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsyncIntervalNanos = TimeUnit.MILLISECONDS.toNanos(fsyncIntervalMillis);
+        this.awaitFsync = awaitFsync;
+        this.snapshotEvery = snapshotEvery;
+    }
+
+    @Override
+    public synchronized long recover(UserRepository repository) {
+        this.repository = repository;
+        try {
+            Files.createDirectories(directory);
+            long snapshotVersion = UserSnapshot.readLatest(directory, repository);
+            long last = snapshotVersion;
+            int replayed = 0;
+            for (Path file : segments()) {
+                ByteBuffer buffer = map(file, FileChannel.MapMode.READ_ONLY, Files.size(file));
+                while (buffer.remaining() >= HEADER) {
+                    int length = buffer.getInt();
+                    int checksum = buffer.getInt();
+                    if (length <= 0 || length > buffer.remaining() || checksum(buffer, length) != checksum) {
+                        break;
+                    }
+                    int end = buffer.position() + length;
+                    byte type = buffer.get();
+                    long version = buffer.getLong();
+                    long id = buffer.getLong();
+                    if (version > snapshotVersion) {
+                        if (type == PUT) {
+                            boolean active = buffer.get() != 0;
+                            repository.save(new User(id, readString(buffer), readString(buffer), active, version));
+                        } else {
+                            repository.delete(id);
+                        }
+                        last = Math.max(last, version);
+                        replayed++;
+                    }
+                    buffer.position(end);
+                }
+            }
+            log.info("Recovered {} users from {} (snapshot version {}, {} log records replayed)",
+                    repository.count(), directory, snapshotVersion, replayed);
+            appended = last;
+            durable = last;
+            segment = openSegment(last + 1);
+            running = true;
+            syncer = new Thread(this::syncLoop, "user-wal-sync");
+            syncer.setDaemon(true);
+            syncer.start();
+            return last;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized void append(long version, long id, User user) {
+        ByteBuffer record = encode(version, id, user);
+        int length = record.remaining();
+        if (segment.remaining() < HEADER + length) {
+            roll(version);
+        }
+        crc.reset();
+        crc.update(record.array(), 0, length);
+        segment.putInt(length).putInt((int) crc.getValue()).put(record);
+        appended = version;
+        LockSupport.unpark(syncer);
+        if (snapshotEvery > 0 && ++sinceSnapshot >= snapshotEvery) {
+            sinceSnapshot = 0;
+            snapshotter.execute(this::snapshot);
+        }
+    }
+
+    @Override
+    public void check(User user) {
+        // a char takes at most three bytes in UTF-8, so only long strings need encoding to be measured
+        long bound = HEADER + PUT_FIXED + 3L * (chars(user.getUserName()) + chars(user.getRole()));
+        if (bound > segmentSize
+                && HEADER + PUT_FIXED + (long) bytes(user.getUserName()) + bytes(user.getRole()) > segmentSize) {
+            throw new UserTooLargeException("User " + user.getUserId() + " does not fit into a log segment of "
+                    + segmentSize + " bytes");
+        }
+    }
+
+    @Override
+    public void awaitDurable(long version) {
+        if (!awaitFsync) {
+            return;
+        }
+        durableLock.lock();
+        try {
+            while (durable < version && running && syncFailure == null) {
+                durableCondition.await();
+            }
+            if (durable < version && syncFailure != null) {
+                throw new IllegalStateException("User log could not be synced", syncFailure);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    /**
+     * Writes a snapshot now and drops the log segments it covers.
+     */
+    public void snapshot() {
+        long version = appended;
+        try {
+            UserSnapshot.write(directory, version, repository);
+            List<Path> snapshots = UserSnapshot.list(directory);
+            for (Path old : snapshots.subList(0, snapshots.size() - 1)) {
+                Files.deleteIfExists(old);
+            }
+            List<Path> segments = segments();
+            for (int i = 0; i + 1 < segments.size(); i++) {
+                // records in segment i are all older than the first record of segment i + 1
+                if (firstVersion(segments.get(i + 1)) <= version + 1) {
+                    Files.deleteIfExists(segments.get(i));
+                }
+            }
+        } catch (IOException e) {
+            log.error("User snapshot at version {} failed", version, e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (syncer == null) {
+            return;
+        }
+        running = false;
+        LockSupport.unpark(syncer);
+        try {
+            syncer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        snapshotter.shutdown();
+        synchronized (this) {
+            segment.force();
+        }
+        durableLock.lock();
+        try {
+            durableCondition.signalAll();
+        } finally {
+            durableLock.unlock();
+        }
+    }
+
+    /**
+     * Single fsync thread: each pass makes everything appended so far durable, then waits at least the fsync
+     * interval before the next pass so that concurrent writers are grouped into one fsync.
+     */
+    private void syncLoop() {
+        while (running) {
+            long target = appended;
+            if (target > durable) {
+                try {
+                    force(segment);
+                } catch (RuntimeException e) {
+                    log.error("Syncing the user log failed, writes after version {} are not durable", durable, e);
+                    durableLock.lock();
+                    try {
+                        syncFailure = e;
+                        durableCondition.signalAll();
+                    } finally {
+                        durableLock.unlock();
+                    }
+                    return;
+                }
+                durableLock.lock();
+                try {
+                    durable = target;
+                    durableCondition.signalAll();
+                } finally {
+                    durableLock.unlock();
+                }
+                if (fsyncIntervalNanos > 0) {
+                    LockSupport.parkNanos(this, fsyncIntervalNanos);
+                }
+            } else {
+                LockSupport.park(this);
+            }
+        }
+    }
+
+    void force(MappedByteBuffer segment) {
+        segment.force();
+    }
+
+    /**
+     * Syncs the full segment before switching, so the sync thread only ever has to force the current one.
+     */
+    private void roll(long nextVersion) {
+        segment.force();
+        segment = openSegment(nextVersion);
+    }
+
+    private MappedByteBuffer openSegment(long firstVersion) {
+        Path file = directory.resolve(String.format("%s%020d%s", PREFIX, firstVersion, SUFFIX));
+        try {
+            // a leftover file of that name holds no replayable records, but its stale bytes must not follow ours
+            Files.deleteIfExists(file);
+            return map(file, FileChannel.MapMode.READ_WRITE, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static MappedByteBuffer map(Path file, FileChannel.MapMode mode, long size) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), mode == FileChannel.MapMode.READ_ONLY ? "r" : "rw")) {
+            return raf.getChannel().map(mode, 0, size);
+        }
+    }
+
+    private List<Path> segments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, PREFIX + "*" + SUFFIX)) {
+            files.forEach(segments::add);
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    private static long firstVersion(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    private ByteBuffer encode(long version, long id, User user) {
+        byte[] name = user == null || user.getUserName() == null ? null : user.getUserName().getBytes(StandardCharsets.UTF_8);
+        byte[] role = user == null || user.getRole() == null ? null : user.getRole().getBytes(StandardCharsets.UTF_8);
+        int length = user == null ? 17 : PUT_FIXED + (name == null ? 0 : name.length) + (role == null ? 0 : role.length);
+        if (HEADER + length > segmentSize) {
+            throw new IllegalArgumentException("User " + id + " does not fit into a log segment");
+        }
+        if (scratch.capacity() < length) {
+            scratch = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+        }
+        scratch.clear();
+        scratch.put(user == null ? DELETE : PUT).putLong(version).putLong(id);
+        if (user != null) {
+            scratch.put((byte) (user.isActive() ? 1 : 0));
+            writeString(scratch, name);
+            writeString(scratch, role);
+        }
+        scratch.flip();
+        return scratch;
+    }
+
+    private static int chars(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static int bytes(String value) {
+        return value == null ? 0 : value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        buffer.putInt(value == null ? -1 : value.length);
+        if (value != null) {
+            buffer.put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    private int checksum(ByteBuffer buffer, int length) {
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        crc.reset();
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+}
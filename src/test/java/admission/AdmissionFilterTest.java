@@ -0,0 +1,79 @@
+package admission;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class AdmissionFilterTest {
+
+    private static final FilterChain OK = (req, res) -> ((HttpServletResponse) res).setStatus(200);
+
+    @Test
+    public void rateLimitsPerClient() throws Exception {
+        AdmissionFilter filter = new AdmissionFilter(new ClientRateLimiter(64, 1, 2),
+                new ConcurrencyLimiter(10, 1, 10, TimeUnit.SECONDS.toNanos(1), 0.9), "X-Client-Id",
+                Collections.singleton("/user/all"), 2);
+        assertEquals(200, perform(filter, "GET", "/user/1", "a").getStatus());
+        assertEquals(200, perform(filter, "GET", "/user/1", "a").getStatus());
+        MockHttpServletResponse refused = perform(filter, "GET", "/user/1", "a");
+        assertEquals(429, refused.getStatus());
+        assertEquals("1", refused.getHeader("Retry-After"));
+        assertEquals(200, perform(filter, "GET", "/user/all", "b").getStatus());
+        assertEquals(429, perform(filter, "GET", "/user/1", "b").getStatus());
+        assertEquals(2, filter.rateLimited());
+    }
+
+    @Test
+    public void shedsBulkReadsBeforeMutations() throws Exception {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 1, 10, TimeUnit.SECONDS.toNanos(1), 0.9);
+        AdmissionFilter filter = new AdmissionFilter(null, limiter, null, Collections.singleton("/user/all"), 1);
+        for (int i = 0; i < 5; i++) {
+            assertTrue(limiter.tryAcquire(1));
+        }
+        assertEquals(503, perform(filter, "GET", "/user/all", null).getStatus());
+        assertEquals(200, perform(filter, "GET", "/user/1", null).getStatus());
+        for (int i = 0; i < 4; i++) {
+            assertTrue(limiter.tryAcquire(1));
+        }
+        assertEquals(503, perform(filter, "GET", "/user/1", null).getStatus());
+        assertEquals(200, perform(filter, "PUT", "/v2/user/", null).getStatus());
+        assertEquals(2, filter.shed());
+        assertEquals(9, limiter.inFlight());
+    }
+
+    @Test
+    public void adaptsTheLimit() {
+        ConcurrencyLimiter limiter = new ConcurrencyLimiter(10, 2, 12, 1000, 0.5);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(1));
+        }
+        assertFalse(limiter.tryAcquire(1));
+        limiter.release(10);
+        assertEquals(10.1, limiter.limit(), 1e-9);
+        limiter.release(5000);
+        assertEquals(5.05, limiter.limit(), 1e-9);
+        for (int i = 0; i < 8; i++) {
+            limiter.release(5000);
+        }
+        assertEquals(2, limiter.limit(), 1e-9);
+        assertEquals(0, limiter.inFlight());
+    }
+
+    private static MockHttpServletResponse perform(AdmissionFilter filter, String method, String uri, String client)
+            throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest(method, uri);
+        if (client != null) {
+            request.addHeader("X-Client-Id", client);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, OK);
+        return response;
+    }
+}
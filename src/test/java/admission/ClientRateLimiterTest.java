@@ -0,0 +1,49 @@
+package admission;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class ClientRateLimiterTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void allowsTheBurstThenTheRate() {
+        ClientRateLimiter limiter = new ClientRateLimiter(64, 10, 5);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("a", 1, now));
+        }
+        long wait = limiter.tryAcquire("a", 1, now);
+        assertEquals(SECOND / 10, wait);
+        assertEquals(0, limiter.tryAcquire("b", 1, now));
+        assertEquals(0, limiter.tryAcquire("a", 1, now + wait));
+        assertTrue(limiter.tryAcquire("a", 1, now + wait) > 0);
+        assertEquals(0, limiter.tryAcquire("a", 5, now + 2 * SECOND));
+    }
+
+    @Test
+    public void chargesTheCost() {
+        ClientRateLimiter limiter = new ClientRateLimiter(64, 10, 5);
+        long now = System.nanoTime();
+        assertEquals(0, limiter.tryAcquire("a", 4, now));
+        assertEquals(3 * SECOND / 10, limiter.tryAcquire("a", 4, now));
+        assertEquals(0, limiter.tryAcquire("a", 1, now));
+        // capped at the burst, so an expensive request is not refused forever
+        assertEquals(0, limiter.tryAcquire("a", 100, now + SECOND));
+    }
+
+    @Test
+    public void staysBoundedWithManyClients() {
+        ClientRateLimiter limiter = new ClientRateLimiter(16, 1, 1);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(0, limiter.tryAcquire("client-" + i, 1, now + i));
+        }
+        assertEquals(0, limiter.tryAcquire("late", 1, now + 10000));
+        assertTrue(limiter.tryAcquire("late", 1, now + 10000) > 0);
+    }
+}
@@ -0,0 +1,251 @@
+package compression;
+
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletResponse;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.*;
+
+public class CompressionFilterTest {
+
+    private final CompressionFilter filter = new CompressionFilter(1024, 1,
+            new HashSet<>(Arrays.asList("application/json", "text/plain")), 2);
+
+    @Test
+    public void gzipsLargeBodies() throws Exception {
+        byte[] body = json(5000);
+        for (int i = 0; i < 3; i++) {
+            MockHttpServletResponse response = perform("gzip, deflate", "application/json;charset=UTF-8", body, false);
+            assertEquals("gzip", response.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            assertNull(response.getHeader("Content-Length"));
+            assertTrue(response.getContentAsByteArray().length < body.length / 4);
+            assertArrayEquals(body, read(new GZIPInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+        }
+    }
+
+    @Test
+    public void honoursPreferredEncoding() throws Exception {
+        byte[] body = json(5000);
+        MockHttpServletResponse response = perform("gzip;q=0.5, deflate", "application/json", body, false);
+        assertEquals("deflate", response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, read(new InflaterInputStream(new ByteArrayInputStream(response.getContentAsByteArray()))));
+
+        assertNull(perform("gzip;q=0, br", "application/json", body, false).getHeader("Content-Encoding"));
+        assertEquals("gzip", perform("*", "application/json", body, false).getHeader("Content-Encoding"));
+    }
+
+    @Test
+    public void passesSmallAndOtherBodiesThrough() throws Exception {
+        byte[] small = json(10);
+        MockHttpServletResponse response = perform("gzip", "application/json", small, false);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(small.length, response.getContentLength());
+        assertArrayEquals(small, response.getContentAsByteArray());
+
+        byte[] large = json(5000);
+        response = perform("gzip", "image/png", large, false);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(large, response.getContentAsByteArray());
+
+        response = perform(null, "application/json", large, false);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(large, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void declaredSmallLengthIsKept() throws Exception {
+        byte[] small = json(10);
+        MockHttpServletResponse response = perform("gzip", "application/json", small, true);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(small.length, response.getContentLength());
+        assertArrayEquals(small, response.getContentAsByteArray());
+
+        byte[] large = json(5000);
+        response = perform("gzip", "application/json", large, true);
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertNull(response.getHeader("Content-Length"));
+    }
+
+    @Test
+    public void earlyFlushCommitsUncompressed() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/all");
+        request.addHeader("Accept-Encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        byte[] body = json(5000);
+        FilterChain chain = (req, res) -> {
+            res.setContentType("text/plain");
+            res.getOutputStream().write(body, 0, 10);
+            res.flushBuffer();
+            res.getOutputStream().write(body, 10, body.length - 10);
+        };
+        filter.doFilter(request, response, chain);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    @Test
+    public void asyncResponseStaysOpenUntilComplete() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/changes");
+        request.setAsyncSupported(true);
+        request.addHeader("Accept-Encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        ServletResponse[] wrapped = new ServletResponse[1];
+        filter.doFilter(request, response, (req, res) -> {
+            req.startAsync();
+            res.setContentType("text/event-stream");
+            wrapped[0] = res;
+        });
+        wrapped[0].getOutputStream().write("data:1\n\n".getBytes(StandardCharsets.UTF_8));
+        wrapped[0].flushBuffer();
+        wrapped[0].getOutputStream().write("data:2\n\n".getBytes(StandardCharsets.UTF_8));
+        request.getAsyncContext().complete();
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("data:1\n\ndata:2\n\n", response.getContentAsString());
+    }
+
+    @Test
+    public void variesWheneverTheTypeIsCompressible() throws Exception {
+        assertEquals("Accept-Encoding", perform("gzip", "application/json", json(10), false).getHeader("Vary"));
+        assertEquals("Accept-Encoding", perform(null, "application/json", json(5000), false).getHeader("Vary"));
+        assertNull(perform("gzip", "image/png", json(5000), false).getHeader("Vary"));
+    }
+
+    @Test
+    public void compressedBodiesGetTheirOwnETag() throws Exception {
+        byte[] body = json(5000);
+        FilterChain chain = (req, res) -> {
+            HttpServletResponse response = (HttpServletResponse) res;
+            response.setContentType("application/json");
+            if ("\"7\"".equals(((HttpServletRequest) req).getHeader("If-None-Match"))) {
+                response.setStatus(304);
+                response.setHeader("ETag", "\"7\"");
+                return;
+            }
+            response.setHeader("ETag", "\"7\"");
+            response.getOutputStream().write(body);
+        };
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/all");
+        request.addHeader("Accept-Encoding", "gzip");
+        MockHttpServletResponse compressed = new MockHttpServletResponse();
+        filter.doFilter(request, compressed, chain);
+        assertEquals("gzip", compressed.getHeader("Content-Encoding"));
+        assertEquals("\"7-gzip\"", compressed.getHeader("ETag"));
+
+        request.addHeader("If-None-Match", "\"7-gzip\"");
+        MockHttpServletResponse notModified = new MockHttpServletResponse();
+        filter.doFilter(request, notModified, chain);
+        assertEquals(304, notModified.getStatus());
+        assertEquals("\"7-gzip\"", notModified.getHeader("ETag"));
+
+        MockHttpServletRequest identity = new MockHttpServletRequest("GET", "/user/all");
+        MockHttpServletResponse uncompressed = new MockHttpServletResponse();
+        filter.doFilter(identity, uncompressed, chain);
+        assertNull(uncompressed.getHeader("Content-Encoding"));
+        assertEquals("\"7\"", uncompressed.getHeader("ETag"));
+    }
+
+    @Test
+    public void nonBlockingWritesPassThrough() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/all");
+        request.addHeader("Accept-Encoding", "gzip");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        WriteListener[] registered = new WriteListener[1];
+        HttpServletResponse nonBlocking = new HttpServletResponseWrapper(response) {
+            @Override
+            public ServletOutputStream getOutputStream() throws IOException {
+                ServletOutputStream out = super.getOutputStream();
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) throws IOException {
+                        out.write(b);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return false;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        registered[0] = writeListener;
+                    }
+                };
+            }
+        };
+        byte[] body = json(5000);
+        WriteListener listener = new WriteListener() {
+            @Override
+            public void onWritePossible() {
+            }
+
+            @Override
+            public void onError(Throwable t) {
+            }
+        };
+        filter.doFilter(request, nonBlocking, (req, res) -> {
+            res.setContentType("application/json");
+            res.getOutputStream().setWriteListener(listener);
+            assertFalse(res.getOutputStream().isReady());
+            res.getOutputStream().write(body);
+        });
+        assertSame(listener, registered[0]);
+        assertNull(response.getHeader("Content-Encoding"));
+        assertArrayEquals(body, response.getContentAsByteArray());
+    }
+
+    private MockHttpServletResponse perform(String acceptEncoding, String contentType, byte[] body,
+                                            boolean declareLength) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/user/all");
+        if (acceptEncoding != null) {
+            request.addHeader("Accept-Encoding", acceptEncoding);
+        }
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, (req, res) -> {
+            res.setContentType(contentType);
+            if (declareLength) {
+                res.setContentLength(body.length);
+            }
+            // in pieces, the way message converters write
+            for (int offset = 0; offset < body.length; offset += 700) {
+                res.getOutputStream().write(body, offset, Math.min(700, body.length - offset));
+            }
+        });
+        return response;
+    }
+
+    private static byte[] json(int users) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 1; i <= users; i++) {
+            json.append(i > 1 ? "," : "").append("{\"userName\":\"User").append(i)
+                    .append("\",\"role\":\"Chief\",\"active\":true,\"id\":").append(i).append('}');
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n = in.read(buffer); n >= 0; n = in.read(buffer)) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,67 @@
+package configs;
+
+import controllers.GreetingController;
+import metrics.Metrics;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Only runs on Java 21 or later, where {@code web.virtual-threads=true} can start.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = VirtualThreadConfigTest.VirtualThreadsApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = "web.virtual-threads=true")
+public class VirtualThreadConfigTest {
+
+    @Configuration
+    @EnableAutoConfiguration
+    @Import({VirtualThreadConfig.class, MetricsConfig.class, GreetingController.class})
+    static class VirtualThreadsApplication {
+    }
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private Metrics metrics;
+
+    @BeforeClass
+    public static void requiresVirtualThreads() {
+        try {
+            Class.forName("java.lang.Thread$Builder");
+        } catch (ClassNotFoundException e) {
+            Assume.assumeNoException(e);
+        }
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void requestsOnVirtualThreadsShareIdBlocksAndHandlerSlots() {
+        Set<Long> blocks = new HashSet<>();
+        for (int i = 0; i < 200; i++) {
+            Map<String, Object> greeting = rest.getForObject("/greeting", Map.class);
+            blocks.add((((Number) greeting.get("id")).longValue() - 1) / 1024);
+        }
+        // a block per stripe at most, where a block per thread would be one per request
+        assertTrue(blocks.toString(), blocks.size() <= 8 * Runtime.getRuntime().availableProcessors());
+
+        Map<String, Object> handlers = (Map<String, Object>) metrics.snapshot().get("handlers");
+        assertEquals(200L, ((Map<String, Object>) handlers.get("GreetingController.greeting")).get("count"));
+    }
+}
@@ -1,9 +1,95 @@
 package controllers;
 
-import org.junit.runner.RunWith;
-import org.springframework.test.context.junit4.SpringRunner;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@RunWith(SpringRunner.class)
 public class GreetingControllerTest {
 
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        mockMvc = MockMvcBuilders.standaloneSetup(new GreetingController()).build();
+    }
+
+    @Test
+    public void greeting() throws Exception {
+        mockMvc.perform(get("/greeting"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.id").value(1))
+                .andExpect(jsonPath("$.content").value("Hello World"));
+        mockMvc.perform(get("/greeting").param("name", "Taras"))
+                .andExpect(jsonPath("$.id").value(2))
+                .andExpect(jsonPath("$.content").value("Hello Taras"));
+    }
+
+    @Test
+    public void templateRendersLikeFormat() {
+        MessageTemplate template = new MessageTemplate("%s: 100%% of %s");
+        assertEquals(String.format("%s: 100%% of %s", "a", null), template.render("a", null));
+        assertEquals(String.format("Hello %s", (Object) null), new MessageTemplate("Hello %s").render((String) null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void templateRejectsOtherConversions() {
+        new MessageTemplate("Hello %d");
+    }
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws Exception {
+        IdBlockAllocator allocator = new IdBlockAllocator(16);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    long previous = 0;
+                    for (int i = 0; i < 10000; i++) {
+                        long id = allocator.next();
+                        assertTrue(id > previous);
+                        assertTrue(ids.add(id));
+                        previous = id;
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(80000, ids.size());
+    }
+
+    @Test
+    public void idsStayDenseWithAThreadPerRequest() throws Exception {
+        IdBlockAllocator allocator = new IdBlockAllocator(16, 4);
+        long[] ids = new long[1000];
+        for (int i = 0; i < ids.length; i++) {
+            int request = i;
+            Thread thread = new Thread(() -> ids[request] = allocator.next());
+            thread.start();
+            thread.join();
+        }
+        assertEquals(ids.length, Arrays.stream(ids).distinct().count());
+        // one block per stripe in progress at most, not one block per thread
+        assertTrue(Arrays.stream(ids).max().getAsLong() <= ids.length + 4 * 16);
+    }
 }
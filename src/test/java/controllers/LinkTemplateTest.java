@@ -0,0 +1,60 @@
+package controllers;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.hateoas.Link;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import static org.junit.Assert.assertEquals;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
+import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
+
+public class LinkTemplateTest {
+
+    private static final LinkTemplate SELF = LinkTemplate.to(methodOn(UserController.class).getUserLinks(0), Link.REL_SELF);
+
+    @After
+    public void tearDown() {
+        RequestContextHolder.resetRequestAttributes();
+    }
+
+    @Test
+    public void expandsLikeLinkTo() {
+        request("");
+        assertEquals(linkTo(methodOn(UserController.class).getUserLinks(42)).withSelfRel(),
+                SELF.expand(LinkTemplate.baseUri(UserController.class), 42L));
+        assertEquals("http://localhost/v2/user/",
+                LinkTemplate.to(methodOn(UserController.class).updateUser(null), "update")
+                        .expand(LinkTemplate.baseUri(UserController.class)).getHref());
+    }
+
+    @Test
+    public void honoursContextPathAndForwardedHeaders() {
+        MockHttpServletRequest request = request("/app");
+        request.addHeader("X-Forwarded-Host", "example.com:9000");
+        request.addHeader("X-Forwarded-Proto", "https");
+        assertEquals("https://example.com:9000/app/v2/user/7",
+                SELF.expand(LinkTemplate.baseUri(UserController.class), 7L).getHref());
+    }
+
+    @Test
+    public void encodesTextVariables() {
+        request("");
+        assertEquals("http://localhost/v2/user/a%20b",
+                SELF.expand(LinkTemplate.baseUri(UserController.class), "a b").getHref());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsMissingVariables() {
+        SELF.expand("http://localhost");
+    }
+
+    private static MockHttpServletRequest request(String contextPath) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", contextPath + "/v2/user/1");
+        request.setContextPath(contextPath);
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(request));
+        return request;
+    }
+}
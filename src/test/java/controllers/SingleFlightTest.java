@@ -0,0 +1,117 @@
+package controllers;
+
+import metrics.CoalescingStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleFlightTest {
+
+    private CoalescingStats stats;
+    private SingleFlight<String, Integer> flights;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() {
+        stats = new CoalescingStats();
+        flights = new SingleFlight<>(stats);
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneComputation() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        Future<Integer> leader = executor.submit(() -> flights.execute("all", 1, () -> {
+            computations.incrementAndGet();
+            started.countDown();
+            await(release);
+            return 42;
+        }));
+        started.await();
+        Future<Integer> follower = executor.submit(() -> flights.execute("all", 1, computations::incrementAndGet));
+        awaitCoalesced(1);
+        release.countDown();
+        assertEquals(42, (int) leader.get(5, TimeUnit.SECONDS));
+        assertEquals(42, (int) follower.get(5, TimeUnit.SECONDS));
+        assertEquals(1, computations.get());
+        assertEquals(1L, stats.snapshot().get("executed"));
+        assertEquals(0, flights.inFlight());
+    }
+
+    @Test
+    public void completedResultsAreNotKept() {
+        assertEquals(1, (int) flights.execute("all", 1, () -> 1));
+        assertEquals(2, (int) flights.execute("all", 1, () -> 2));
+        assertEquals(2L, stats.snapshot().get("executed"));
+        assertEquals(0L, stats.snapshot().get("coalesced"));
+    }
+
+    @Test
+    public void newerVersionDoesNotJoinAnOlderFlight() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Integer> old = executor.submit(() -> flights.execute("all", 1, () -> {
+            started.countDown();
+            await(release);
+            return 1;
+        }));
+        started.await();
+        assertEquals(2, (int) flights.execute("all", 2, () -> 2));
+        release.countDown();
+        assertEquals(1, (int) old.get(5, TimeUnit.SECONDS));
+        assertEquals(2L, stats.snapshot().get("executed"));
+        assertEquals(0L, stats.snapshot().get("coalesced"));
+    }
+
+    @Test
+    public void waitersSeeTheFailure() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Future<Integer> leader = executor.submit(() -> flights.execute("all", 1, () -> {
+            started.countDown();
+            await(release);
+            throw new IllegalStateException("boom");
+        }));
+        started.await();
+        Future<Integer> follower = executor.submit(() -> flights.execute("all", 1, () -> 0));
+        awaitCoalesced(1);
+        release.countDown();
+        for (Future<Integer> future : new Future[]{leader, follower}) {
+            try {
+                future.get(5, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertEquals("boom", e.getCause().getMessage());
+            }
+        }
+        assertEquals(0, flights.inFlight());
+    }
+
+    private void awaitCoalesced(long count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((long) stats.snapshot().get("coalesced") < count) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(1);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package controllers;
+
+import entities.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import services.UserService;
+
+import static org.junit.Assert.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+public class UserChangeControllerTest {
+
+    private UserService userService;
+    private UserChangeController controller;
+    private MockMvc mockMvc;
+
+    @Before
+    public void setUp() {
+        userService = new UserService();
+        controller = new UserChangeController();
+        ReflectionTestUtils.setField(controller, "userService", userService);
+        ReflectionTestUtils.setField(controller, "maxSubscribers", 1);
+        ReflectionTestUtils.setField(controller, "timeoutMillis", 0L);
+        controller.start();
+        mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+    }
+
+    @After
+    public void tearDown() {
+        controller.stop();
+    }
+
+    @Test
+    public void resumesAndFollows() throws Exception {
+        MvcResult result = mockMvc.perform(get("/user/changes").param("after", "4"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        String body = await(result, "id:6\n");
+        assertFalse(body.contains("id:4\n"));
+        assertTrue(body.contains("id:5\nevent:create\ndata:{\"version\":5,\"type\":\"create\",\"id\":5,"));
+
+        userService.updateUser(new User(2, "Volodya", "Manager", true));
+        body = await(result, "id:7\n");
+        assertTrue(body.contains("id:7\nevent:update\ndata:{\"version\":7,\"type\":\"update\",\"id\":2,"));
+    }
+
+    @Test
+    public void resetsAnUnknownPosition() throws Exception {
+        MvcResult result = mockMvc.perform(get("/user/changes").header("Last-Event-ID", "100"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        assertEquals("event:reset\ndata:{\"version\":6}\n\n", await(result, "\n\n"));
+        mockMvc.perform(get("/user/changes").header("Last-Event-ID", "x"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void rejectsSubscribersBeyondTheLimit() throws Exception {
+        mockMvc.perform(get("/user/changes")).andExpect(request().asyncStarted());
+        mockMvc.perform(get("/user/changes")).andExpect(status().isServiceUnavailable());
+    }
+
+    private static String await(MvcResult result, String text) throws Exception {
+        for (int i = 0; i < 500; i++) {
+            String body = result.getResponse().getContentAsString();
+            if (body.contains(text)) {
+                return body;
+            }
+            Thread.sleep(10);
+        }
+        fail("No " + text + " in " + result.getResponse().getContentAsString());
+        return null;
+    }
+}
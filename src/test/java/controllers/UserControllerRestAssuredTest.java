@@ -23,7 +23,7 @@ import services.UserService;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.NoSuchElementException;
+import java.util.Optional;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.assertEquals;
@@ -76,7 +76,7 @@ public class UserControllerRestAssuredTest {
 
     @Test
     public void getUser() throws Exception {
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(0));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(0)));
         RestAssured.when().get("/user/{id}", "1").then()
                 .statusCode(HttpStatus.OK.value())
                 .contentType(MediaType.APPLICATION_JSON_UTF8.toString())
@@ -90,11 +90,11 @@ public class UserControllerRestAssuredTest {
 
     @Test
     public void getNonExistentUser() {
-        BDDMockito.given(userService.getUserWithId(1)).willThrow(new NoSuchElementException("No value present"));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.empty());
         RestAssured.when().get("/user/{id}", "1").then()
-                .statusCode(HttpStatus.INTERNAL_SERVER_ERROR.value())
+                .statusCode(HttpStatus.NOT_FOUND.value())
                 .contentType(MediaType.APPLICATION_JSON_UTF8.toString())
-                .body("status", equalTo("INTERNAL_SERVER_ERROR"))
+                .body("status", equalTo("NOT_FOUND"))
                 .body("message", equalTo("No value present"));
     }
 
@@ -102,6 +102,7 @@ public class UserControllerRestAssuredTest {
     public void updateUser() throws Exception {
         User testUser = userList.get(0);
         testUser.setRole("Developer");
+        BDDMockito.given(userService.updateUser(BDDMockito.any(User.class))).willReturn(testUser);
         RestAssured.given()
                 .contentType(MediaType.APPLICATION_JSON_UTF8.toString())
                 .body(new ObjectMapper().writeValueAsString(testUser))
@@ -120,7 +121,7 @@ public class UserControllerRestAssuredTest {
 
     @Test
     public void getCachedUser() throws Exception {
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(1));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(1)));
         Response response = RestAssured.get("/user/firstUser");
         response.then()
                 .statusCode(HttpStatus.OK.value())
@@ -160,7 +161,7 @@ public class UserControllerRestAssuredTest {
 
     @Test
     public void getUserOrg() throws Exception {
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(0));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(0)));
         Response response = RestAssured.get("/user/{value}/org", 1);
         response.then()
                 .statusCode(HttpStatus.OK.value())
@@ -175,7 +176,7 @@ public class UserControllerRestAssuredTest {
         linkedUser.add(linkTo(methodOn(UserController.class).getUserOrg(1)).withRel("Get users organization"));
         linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Update with PUT method"));
         linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Delete with DELETE method"));
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(1));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(1)));
         Response response = RestAssured.get("/v2/user/{value}", 1);
         response.then()
                 .statusCode(HttpStatus.OK.value())
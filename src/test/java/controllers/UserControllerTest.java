@@ -2,7 +2,12 @@ package controllers;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import entities.User;
+import entities.UserOperation;
+import entities.UserOperationResult;
 import entities.UserWithLinks;
+import exceptions.VersionMismatchException;
+import exceptions.advice.ControllerExceptionHandler;
+import org.junit.Assert;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -12,13 +17,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.setup.MockMvcBuilders;
 import services.UserService;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.linkTo;
 import static org.springframework.hateoas.mvc.ControllerLinkBuilder.methodOn;
@@ -63,25 +73,193 @@ public class UserControllerTest {
                 .andExpect(content().string(new ObjectMapper().writeValueAsString(userList)));
     }
 
+    @Test
+    public void findAllFiltered() throws Exception {
+        List<User> chiefs = userList.subList(0, 2);
+        BDDMockito.given(userService.getUsers("Chief", true)).willReturn(chiefs);
+        mockMvc.perform(get("/user/all").param("role", "Chief").param("active", "true"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(chiefs)));
+    }
+
+    @Test
+    public void findPage() throws Exception {
+        BDDMockito.given(userService.getUserPage(2, 2, null, null)).willReturn(userList.subList(2, 4));
+        mockMvc.perform(get("/user/all").param("limit", "2").param("after", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", "<http://localhost/user/all?limit=2&after=4>; rel=\"next\""))
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(userList.subList(2, 4))));
+    }
+
+    @Test
+    public void findLastPage() throws Exception {
+        BDDMockito.given(userService.getUserPage(5, 2, null, null)).willReturn(userList.subList(5, 6));
+        mockMvc.perform(get("/user/all").param("limit", "2").param("after", "5"))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"));
+    }
+
+    @Test
+    public void findPageWithInvalidLimit() throws Exception {
+        mockMvc.perform(get("/user/all").param("limit", "0"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void searchUsers() throws Exception {
+        BDDMockito.given(userService.searchUsers("vo", false, 20)).willReturn(userList.subList(1, 2));
+        BDDMockito.given(userService.searchUsers("ole", true, 5)).willReturn(userList.subList(3, 4));
+        mockMvc.perform(get("/user/search").param("q", "vo"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(userList.subList(1, 2))));
+        mockMvc.perform(get("/user/search").param("q", "ole").param("match", "substring").param("limit", "5"))
+                .andExpect(status().isOk())
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(userList.subList(3, 4))));
+        mockMvc.perform(get("/user/search").param("q", "ol").param("match", "substring"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/user/search").param("q", "ol").param("match", "regex"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void findPageV2FollowsCursor() throws Exception {
+        User last = userList.get(1);
+        String cursor = UserCursor.encode(last.getUserName(), last.getUserId());
+        BDDMockito.given(userService.getUserPageV2(null, Long.MIN_VALUE, 2, null, null)).willReturn(userList.subList(0, 2));
+        BDDMockito.given(userService.getUserPageV2("Volodya", 2, 2, null, null)).willReturn(userList.subList(2, 3));
+        mockMvc.perform(get("/v2/user/all").param("limit", "2"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Link", "<http://localhost/v2/user/all?limit=2&after=" + cursor + ">; rel=\"next\""));
+        mockMvc.perform(get("/v2/user/all").param("limit", "2").param("after", cursor))
+                .andExpect(status().isOk())
+                .andExpect(header().doesNotExist("Link"))
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(userList.subList(2, 3))));
+    }
+
+    @Test
+    public void streamAll() throws Exception {
+        BDDMockito.willAnswer(invocation -> {
+            Consumer<User> action = invocation.getArgument(2);
+            userList.subList(0, 2).forEach(action);
+            return null;
+        }).given(userService).forEachUser(BDDMockito.isNull(), BDDMockito.isNull(), BDDMockito.any());
+        ObjectMapper mapper = new ObjectMapper();
+        mockMvc.perform(get("/user/all").accept(UserController.APPLICATION_NDJSON_VALUE))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(UserController.APPLICATION_NDJSON_VALUE + ";charset=UTF-8"))
+                .andExpect(content().string(mapper.writeValueAsString(userList.get(0)) + "\n"
+                        + mapper.writeValueAsString(userList.get(1)) + "\n"));
+    }
+
     @Test
     public void getOneUser() throws Exception {
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(1));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(1)));
         mockMvc.perform(get("/user/{id}", "1"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
                 .andExpect(content().string(new ObjectMapper().writeValueAsString(userList.get(1))));
     }
 
+    @Test
+    public void getMissingUser() throws Exception {
+        BDDMockito.given(userService.findUser(42)).willReturn(Optional.empty());
+        mockMvc.perform(get("/user/{id}", "42"))
+                .andExpect(status().isNotFound())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(jsonPath("$.status").value("NOT_FOUND"))
+                .andExpect(jsonPath("$.message").value("No value present"));
+        mockMvc.perform(get("/v2/user/{id}", "42"))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void updateMissingUser() throws Exception {
+        User user = new User(42, "Nobody", "None", false);
+        mockMvc.perform(put("/v2/user/").contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
+                .andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void getOneUserFromCachedJson() throws Exception {
+        MockMvc converterMockMvc = MockMvcBuilders.standaloneSetup(userController)
+                .setMessageConverters(new UserJsonHttpMessageConverter(new ObjectMapper()),
+                        new MappingJackson2HttpMessageConverter()).build();
+        User user = new User(2, "Volodya", "Chief", true, 3);
+        BDDMockito.given(userService.findUser(2)).willReturn(Optional.of(user));
+        String json = new ObjectMapper().writeValueAsString(user);
+        converterMockMvc.perform(get("/user/{id}", "2"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(header().longValue("Content-Length", json.length()))
+                .andExpect(content().string(json));
+        Assert.assertArrayEquals(json.getBytes(StandardCharsets.UTF_8), user.getJson());
+
+        user.setJson("{\"cached\":true}".getBytes(StandardCharsets.UTF_8));
+        converterMockMvc.perform(get("/user/{id}", "2"))
+                .andExpect(content().string("{\"cached\":true}"));
+        user.setRole("Manager");
+        converterMockMvc.perform(get("/user/{id}", "2"))
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(user)));
+    }
+
+    @Test
+    public void getOneUserWithETag() throws Exception {
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(new User(1, "Vitalii", "Chief", true, 7)));
+        mockMvc.perform(get("/user/{id}", "1"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", "\"1.7\""));
+        mockMvc.perform(get("/user/{id}", "1").header("If-None-Match", "\"1.7\""))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        mockMvc.perform(get("/user/{id}", "1").header("If-None-Match", "\"1.6\""))
+                .andExpect(status().isOk());
+    }
+
+    @Test
+    public void notModifiedList() throws Exception {
+        BDDMockito.given(userService.getVersion()).willReturn(42L);
+        mockMvc.perform(get("/v2/user/all").header("If-None-Match", "\"42\""))
+                .andExpect(status().isNotModified());
+        BDDMockito.verify(userService, BDDMockito.never()).getAllUsersV2();
+    }
+
+    @Test
+    public void updateUserIfMatch() throws Exception {
+        User user = new User(3, "Petro", "Capitan", false);
+        BDDMockito.given(userService.updateUser(BDDMockito.any(User.class), BDDMockito.eq(5L))).willReturn(user);
+        mockMvc.perform(put("/v2/user/").header("If-Match", "\"3.5\"")
+                .contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
+                .andExpect(status().isNoContent());
+        BDDMockito.verify(userService).updateUser(BDDMockito.any(User.class), BDDMockito.eq(5L));
+    }
+
+    @Test
+    public void updateUserIfMatchFails() throws Exception {
+        MockMvc adviceMockMvc = MockMvcBuilders.standaloneSetup(userController)
+                .setControllerAdvice(new ControllerExceptionHandler()).build();
+        User user = new User(3, "Petro", "Capitan", false);
+        BDDMockito.given(userService.updateUser(BDDMockito.any(User.class), BDDMockito.eq(4L)))
+                .willThrow(new VersionMismatchException("User 3 is at version 5"));
+        adviceMockMvc.perform(put("/v2/user/").header("If-Match", "\"3.4\"")
+                .contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
+                .andExpect(status().isPreconditionFailed());
+        adviceMockMvc.perform(put("/v2/user/").header("If-Match", "\"2.5\"")
+                .contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
+                .andExpect(status().isPreconditionFailed());
+    }
+
     @Test
     public void testUpdateUser() throws Exception {
         User user = new User(3, "Petro", "Capitan", false);
+        BDDMockito.given(userService.updateUser(BDDMockito.any(User.class))).willReturn(user);
         mockMvc.perform(put("/v2/user/").contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
                 .andExpect(status().isNoContent());
     }
 
     @Test
     public void cachedUser() throws Exception {
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(3));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(3)));
         mockMvc.perform(get("/user/firstUser"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
@@ -92,6 +270,7 @@ public class UserControllerTest {
     @Test
     public void crearCache() throws Exception {
         User user = new User(3, "Petro", "Capitan", false);
+        BDDMockito.given(userService.updateUser(BDDMockito.any(User.class))).willReturn(user);
         mockMvc.perform(put("/user/firstUser").contentType(MediaType.APPLICATION_JSON_UTF8).content(new ObjectMapper().writeValueAsString(user)))
                 .andExpect(status().isNoContent());
     }
@@ -105,9 +284,19 @@ public class UserControllerTest {
                 .andExpect(content().string(new ObjectMapper().writeValueAsString(userList)));
     }
 
+    @Test
+    public void getAllUsersV2Filtered() throws Exception {
+        List<User> inactive = userList.subList(2, 4);
+        BDDMockito.given(userService.getUsersV2(null, false)).willReturn(inactive);
+        mockMvc.perform(get("/v2/user/all").param("active", "false"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(inactive)));
+    }
+
     @Test
     public void getUserOrg() throws Exception{
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(2));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(2)));
         mockMvc.perform(get("/user/{value}/org", "1"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
@@ -127,6 +316,43 @@ public class UserControllerTest {
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void applyBatch() throws Exception {
+        List<UserOperation> operations = Arrays.asList(
+                new UserOperation(UserOperation.Type.CREATE, new User(0, "Valera", "Capitan", false)),
+                new UserOperation(UserOperation.Type.UPDATE, new User(42, "Nobody", "Chief", true)));
+        List<UserOperationResult> results = Arrays.asList(
+                new UserOperationResult(0, 7, 201, null),
+                new UserOperationResult(1, 42, 404, "No value present"));
+        BDDMockito.given(userService.applyBatch(BDDMockito.anyList())).willReturn(results);
+        mockMvc.perform(post("/v2/user/batch").contentType(MediaType.APPLICATION_JSON_UTF8)
+                .content(new ObjectMapper().writeValueAsString(operations)))
+                .andExpect(status().isOk())
+                .andExpect(content().string(new ObjectMapper().writeValueAsString(results)));
+    }
+
+    @Test
+    public void applyBatchStream() throws Exception {
+        BDDMockito.given(userService.applyBatch(BDDMockito.anyList())).willAnswer(invocation -> {
+            List<UserOperation> operations = invocation.getArgument(0);
+            List<UserOperationResult> results = new ArrayList<>();
+            for (int i = 0; i < operations.size(); i++) {
+                results.add(new UserOperationResult(i, operations.get(i).getId(), 204, null));
+            }
+            return results;
+        });
+        StringBuilder body = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 2500; i++) {
+            body.append("{\"op\":\"delete\",\"id\":").append(i).append("}\n");
+            expected.append("{\"index\":").append(i).append(",\"id\":").append(i).append(",\"status\":204}\n");
+        }
+        mockMvc.perform(post("/v2/user/batch").contentType(UserController.APPLICATION_NDJSON_VALUE).content(body.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().string(expected.toString()));
+        BDDMockito.verify(userService, BDDMockito.times(3)).applyBatch(BDDMockito.anyList());
+    }
+
     @Test
     public void getUserLinks() throws Exception {
         UserWithLinks linkedUser = new UserWithLinks(userList.get(1));
@@ -134,7 +360,7 @@ public class UserControllerTest {
         linkedUser.add(linkTo(methodOn(UserController.class).getUserOrg(1)).withRel("Get users organization"));
         linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Update with PUT method"));
         linkedUser.add(linkTo(methodOn(UserController.class).updateUser(null)).withRel("Delete with DELETE method"));
-        BDDMockito.given(userService.getUserWithId(1)).willReturn(userList.get(1));
+        BDDMockito.given(userService.findUser(1)).willReturn(Optional.of(userList.get(1)));
         mockMvc.perform(get("/v2/user/{value}", "1"))
                 .andExpect(status().isOk())
                 .andExpect(content().contentType(MediaType.APPLICATION_JSON_UTF8))
@@ -1,6 +1,8 @@
 package controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import exceptions.advice.ControllerExceptionHandler;
+import exceptions.advice.ErrorResponses;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import services.UserService;
@@ -17,6 +19,16 @@ public class UserControllerUnitTestConfig {
         return new UserService();
     }
 
+    @Bean
+    public ObjectMapper objectMapper() {
+        return new ObjectMapper();
+    }
+
+    @Bean
+    public ErrorResponses errorResponses(ObjectMapper objectMapper) {
+        return new ErrorResponses(objectMapper, false);
+    }
+
     @Bean
     public ControllerExceptionHandler controllerExceptionHandler() {
         return new ControllerExceptionHandler();
@@ -0,0 +1,129 @@
+package metrics;
+
+import controllers.GreetingController;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.method.HandlerMethod;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class RequestMetricsFilterTest {
+
+    private Metrics metrics;
+    private RequestMetricsFilter filter;
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+    private HandlerMethod handler;
+
+    @Before
+    public void setUp() throws Exception {
+        metrics = new Metrics();
+        filter = new RequestMetricsFilter(metrics);
+        request = new MockHttpServletRequest("GET", "/greeting");
+        response = new MockHttpServletResponse();
+        handler = new HandlerMethod(new GreetingController(), "greeting", String.class);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void recordsLatencyAndStatusPerHandler() throws Exception {
+        RequestMetricsFilter.HandlerCapture interceptor = filter.handlerInterceptor();
+        filter.doFilter(request, response, (req, res) -> interceptor.preHandle(request, response, handler));
+        filter.doFilter(request, response, (req, res) -> {
+            interceptor.preHandle(request, response, handler);
+            response.setStatus(412);
+        });
+        try {
+            filter.doFilter(request, new MockHttpServletResponse(), (req, res) -> {
+                interceptor.preHandle(request, response, handler);
+                throw new ServletException("boom");
+            });
+            fail();
+        } catch (ServletException expected) {
+        }
+        filter.doFilter(new MockHttpServletRequest("GET", "/nowhere"), response, (req, res) -> response.setStatus(404));
+
+        Map<String, Object> handlers = (Map<String, Object>) metrics.snapshot().get("handlers");
+        Map<String, Object> greeting = (Map<String, Object>) handlers.get("GreetingController.greeting");
+        assertEquals(3L, greeting.get("count"));
+        assertEquals(2L, greeting.get("errors"));
+        Map<String, Long> statuses = (Map<String, Long>) greeting.get("statuses");
+        assertEquals(Long.valueOf(1), statuses.get("200"));
+        assertEquals(Long.valueOf(1), statuses.get("412"));
+        assertEquals(Long.valueOf(1), statuses.get("500"));
+        assertEquals(1L, ((Map<String, Object>) handlers.get(Metrics.UNMATCHED)).get("count"));
+    }
+
+    @Test
+    public void recordingDoesNotAllocate() throws Exception {
+        RequestMetricsFilter.HandlerCapture interceptor = filter.handlerInterceptor();
+        FilterChain chain = (req, res) -> interceptor.preHandle(request, response, handler);
+        for (int i = 0; i < 20000; i++) {
+            filter.doFilter(request, response, chain);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = Long.MAX_VALUE;
+        // the least of a few rounds: a late recompilation may allocate once, recording would in every round
+        for (int round = 0; round < 5 && allocated >= 1024; round++) {
+            long before = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 100000; i++) {
+                filter.doFilter(request, response, chain);
+            }
+            allocated = Math.min(allocated, threads.getThreadAllocatedBytes(thread) - before);
+        }
+        assertTrue("allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void recordingOnAThreadPerRequestDoesNotAllocate() throws Exception {
+        RequestMetricsFilter.HandlerCapture interceptor = filter.handlerInterceptor();
+        FilterChain chain = (req, res) -> interceptor.preHandle(request, response, handler);
+        for (int i = 0; i < 20000; i++) {
+            filter.doFilter(request, response, chain);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long[] allocated = new long[1];
+        for (int i = 0; i < 1000; i++) {
+            // like a virtual thread: a new thread per request
+            Thread thread = new Thread(() -> {
+                long id = Thread.currentThread().getId();
+                long start = threads.getThreadAllocatedBytes(id);
+                long before = threads.getThreadAllocatedBytes(id);
+                try {
+                    filter.doFilter(request, response, chain);
+                } catch (Exception e) {
+                    throw new AssertionError(e);
+                }
+                long after = threads.getThreadAllocatedBytes(id);
+                // less what reading the counter allocates itself
+                allocated[0] += (after - before) - (before - start);
+            });
+            thread.start();
+            thread.join();
+        }
+        assertTrue("allocated " + allocated[0] + " bytes", allocated[0] < 1024);
+        Map<String, Object> greeting = (Map<String, Object>) ((Map<String, Object>) metrics.snapshot().get("handlers"))
+                .get("GreetingController.greeting");
+        assertEquals(21000L, greeting.get("count"));
+    }
+
+    @Test
+    public void storeOperationsAreTimed() {
+        LatencyHistogram findById = metrics.store("findById");
+        assertSame(findById, metrics.store("findById"));
+        findById.record(1500);
+        findById.record(Long.MAX_VALUE);
+        Map<String, Object> snapshot = findById.snapshot();
+        assertEquals(2L, snapshot.get("count"));
+        assertEquals(60000000.0, (Double) snapshot.get("max"), 600000.0);
+    }
+}
@@ -0,0 +1,147 @@
+package replication;
+
+import entities.User;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import services.UserService;
+
+import javax.servlet.FilterChain;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.net.BindException;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class ReplicationTest {
+
+    private static final FilterChain OK = (req, res) -> ((HttpServletResponse) res).setStatus(204);
+
+    private UserService primary;
+    private UserService replica;
+    private ReplicationServer server;
+    private ReplicaClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        primary = new UserService();
+        replica = new UserService();
+        replica.createUser(new User(0, "ReplicaOnly", "Ghost", true));
+        server = new ReplicationServer(primary, new InetSocketAddress("127.0.0.1", 0), 20);
+        client = new ReplicaClient(replica, new InetSocketAddress("127.0.0.1", server.port()), 20);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    public void replicaFollowsThePrimary() throws Exception {
+        assertTrue(client.awaitVersion(primary.getVersion(), 5000));
+        assertEquals(ids(primary), ids(replica));
+
+        primary.createUser(new User(0, "Valera", "Capitan", false));
+        primary.updateUser(new User(1, "Renamed", "Manager", false));
+        primary.deleteUser(2);
+        assertTrue(client.awaitVersion(primary.getVersion(), 5000));
+
+        assertEquals(primary.getVersion(), replica.getVersion());
+        assertEquals(ids(primary), ids(replica));
+        assertEquals("Renamed", replica.getUserWithId(1).getUserName());
+        assertEquals(primary.getUserWithId(1).getVersion(), replica.getUserWithId(1).getVersion());
+        assertFalse(replica.findUser(2).isPresent());
+        assertEquals(2, replica.getUsers("Manager", false).size());
+        assertEquals(primary.getVersion(), replica.getChangeLog().last());
+        awaitLag(0);
+        assertEquals(0, client.lagMillis());
+    }
+
+    @Test
+    public void replicaResynchronizesFromARestartedPrimary() throws Exception {
+        assertTrue(client.awaitVersion(primary.getVersion(), 5000));
+        int port = server.port();
+        server.close();
+        primary = new UserService();
+        primary.createUser(new User(0, "Fresh", "Primary", true));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        server = restart(port, deadline);
+
+        while (!ids(primary).equals(ids(replica))) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals("Fresh", replica.getUserWithId(7).getUserName());
+        assertEquals(2L, client.status().get("snapshots"));
+    }
+
+    @Test
+    public void readsWaitForTheirWrites() throws Exception {
+        ReplicationFilter primaryFilter = new ReplicationFilter(primary, null, null, 0);
+        MockHttpServletResponse written = new MockHttpServletResponse();
+        primary.createUser(new User(0, "Valera", "Capitan", false));
+        primaryFilter.doFilter(new MockHttpServletRequest("POST", "/v2/user/"), written, OK);
+        String token = written.getHeader(ReplicationFilter.VERSION_TOKEN);
+        assertEquals(Long.toString(primary.getVersion()), token);
+
+        ReplicationFilter replicaFilter = new ReplicationFilter(replica, client, null, 5000);
+        MockHttpServletRequest read = new MockHttpServletRequest("GET", "/user/7");
+        read.addHeader(ReplicationFilter.VERSION_TOKEN, token);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        replicaFilter.doFilter(read, response, (req, res) -> assertTrue(replica.findUser(7).isPresent()));
+        assertEquals(200, response.getStatus());
+
+        MockHttpServletRequest ahead = new MockHttpServletRequest("GET", "/user/7");
+        ahead.addHeader(ReplicationFilter.VERSION_TOKEN, Long.toString(primary.getVersion() + 1));
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        new ReplicationFilter(replica, client, null, 50).doFilter(ahead, refused, OK);
+        assertEquals(503, refused.getStatus());
+    }
+
+    @Test
+    public void replicasRedirectWrites() throws Exception {
+        MockHttpServletRequest write = new MockHttpServletRequest("PUT", "/v2/user/");
+        write.setQueryString("dryRun=true");
+        MockHttpServletResponse redirected = new MockHttpServletResponse();
+        new ReplicationFilter(replica, client, "http://primary:8080", 0).doFilter(write, redirected, OK);
+        assertEquals(307, redirected.getStatus());
+        assertEquals("http://primary:8080/v2/user/?dryRun=true", redirected.getHeader("Location"));
+
+        MockHttpServletResponse refused = new MockHttpServletResponse();
+        new ReplicationFilter(replica, client, null, 0).doFilter(write, refused, OK);
+        assertEquals(405, refused.getStatus());
+        assertEquals("GET, HEAD", refused.getHeader("Allow"));
+    }
+
+    private ReplicationServer restart(int port, long deadline) throws Exception {
+        while (true) {
+            try {
+                return new ReplicationServer(primary, new InetSocketAddress("127.0.0.1", port), 20);
+            } catch (BindException e) {
+                assertTrue(System.nanoTime() < deadline);
+                Thread.sleep(50);
+            }
+        }
+    }
+
+    private void awaitLag(long versions) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (client.lagVersions() != versions) {
+            assertTrue(System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+
+    private static List<String> ids(UserService userService) {
+        return userService.getAllUsersV2().stream()
+                .map(user -> user.getUserId() + ":" + user.getUserName() + ":" + user.getVersion())
+                .collect(Collectors.toList());
+    }
+}
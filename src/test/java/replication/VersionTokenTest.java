@@ -0,0 +1,71 @@
+package replication;
+
+import configs.ReplicationConfig;
+import configs.UserStoreConfig;
+import controllers.UserController;
+import entities.User;
+import entities.UserOperation;
+import exceptions.advice.ErrorResponses;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.context.junit4.SpringRunner;
+import services.UserService;
+
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The token on a mutation answered by the real controller, whose response is committed before the filter chain
+ * returns.
+ */
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = VersionTokenTest.PrimaryApplication.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {"replication.role=primary", "replication.port=0"})
+public class VersionTokenTest {
+
+    @Configuration
+    @EnableAutoConfiguration
+    @Import({ReplicationConfig.class, UserStoreConfig.class, UserService.class, UserController.class,
+            ErrorResponses.class})
+    static class PrimaryApplication {
+    }
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    @Autowired
+    private UserService userService;
+
+    @Test
+    public void mutationsCarryTheVersionAfterThem() {
+        ResponseEntity<Void> created = rest.postForEntity("/v2/user/", new User(0, "Valera", "Capitan", false), Void.class);
+        assertEquals(204, created.getStatusCodeValue());
+        assertEquals(Long.toString(userService.getVersion()),
+                created.getHeaders().getFirst(ReplicationFilter.VERSION_TOKEN));
+
+        ResponseEntity<String> batch = rest.postForEntity("/v2/user/batch", Collections.singletonList(
+                new UserOperation(UserOperation.Type.CREATE, new User(0, "Petro", "Developer", false))), String.class);
+        assertEquals(200, batch.getStatusCodeValue());
+        assertEquals(Long.toString(userService.getVersion()),
+                batch.getHeaders().getFirst(ReplicationFilter.VERSION_TOKEN));
+
+        HttpHeaders ndjson = new HttpHeaders();
+        ndjson.set(HttpHeaders.CONTENT_TYPE, "application/x-ndjson");
+        ResponseEntity<String> streamed = rest.postForEntity("/v2/user/batch", new HttpEntity<>(
+                "{\"op\":\"delete\",\"id\":7}\n{\"op\":\"delete\",\"id\":8}\n", ndjson), String.class);
+        assertEquals(200, streamed.getStatusCodeValue());
+        assertEquals(Long.toString(userService.getVersion()),
+                streamed.getHeaders().getFirst(ReplicationFilter.VERSION_TOKEN));
+    }
+}
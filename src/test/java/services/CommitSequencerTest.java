@@ -0,0 +1,127 @@
+package services;
+
+import entities.User;
+import entities.UserChange;
+import org.junit.Test;
+import services.store.UserJournal;
+import services.store.UserRepository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class CommitSequencerTest {
+
+    @Test
+    public void commitsInVersionOrder() {
+        List<Long> journaled = new ArrayList<>();
+        UserChangeLog changeLog = new UserChangeLog(16, 10);
+        CommitSequencer sequencer = new CommitSequencer(10, new RecordingJournal(journaled), changeLog);
+        long first = sequencer.next();
+        long second = sequencer.next();
+        long third = sequencer.next();
+        assertEquals(13, sequencer.assigned());
+
+        sequencer.commit(change(third));
+        sequencer.skip(second);
+        assertEquals(10, sequencer.committed());
+        assertTrue(journaled.isEmpty());
+
+        sequencer.commit(change(first));
+        assertEquals(13, sequencer.committed());
+        assertEquals(Arrays.asList(11L, 13L), journaled);
+        assertEquals(13, changeLog.last());
+        assertNull(changeLog.get(12));
+        sequencer.await(11, 13);
+    }
+
+    @Test
+    public void commitsPastAFailingJournal() {
+        UserJournal failing = new RecordingJournal(new ArrayList<>()) {
+            @Override
+            public void append(long version, long id, User user) {
+                throw new IllegalStateException("disk full");
+            }
+        };
+        CommitSequencer sequencer = new CommitSequencer(0, failing, new UserChangeLog(16, 0));
+        sequencer.commit(change(sequencer.next()));
+        assertEquals(1, sequencer.committed());
+        try {
+            sequencer.await(1, 1);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        sequencer.await(1, 1);
+
+        sequencer.commitAll(Arrays.asList(change(sequencer.next()), change(sequencer.next())));
+        assertEquals(3, sequencer.committed());
+        try {
+            sequencer.await(2, 3);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    public void failuresGoToTheOwnerOfTheVersion() throws Exception {
+        List<Long> journaled = new ArrayList<>();
+        CommitSequencer sequencer = new CommitSequencer(0, new RecordingJournal(journaled) {
+            @Override
+            public void append(long version, long id, User user) {
+                if (version == 2) {
+                    throw new IllegalStateException("disk full");
+                }
+                super.append(version, id, user);
+            }
+        }, new UserChangeLog(16, 0));
+        long first = sequencer.next();
+        long second = sequencer.next();
+        AtomicReference<Throwable> owner = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try {
+                sequencer.await(second, second);
+            } catch (Throwable e) {
+                owner.set(e);
+            }
+        });
+        waiter.start();
+        sequencer.commit(change(second));
+        // publishes both versions, the failing one included, and still returns normally to its own await
+        sequencer.commit(change(first));
+        sequencer.await(first, first);
+        waiter.join(5000);
+        assertFalse(waiter.isAlive());
+        assertTrue(owner.get() instanceof IllegalStateException);
+        assertEquals(Arrays.asList(1L), journaled);
+    }
+
+    private static UserChange change(long version) {
+        return new UserChange(version, UserChange.Type.UPDATE, 1, new User(1, "u", "r", true, version));
+    }
+
+    private static class RecordingJournal implements UserJournal {
+
+        private final List<Long> versions;
+
+        RecordingJournal(List<Long> versions) {
+            this.versions = versions;
+        }
+
+        @Override
+        public long recover(UserRepository repository) {
+            return 0;
+        }
+
+        @Override
+        public void append(long version, long id, User user) {
+            versions.add(version);
+        }
+
+        @Override
+        public void awaitDurable(long version) {
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package services;
+
+import entities.User;
+import entities.UserChange;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UserChangeLogTest {
+
+    @Test
+    public void holdsTheLatestChangesByVersion() {
+        UserChangeLog log = new UserChangeLog(4, 10);
+        assertEquals(10, log.last());
+        assertNull(log.get(11));
+        for (long version = 11; version <= 16; version++) {
+            log.publish(new UserChange(version, UserChange.Type.CREATE, version, new User(version, "u", "r", true)));
+        }
+        assertEquals(16, log.last());
+        assertEquals(13, log.first());
+        assertNull(log.get(12));
+        assertEquals(13, log.get(13).getId());
+        assertEquals(16, log.get(16).getVersion());
+        assertNull(log.get(17));
+    }
+
+    @Test
+    public void startsOverAfterAGap() {
+        UserChangeLog log = new UserChangeLog(8, 0);
+        log.publish(new UserChange(1, UserChange.Type.DELETE, 1, null));
+        log.publish(new UserChange(5, UserChange.Type.DELETE, 2, null));
+        assertEquals(5, log.first());
+        assertEquals(5, log.last());
+    }
+
+    @Test
+    public void notifiesTheListener() {
+        UserChangeLog log = new UserChangeLog(8, 0);
+        int[] calls = new int[2];
+        Runnable second = () -> calls[1]++;
+        log.addListener(() -> calls[0]++);
+        log.addListener(second);
+        log.publish(new UserChange(1, UserChange.Type.DELETE, 1, null));
+        log.removeListener(second);
+        log.publish(new UserChange(2, UserChange.Type.DELETE, 1, null));
+        assertEquals(2, calls[0]);
+        assertEquals(1, calls[1]);
+    }
+}
@@ -0,0 +1,81 @@
+package services;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import entities.User;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.test.context.junit4.SpringRunner;
+
+
+import static org.junit.Assert.*;
+
+@RunWith(SpringRunner.class)
+@SpringBootTest(classes = UserServiceCacheTest.CacheTestConfig.class)
+public class UserServiceCacheTest {
+
+    @Configuration
+    @EnableCaching
+    static class CacheTestConfig {
+        @Bean
+        public CacheManager cacheManager() {
+            CaffeineCacheManager cacheManager = new CaffeineCacheManager(UserService.USERS_CACHE);
+            cacheManager.setCaffeine(Caffeine.newBuilder().maximumSize(100).recordStats());
+            return cacheManager;
+        }
+
+        @Bean
+        public UserService userService() {
+            return new UserService();
+        }
+    }
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private CacheManager cacheManager;
+
+    @Before
+    public void setUp() {
+        cacheManager.getCache(UserService.USERS_CACHE).clear();
+    }
+
+    @Test
+    public void servesRepeatedReadsFromCache() {
+        User user = userService.findUser(4).get();
+        assertSame(user, cacheManager.getCache(UserService.USERS_CACHE).get(4L, User.class));
+        assertSame(user, userService.findUser(4).get());
+    }
+
+    @Test
+    public void updateEvicts() {
+        userService.findUser(3);
+        userService.updateUser(new User(3, "Petro", "Capitan", false));
+        assertNull(cacheManager.getCache(UserService.USERS_CACHE).get(3L));
+        assertEquals("Capitan", userService.findUser(3).get().getRole());
+    }
+
+    @Test
+    public void deleteEvicts() {
+        User created = userService.createUser(new User(0, "Valera", "Capitan", false));
+        assertSame(created, cacheManager.getCache(UserService.USERS_CACHE).get(created.getUserId(), User.class));
+        userService.deleteUser(created.getUserId());
+        assertNull(cacheManager.getCache(UserService.USERS_CACHE).get(created.getUserId()));
+    }
+
+    @Test
+    public void missingUserIsCachedUntilCreated() {
+        assertFalse(userService.findUser(404).isPresent());
+        assertNull(cacheManager.getCache(UserService.USERS_CACHE).get(404L).get());
+        User created = userService.createUser(new User(404, "Valera", "Capitan", false));
+        assertSame(created, userService.findUser(404).get());
+    }
+}
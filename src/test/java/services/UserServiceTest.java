@@ -0,0 +1,466 @@
+package services;
+
+import entities.User;
+import entities.UserChange;
+import entities.UserOperation;
+import entities.UserOperationResult;
+import exceptions.UserTooLargeException;
+import exceptions.VersionMismatchException;
+import org.junit.Before;
+import org.junit.Test;
+import services.store.HashUserRepository;
+import services.store.UserColumns;
+import services.store.UserJournal;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class UserServiceTest {
+
+    private UserService userService;
+
+    @Before
+    public void setUp() {
+        userService = new UserService();
+    }
+
+    @Test
+    public void seedsDefaultUsers() {
+        assertEquals(6, userService.getAllUsers().size());
+        assertEquals("Vitalii", userService.getUserWithId(1).getUserName());
+        assertEquals("Adam", userService.getUserWithId(6).getUserName());
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void getMissingUser() {
+        userService.getUserWithId(42);
+    }
+
+    @Test
+    public void createAssignsNextId() {
+        User created = userService.createUser(new User(0, "Valera", "Capitan", false));
+        assertEquals(7, created.getUserId());
+        assertSame(created, userService.getUserWithId(7));
+    }
+
+    @Test
+    public void createKeepsExplicitId() {
+        userService.createUser(new User(100, "Valera", "Capitan", false));
+        assertEquals("Valera", userService.getUserWithId(100).getUserName());
+        assertEquals(101, userService.createUser(new User()).getUserId());
+    }
+
+    @Test
+    public void updateReplacesRecord() {
+        User before = userService.getUserWithId(3);
+        userService.updateUser(new User(3, "Petro", "Capitan", true));
+        User after = userService.getUserWithId(3);
+        assertEquals("Developer", before.getRole());
+        assertEquals("Capitan", after.getRole());
+        assertTrue(after.isActive());
+    }
+
+    @Test
+    public void findMissingUser() {
+        assertFalse(userService.findUser(42).isPresent());
+        assertEquals("Oleg", userService.findUser(4).get().getUserName());
+    }
+
+    @Test
+    public void updateMissingUser() {
+        assertNull(userService.updateUser(new User(42, "Nobody", "None", false)));
+        assertFalse(userService.findUser(42).isPresent());
+    }
+
+    @Test
+    public void publishesChanges() {
+        UserChangeLog log = userService.getChangeLog();
+        long start = log.last();
+        User created = userService.createUser(new User(0, "Valera", "Capitan", false));
+        userService.updateUser(new User(created.getUserId(), "Valera", "Chief", true));
+        userService.updateUser(new User(42, "Nobody", "None", false));
+        userService.deleteUser(created.getUserId());
+        assertEquals(start + 3, log.last());
+        assertEquals(userService.getVersion(), log.last());
+        assertEquals(UserChange.Type.CREATE, log.get(start + 1).getType());
+        assertSame(created, log.get(start + 1).getUser());
+        assertEquals("Chief", log.get(start + 2).getUser().getRole());
+        assertEquals(UserChange.Type.DELETE, log.get(start + 3).getType());
+        assertEquals(created.getUserId(), log.get(start + 3).getId());
+        assertNull(log.get(start + 3).getUser());
+    }
+
+    @Test
+    public void deleteRemovesUser() {
+        userService.deleteUser(2);
+        assertEquals(5, userService.getAllUsers().size());
+        try {
+            userService.getUserWithId(2);
+            fail();
+        } catch (NoSuchElementException expected) {
+        }
+    }
+
+    @Test
+    public void filterByRoleAndActive() {
+        assertEquals(2, userService.getUsers("Chief", null).size());
+        assertEquals(4, userService.getUsers(null, true).size());
+        assertEquals(0, userService.getUsers("Chief", false).size());
+        assertEquals(0, userService.getUsers("Astronaut", null).size());
+        assertEquals(6, userService.getUsers(null, null).size());
+        List<User> homeless = userService.getUsersV2("Homeless", true);
+        assertEquals("Adam", homeless.get(0).getUserName());
+        assertEquals("Nazar", homeless.get(1).getUserName());
+    }
+
+    @Test
+    public void filtersFollowMutations() {
+        userService.updateUser(new User(1, "Vitalii", "Developer", false));
+        userService.deleteUser(2);
+        userService.createUser(new User(0, "Valera", "Developer", false));
+        assertEquals(0, userService.getUsers("Chief", null).size());
+        assertEquals(3, userService.getUsers("Developer", false).size());
+        assertEquals(2, userService.getUsers(null, true).size());
+    }
+
+    @Test
+    public void pagesById() {
+        List<User> first = userService.getUserPage(0, 4, null, null);
+        assertEquals(4, first.size());
+        assertEquals(1, first.get(0).getUserId());
+        List<User> second = userService.getUserPage(first.get(3).getUserId(), 4, null, null);
+        assertEquals(2, second.size());
+        assertEquals(6, second.get(1).getUserId());
+        assertEquals(2, userService.getUserPage(0, 4, "Homeless", null).size());
+    }
+
+    @Test
+    public void pagesByName() {
+        List<User> first = userService.getUserPageV2(null, Long.MIN_VALUE, 3, null, null);
+        assertEquals("Adam", first.get(0).getUserName());
+        assertEquals("Oleg", first.get(2).getUserName());
+        User last = first.get(2);
+        List<User> second = userService.getUserPageV2(last.getUserName(), last.getUserId(), 3, null, null);
+        assertEquals("Petro", second.get(0).getUserName());
+        assertEquals("Volodya", second.get(2).getUserName());
+    }
+
+    @Test
+    public void streamsInNameOrder() {
+        StringBuilder names = new StringBuilder();
+        userService.forEachUserV2(null, true, user -> names.append(user.getUserName()).append(' '));
+        assertEquals("Adam Nazar Vitalii Volodya ", names.toString());
+    }
+
+    @Test
+    public void mutationsBumpVersions() {
+        long tableVersion = userService.getVersion();
+        User before = userService.getUserWithId(3);
+        User after = userService.updateUser(new User(3, "Petro", "Capitan", false));
+        assertTrue(after.getVersion() > before.getVersion());
+        assertTrue(userService.getVersion() > tableVersion);
+        userService.deleteUser(3);
+        User recreated = userService.createUser(new User(3, "Petro", "Developer", false));
+        assertTrue(recreated.getVersion() > after.getVersion());
+    }
+
+    @Test
+    public void optimisticUpdate() {
+        long version = userService.getUserWithId(4).getVersion();
+        userService.updateUser(new User(4, "Oleg", "Chief", true), version);
+        try {
+            userService.updateUser(new User(4, "Oleg", "Developer", true), version);
+            fail();
+        } catch (VersionMismatchException expected) {
+        }
+        assertEquals("Chief", userService.getUserWithId(4).getRole());
+    }
+
+    @Test
+    public void rejectsStringsReplicasWouldRefuse() {
+        char[] name = new char[UserService.MAX_STRING_BYTES / 2 + 1];
+        Arrays.fill(name, 'я');
+        long version = userService.getVersion();
+        try {
+            userService.createUser(new User(0, new String(name), "Developer", true));
+            fail();
+        } catch (UserTooLargeException expected) {
+        }
+        try {
+            userService.updateUser(new User(4, "Oleg", new String(name), true));
+            fail();
+        } catch (UserTooLargeException expected) {
+        }
+        assertEquals(version, userService.getVersion());
+        assertEquals("Manager", userService.getUserWithId(4).getRole());
+
+        Arrays.fill(name, 'a');
+        userService.createUser(new User(0, new String(name), "Developer", true));
+        assertEquals(version + 1, userService.getVersion());
+    }
+
+    @Test
+    public void appliesBatch() {
+        UserOperation delete = new UserOperation(UserOperation.Type.DELETE, null);
+        delete.setId(2L);
+        UserOperation staleUpdate = new UserOperation(UserOperation.Type.UPDATE, new User(5, "Nazar", "Chief", true));
+        staleUpdate.setVersion(0L);
+        List<UserOperationResult> results = userService.applyBatch(Arrays.asList(
+                new UserOperation(UserOperation.Type.CREATE, new User(0, "Valera", "Chief", false)),
+                new UserOperation(UserOperation.Type.UPDATE, new User(1, "Vitalii", "Developer", true)),
+                delete,
+                new UserOperation(UserOperation.Type.UPDATE, new User(42, "Nobody", "Chief", true)),
+                staleUpdate,
+                new UserOperation(null, null)));
+        assertEquals(Arrays.asList(201, 204, 204, 404, 412, 400),
+                results.stream().map(UserOperationResult::getStatus).collect(Collectors.toList()));
+        assertEquals(7, results.get(0).getId());
+        assertEquals(1, userService.getUsers("Chief", null).size());
+        assertEquals("Valera", userService.getUsers("Chief", null).get(0).getUserName());
+        assertEquals(2, userService.getUsers("Developer", null).size());
+    }
+
+    @Test
+    public void batchIndexesNetChange() {
+        UserOperation delete = new UserOperation(UserOperation.Type.DELETE, new User(7));
+        userService.applyBatch(Arrays.asList(
+                new UserOperation(UserOperation.Type.CREATE, new User(7, "Valera", "Chief", false)),
+                new UserOperation(UserOperation.Type.UPDATE, new User(7, "Valera", "Manager", false)),
+                delete,
+                new UserOperation(UserOperation.Type.CREATE, new User(8, "Ivan", "Chief", false)),
+                new UserOperation(UserOperation.Type.UPDATE, new User(8, "Ivan", "Manager", false))));
+        assertEquals(2, userService.getUsers("Manager", null).size());
+        assertEquals(2, userService.getUsers("Chief", null).size());
+        assertEquals(7, userService.getAllUsersV2().size());
+    }
+
+    @Test
+    public void importsExportInBulk() throws IOException {
+        UserService source = new UserService();
+        for (long id = 7; id <= 5000; id++) {
+            source.createUser(new User(id, "user" + (10000 - id), id % 2 == 0 ? "Chief" : "Developer", id % 3 == 0));
+        }
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        try (UserColumns.Writer writer = new UserColumns.Writer(export)) {
+            source.exportUsers(writer);
+        }
+        userService.updateUser(new User(1, "Renamed", "Manager", false));
+        userService.deleteUser(2);
+
+        int imported = userService.importUsers(new UserColumns.Reader(new ByteArrayInputStream(export.toByteArray())));
+
+        assertEquals(5000, imported);
+        assertEquals(5000, userService.getAllUsers().size());
+        assertEquals("Vitalii", userService.getUserWithId(1).getUserName());
+        assertEquals("Volodya", userService.getUserWithId(2).getUserName());
+        assertEquals(1, userService.getUsers("Manager", null).size());
+        assertEquals(source.getUsersV2("Chief", true).stream().map(User::getUserId).collect(Collectors.toList()),
+                userService.getUsersV2("Chief", true).stream().map(User::getUserId).collect(Collectors.toList()));
+        List<User> byName = userService.getAllUsersV2();
+        assertEquals(5000, byName.size());
+        assertEquals("Adam", byName.get(0).getUserName());
+        assertEquals(10, userService.getUserPage(4990, 100, null, null).size());
+        assertEquals(1, userService.searchUsers("USER5002", false, 10).size());
+        assertEquals(5001, userService.createUser(new User()).getUserId());
+    }
+
+    @Test
+    public void importLetsWritersInBetweenChunks() throws IOException {
+        ByteArrayOutputStream export = new ByteArrayOutputStream();
+        try (UserColumns.Writer writer = new UserColumns.Writer(export)) {
+            for (long id = 7; id < 7 + UserColumns.CHUNK_SIZE + 10; id++) {
+                writer.write(new User(id, "user" + id, "Developer", true, 1));
+            }
+        }
+        byte[] bytes = export.toByteArray();
+        // magic and format, then rows, length, body and checksum of the first chunk
+        int secondChunk = 16 + ByteBuffer.wrap(bytes, 12, 4).getInt() + 4;
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            InputStream in = new ByteArrayInputStream(bytes) {
+                private boolean written;
+
+                @Override
+                public synchronized int read() {
+                    between();
+                    return super.read();
+                }
+
+                @Override
+                public synchronized int read(byte[] b, int off, int len) {
+                    between();
+                    // a bulk read stops at the second chunk, so the writer goes in before any of it is read
+                    return super.read(b, off, pos < secondChunk ? Math.min(len, secondChunk - pos) : len);
+                }
+
+                private void between() {
+                    if (pos == secondChunk && !written) {
+                        written = true;
+                        try {
+                            executor.submit(() -> userService.updateUser(new User(1, "Between", "Manager", false)))
+                                    .get(5, TimeUnit.SECONDS);
+                        } catch (Exception e) {
+                            throw new AssertionError("writer blocked by the import", e);
+                        }
+                    }
+                }
+            };
+            assertEquals(UserColumns.CHUNK_SIZE + 10, userService.importUsers(new UserColumns.Reader(in)));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals("Between", userService.getUserWithId(1).getUserName());
+        assertEquals(6 + UserColumns.CHUNK_SIZE + 10, userService.getAllUsers().size());
+        assertEquals(UserColumns.CHUNK_SIZE + 10, userService.getUsers("Developer", true).size());
+    }
+
+    @Test
+    public void searchesNames() {
+        userService.createUser(new User(0, "Volodymyr", "Chief", true));
+        assertEquals(Arrays.asList("Volodya", "Volodymyr"), names(userService.searchUsers("VOLOD", false, 10)));
+        assertEquals(Arrays.asList("Volodya"), names(userService.searchUsers("vol", false, 1)));
+        assertEquals(Arrays.asList("Nazar"), names(userService.searchUsers("AZA", true, 10)));
+        assertEquals(2, userService.searchUsers("lod", true, 10).size());
+        assertTrue(userService.searchUsers("xyz", true, 10).isEmpty());
+
+        userService.updateUser(new User(5, "Taras", "Homeless", true));
+        userService.deleteUser(2);
+        assertTrue(userService.searchUsers("aza", true, 10).isEmpty());
+        assertEquals(Arrays.asList("Taras"), names(userService.searchUsers("ras", true, 10)));
+        assertEquals(Arrays.asList("Volodymyr"), names(userService.searchUsers("volod", false, 10)));
+    }
+
+    @Test
+    public void shardsMergeOrderedQueries() {
+        UserService sharded = new UserService(new HashUserRepository(), UserJournal.NONE, 4);
+        assertEquals(4, sharded.getShards());
+        assertEquals("Adam", sharded.getUserWithId(6).getUserName());
+        assertEquals(7, sharded.createUser(new User(0, "Bohdan", "Chief", true)).getUserId());
+        sharded.createUser(new User(100, "Zenon", "Chief", false));
+        assertEquals(104, sharded.createUser(new User(0, "Yarema", "Chief", true)).getUserId());
+
+        assertEquals(Arrays.asList("Adam", "Bohdan", "Nazar", "Oleg", "Petro", "Vitalii", "Volodya", "Yarema", "Zenon"),
+                sharded.getAllUsersV2().stream().map(User::getUserName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(5L, 6L, 7L), sharded.getUserPage(4, 3, null, null).stream()
+                .map(User::getUserId).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("Vitalii", "Volodya", "Yarema"), sharded.getUserPageV2("Petro", 3, 10, "Chief", true)
+                .stream().map(User::getUserName).collect(Collectors.toList()));
+        assertEquals(Arrays.asList("Vitalii", "Volodya"), sharded.searchUsers("v", false, 2).stream()
+                .map(User::getUserName).collect(Collectors.toList()));
+        assertEquals(5, sharded.getUsers("Chief", null).size());
+
+        UserOperation delete = new UserOperation(UserOperation.Type.DELETE, null);
+        delete.setId(1L);
+        sharded.applyBatch(Arrays.asList(delete,
+                new UserOperation(UserOperation.Type.UPDATE, new User(2, "Aaron", "Chief", true))));
+        assertEquals(Arrays.asList("Aaron", "Adam"), sharded.getUserPageV2(null, Long.MIN_VALUE, 2, null, null)
+                .stream().map(User::getUserName).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void shardsIndexBatchesThatCreateAndDelete() {
+        UserService sharded = new UserService(new HashUserRepository(), UserJournal.NONE, 4);
+        UserOperation delete = new UserOperation(UserOperation.Type.DELETE, null);
+        delete.setId(7L);
+        List<UserOperationResult> results = sharded.applyBatch(Arrays.asList(
+                new UserOperation(UserOperation.Type.CREATE, new User(7, "Valera", "Chief", false)),
+                delete,
+                new UserOperation(UserOperation.Type.UPDATE, new User(1, "Vitalii", "Manager", true))));
+        assertEquals(Arrays.asList(201, 204, 204),
+                results.stream().map(UserOperationResult::getStatus).collect(Collectors.toList()));
+        assertEquals(2, sharded.getUsers("Manager", null).size());
+        assertEquals(6, sharded.getAllUsersV2().size());
+        assertEquals(1, sharded.searchUsers("vitalii", false, 10).size());
+        assertFalse(sharded.findUser(7).isPresent());
+    }
+
+    @Test
+    public void shardsWriteConcurrently() throws Exception {
+        UserService sharded = new UserService(new HashUserRepository(), UserJournal.NONE, 4);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        User created = sharded.createUser(new User(0, "User" + i, "Developer", i % 2 == 0));
+                        sharded.updateUser(new User(created.getUserId(), "Renamed" + i, "Manager", true));
+                    }
+                }));
+            }
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(2006, sharded.getAllUsers().size());
+        assertEquals(2006, sharded.getAllUsersV2().size());
+        assertEquals(2000, sharded.getUsers("Manager", true).size());
+        assertEquals(6 + 4000, sharded.getVersion());
+        UserChangeLog changes = sharded.getChangeLog();
+        for (long version = changes.first(); version <= changes.last(); version++) {
+            assertNotNull(changes.get(version));
+        }
+    }
+
+    @Test
+    public void versionWaitsForTheChangeToBeVisible() throws Exception {
+        CountDownLatch saving = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        UserService blocking = new UserService(new HashUserRepository() {
+            @Override
+            public User save(User user) {
+                if ("Slow".equals(user.getUserName())) {
+                    saving.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.save(user);
+            }
+        }, UserJournal.NONE, 4);
+        long before = blocking.getVersion();
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<User> writer = executor.submit(() -> blocking.createUser(new User(0, "Slow", "Chief", true)));
+            assertTrue(saving.await(5, TimeUnit.SECONDS));
+            // a later write of another shard must not make the table version claim the unfinished one
+            Future<User> later = executor.submit(() -> blocking.updateUser(new User(2, "Volodymyr", "Chief", true)));
+            while (!"Volodymyr".equals(blocking.getUserWithId(2).getUserName())) {
+                Thread.sleep(1);
+            }
+            assertEquals(before, blocking.getVersion());
+            assertFalse(later.isDone());
+            release.countDown();
+            User created = writer.get(5, TimeUnit.SECONDS);
+            later.get(5, TimeUnit.SECONDS);
+            assertEquals(before + 2, blocking.getVersion());
+            assertTrue(blocking.getAllUsersV2().stream().anyMatch(user -> user.getUserId() == created.getUserId()));
+        } finally {
+            release.countDown();
+            executor.shutdownNow();
+        }
+    }
+
+    private static List<String> names(List<User> users) {
+        return users.stream().map(User::getUserName).sorted().collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,90 @@
+package services.store;
+
+import entities.User;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CompactUserRepositoryTest {
+
+    @Test
+    public void saveFindDelete() {
+        CompactUserRepository repository = new CompactUserRepository();
+        assertNull(repository.save(new User(7, "Vitalii", "Chief", true, 1)));
+        User previous = repository.save(new User(7, "Vitalii", null, false, 2));
+        assertEquals("Chief", previous.getRole());
+        assertTrue(previous.isActive());
+
+        User found = repository.findById(7);
+        assertEquals("Vitalii", found.getUserName());
+        assertNull(found.getRole());
+        assertFalse(found.isActive());
+        assertEquals(2, found.getVersion());
+        assertNull(repository.findById(8));
+
+        assertEquals(2, repository.delete(7).getVersion());
+        assertNull(repository.delete(7));
+        assertNull(repository.findById(7));
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    public void growsAndReusesSlots() {
+        CompactUserRepository repository = new CompactUserRepository(4);
+        for (long id = 1; id <= 10000; id++) {
+            repository.save(new User(id * 1000, "user" + id, "role" + id % 3, id % 2 == 0, id));
+        }
+        for (long id = 1; id <= 10000; id += 2) {
+            assertNotNull(repository.delete(id * 1000));
+        }
+        for (long id = 1; id <= 10000; id += 2) {
+            repository.save(new User(-id, "again" + id, "role0", true, id));
+        }
+        assertEquals(10000, repository.count());
+        for (long id = 1; id <= 10000; id++) {
+            if (id % 2 == 0) {
+                User user = repository.findById(id * 1000);
+                assertEquals("user" + id, user.getUserName());
+                assertEquals("role" + id % 3, user.getRole());
+                assertTrue(user.isActive());
+                assertNull(repository.findById(-id));
+            } else {
+                assertNull(repository.findById(id * 1000));
+                assertEquals("again" + id, repository.findById(-id).getUserName());
+            }
+        }
+        List<User> all = new ArrayList<>();
+        repository.forEach(all::add);
+        assertEquals(10000, all.size());
+    }
+
+    @Test
+    public void readersSeeWholeRecords() throws Exception {
+        CompactUserRepository repository = new CompactUserRepository(4);
+        repository.save(new User(1, "a", "a", true, 0));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (long version = 1; version <= 200000; version++) {
+                String value = version % 2 == 0 ? "a" : "b";
+                repository.save(new User(1, value, value, version % 2 == 0, version));
+                // keeps the id table and the columns growing underneath the reader
+                repository.save(new User(version + 1, value, value, true, version));
+            }
+        });
+        while (!writer.isDone()) {
+            User user = repository.findById(1);
+            assertEquals(user.getUserName(), user.getRole());
+            assertEquals(user.getUserName().equals("a"), user.isActive());
+        }
+        writer.get();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,75 @@
+package services.store;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentLongHashMapTest {
+
+    @Test
+    public void putGetRemove() {
+        ConcurrentLongHashMap<String> map = new ConcurrentLongHashMap<>();
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertEquals("b", map.get(1));
+        assertNull(map.get(2));
+        assertEquals(1, map.size());
+        assertEquals("b", map.remove(1));
+        assertNull(map.remove(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void growsPastInitialCapacity() {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>(4, 2);
+        for (long i = -5000; i < 5000; i++) {
+            map.put(i, i);
+        }
+        assertEquals(10000, map.size());
+        for (long i = -5000; i < 5000; i++) {
+            assertEquals(Long.valueOf(i), map.get(i));
+        }
+        assertEquals(10000, map.values().size());
+    }
+
+    @Test
+    public void concurrentWritersKeepEveryKey() throws Exception {
+        ConcurrentLongHashMap<Long> map = new ConcurrentLongHashMap<>();
+        int threads = 8;
+        int perThread = 20000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long base = (long) t * perThread;
+            futures.add(executor.submit(() -> {
+                start.await();
+                for (long i = base; i < base + perThread; i++) {
+                    map.put(i, i);
+                    assertEquals(Long.valueOf(i), map.get(i));
+                }
+                for (long i = base; i < base + perThread; i += 2) {
+                    map.remove(i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+        assertEquals(threads * perThread / 2, map.size());
+        for (long i = 1; i < threads * perThread; i += 2) {
+            assertEquals(Long.valueOf(i), map.get(i));
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package services.store;
+
+import entities.User;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class OffHeapUserRepositoryTest {
+
+    @Test
+    public void saveFindDelete() {
+        OffHeapUserRepository repository = new OffHeapUserRepository();
+        assertNull(repository.save(new User(7, "Віталій", "Chief", true, 1)));
+        User previous = repository.save(new User(7, "Віталій", null, false, 2));
+        assertEquals("Chief", previous.getRole());
+        assertTrue(previous.isActive());
+
+        User found = repository.findById(7);
+        assertEquals("Віталій", found.getUserName());
+        assertNull(found.getRole());
+        assertFalse(found.isActive());
+        assertEquals(2, found.getVersion());
+        assertNull(repository.findById(8));
+
+        repository.save(new User(7, null, "Chief", true, 3));
+        assertNull(repository.findById(7).getUserName());
+        repository.save(new User(7, "Vitalii Renamed", "Chief", true, 4));
+        assertEquals("Vitalii Renamed", repository.findById(7).getUserName());
+
+        assertEquals(4, repository.delete(7).getVersion());
+        assertNull(repository.delete(7));
+        assertNull(repository.findById(7));
+        assertEquals(0, repository.count());
+    }
+
+    @Test
+    public void growsAndReusesSlots() {
+        OffHeapUserRepository repository = new OffHeapUserRepository(4);
+        for (long id = 1; id <= 40000; id++) {
+            repository.save(new User(id * 1000, "user" + id, "role" + id % 3, id % 2 == 0, id));
+        }
+        for (long id = 1; id <= 40000; id += 2) {
+            assertNotNull(repository.delete(id * 1000));
+        }
+        long slots = repository.offHeapBytes();
+        for (long id = 1; id <= 40000; id += 2) {
+            repository.save(new User(-id, "again" + id, "role0", true, id));
+        }
+        assertEquals(40000, repository.count());
+        for (long id = 1; id <= 40000; id++) {
+            if (id % 2 == 0) {
+                User user = repository.findById(id * 1000);
+                assertEquals("user" + id, user.getUserName());
+                assertEquals("role" + id % 3, user.getRole());
+                assertTrue(user.isActive());
+                assertNull(repository.findById(-id));
+            } else {
+                assertNull(repository.findById(id * 1000));
+                assertEquals("again" + id, repository.findById(-id).getUserName());
+            }
+        }
+        assertEquals(slots, repository.offHeapBytes());
+        List<User> all = new ArrayList<>();
+        repository.forEach(all::add);
+        assertEquals(40000, all.size());
+    }
+
+    @Test
+    public void compactsTheStringArea() {
+        OffHeapUserRepository repository = new OffHeapUserRepository();
+        for (long id = 1; id <= 1000; id++) {
+            repository.save(new User(id, "user" + id, "Developer", true, id));
+        }
+        long initial = repository.offHeapBytes();
+        StringBuilder name = new StringBuilder("renamed");
+        for (int round = 0; round < 100; round++) {
+            // one byte longer every round, so no rename fits in place
+            name.append('x');
+            for (long id = 1; id <= 1000; id++) {
+                repository.save(new User(id, name + " " + id, "Developer", true, id));
+            }
+        }
+        assertTrue(repository.offHeapBytes() <= initial + 2 * OffHeapUserRepository.STRING_PAGE_SIZE);
+        for (long id = 1; id <= 1000; id++) {
+            assertEquals(name + " " + id, repository.findById(id).getUserName());
+        }
+    }
+
+    @Test
+    public void readersSeeWholeRecords() throws Exception {
+        OffHeapUserRepository repository = new OffHeapUserRepository(4);
+        repository.save(new User(1, "a", "a", true, 0));
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<?> writer = executor.submit(() -> {
+            for (long version = 1; version <= 200000; version++) {
+                String role = version % 2 == 0 ? "a" : "b";
+                String name = version % 2 == 0 ? "a" : "b" + version;
+                repository.save(new User(1, name, role, version % 2 == 0, version));
+                // keeps the slots growing and the string area filling underneath the reader
+                repository.save(new User(version + 1, name, role, true, version));
+            }
+        });
+        while (!writer.isDone()) {
+            User user = repository.findById(1);
+            assertEquals(user.getUserName().equals("a"), user.getRole().equals("a"));
+            assertEquals(user.getRole().equals("a"), user.isActive());
+        }
+        writer.get();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+    }
+}
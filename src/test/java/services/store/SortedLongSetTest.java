@@ -0,0 +1,113 @@
+package services.store;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class SortedLongSetTest {
+
+    @Test
+    public void addRemoveIterate() {
+        SortedLongSet set = new SortedLongSet();
+        assertFalse(set.iterator(Long.MIN_VALUE).hasNext());
+        assertTrue(set.add(5));
+        assertTrue(set.add(-3));
+        assertFalse(set.add(5));
+        assertTrue(set.add(9));
+        assertEquals(3, set.size());
+        assertEquals(list(-3, 5, 9), values(set.iterator(Long.MIN_VALUE)));
+        assertEquals(list(9), values(set.iterator(5)));
+        assertEquals(list(5, 9), values(set.iterator(4)));
+        assertTrue(set.remove(5));
+        assertFalse(set.remove(5));
+        assertEquals(list(-3, 9), values(set.iterator(Long.MIN_VALUE)));
+        assertEquals(2, set.size());
+    }
+
+    @Test
+    public void matchesATreeSetAcrossSplitsAndBulkAdds() {
+        SortedLongSet set = new SortedLongSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random(42);
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 2000; i++) {
+                long value = random.nextInt(50000);
+                assertEquals(expected.add(value), set.add(value));
+                value = random.nextInt(50000);
+                assertEquals(expected.remove(value), set.remove(value));
+            }
+            long[] bulk = new long[3000];
+            for (int i = 0; i < bulk.length; i++) {
+                bulk[i] = random.nextInt(60000) - 5000;
+                expected.add(bulk[i]);
+            }
+            Arrays.sort(bulk);
+            set.addAll(bulk, bulk.length);
+            assertEquals(expected.size(), set.size());
+            assertEquals(new ArrayList<>(expected), values(set.iterator(Long.MIN_VALUE)));
+            long after = random.nextInt(50000);
+            assertEquals(new ArrayList<>(expected.tailSet(after, false)), values(set.iterator(after)));
+        }
+        for (Long value : new ArrayList<>(expected)) {
+            assertTrue(set.remove(value));
+        }
+        assertEquals(0, set.size());
+        assertFalse(set.iterator(Long.MIN_VALUE).hasNext());
+    }
+
+    @Test
+    public void readersSeeAscendingValuesDuringSplits() throws Exception {
+        SortedLongSet set = new SortedLongSet();
+        for (long value = 0; value < 100000; value += 2) {
+            set.add(value);
+        }
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long value = 1; value < 100000; value += 2) {
+                    set.add(value);
+                }
+            });
+            while (!writer.isDone()) {
+                long previous = -1;
+                long evens = 0;
+                for (PrimitiveIterator.OfLong values = set.iterator(Long.MIN_VALUE); values.hasNext(); ) {
+                    long value = values.nextLong();
+                    assertTrue(value > previous);
+                    evens += value % 2 == 0 ? 1 : 0;
+                    previous = value;
+                }
+                // present all along, so never missed
+                assertEquals(50000, evens);
+            }
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(100000, set.size());
+    }
+
+    private static List<Long> list(long... values) {
+        List<Long> list = new ArrayList<>();
+        for (long value : values) {
+            list.add(value);
+        }
+        return list;
+    }
+
+    private static List<Long> values(PrimitiveIterator.OfLong iterator) {
+        List<Long> values = new ArrayList<>();
+        iterator.forEachRemaining((long value) -> values.add(value));
+        return values;
+    }
+}
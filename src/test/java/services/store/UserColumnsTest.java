@@ -0,0 +1,92 @@
+package services.store;
+
+import entities.User;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class UserColumnsTest {
+
+    @Test
+    public void roundTripsAcrossChunks() throws IOException {
+        List<User> users = new ArrayList<>();
+        for (long id = 1; id <= UserColumns.CHUNK_SIZE + 10; id++) {
+            users.add(new User(id * 3, "user-" + id + (id % 7 == 0 ? "é" : ""), id % 5 == 0 ? null : "role" + id % 4,
+                    id % 3 == 0));
+        }
+        users.add(new User(-1, null, "Chief", true));
+
+        List<List<User>> chunks = read(write(users));
+
+        assertEquals(2, chunks.size());
+        List<User> read = new ArrayList<>();
+        chunks.forEach(read::addAll);
+        users.sort(Comparator.comparingLong(User::getUserId));
+        read.sort(Comparator.comparingLong(User::getUserId));
+        assertEquals(users.size(), read.size());
+        for (int i = 0; i < users.size(); i++) {
+            User expected = users.get(i);
+            User actual = read.get(i);
+            assertEquals(expected.getUserId(), actual.getUserId());
+            assertEquals(expected.getUserName(), actual.getUserName());
+            assertEquals(expected.getRole(), actual.getRole());
+            assertEquals(expected.isActive(), actual.isActive());
+        }
+    }
+
+    @Test
+    public void emptyExport() throws IOException {
+        assertTrue(read(write(new ArrayList<>())).isEmpty());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsCorruptChunk() throws IOException {
+        List<User> users = new ArrayList<>();
+        users.add(new User(1, "Vitalii", "Chief", true));
+        byte[] export = write(users);
+        export[20] ^= 1;
+        read(export);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsTruncatedExport() throws IOException {
+        List<User> users = new ArrayList<>();
+        users.add(new User(1, "Vitalii", "Chief", true));
+        byte[] export = write(users);
+        byte[] truncated = new byte[export.length - 6];
+        System.arraycopy(export, 0, truncated, 0, truncated.length);
+        read(truncated);
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void rejectsOtherContent() throws IOException {
+        read("{\"userName\":\"Vitalii\"}".getBytes());
+    }
+
+    private static byte[] write(List<User> users) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (UserColumns.Writer writer = new UserColumns.Writer(out)) {
+            for (User user : users) {
+                writer.write(user);
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static List<List<User>> read(byte[] export) throws IOException {
+        UserColumns.Reader reader = new UserColumns.Reader(new ByteArrayInputStream(export));
+        List<List<User>> chunks = new ArrayList<>();
+        for (List<User> chunk = reader.readChunk(); chunk != null; chunk = reader.readChunk()) {
+            chunks.add(chunk);
+        }
+        return chunks;
+    }
+}
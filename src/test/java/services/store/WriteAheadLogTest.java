@@ -0,0 +1,178 @@
+package services.store;
+
+import entities.User;
+import exceptions.UserTooLargeException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import services.UserService;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+public class WriteAheadLogTest {
+
+    private Path directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("user-wal");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Test
+    public void recoversMutationsAfterRestart() {
+        WriteAheadLog log = open(0);
+        UserService service = new UserService(new HashUserRepository(), log);
+        User created = service.createUser(new User(0, "Taras", "Developer", true));
+        service.updateUser(new User(created.getUserId(), "Taras", "Lead", false));
+        service.deleteUser(1);
+        long version = service.getVersion();
+        log.close();
+
+        WriteAheadLog reopened = open(0);
+        UserService recovered = new UserService(new HashUserRepository(), reopened);
+        assertEquals(version, recovered.getVersion());
+        assertEquals(6, recovered.getAllUsers().size());
+        assertEquals("Lead", recovered.getUserWithId(created.getUserId()).getRole());
+        assertFalse(recovered.getUserWithId(created.getUserId()).isActive());
+        assertEquals(version - 1, recovered.getUserWithId(created.getUserId()).getVersion());
+        assertTrue(recovered.getUsers("Chief", null).stream().noneMatch(user -> user.getUserId() == 1));
+        reopened.close();
+    }
+
+    @Test
+    public void recoversFromSnapshotAndLogTail() throws IOException {
+        WriteAheadLog log = open(0);
+        UserService service = new UserService(new HashUserRepository(), log);
+        for (int i = 0; i < 100; i++) {
+            service.createUser(new User(0, "user" + i, "Developer", true));
+        }
+        log.snapshot();
+        service.deleteUser(7);
+        service.createUser(new User(0, "tail", "Developer", true));
+        long version = service.getVersion();
+        log.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals(1, files.filter(file -> file.getFileName().toString().startsWith("snapshot-")).count());
+        }
+        WriteAheadLog reopened = open(0);
+        UserService recovered = new UserService(new HashUserRepository(), reopened);
+        assertEquals(version, recovered.getVersion());
+        assertEquals(106, recovered.getAllUsers().size());
+        assertTrue(recovered.getAllUsers().stream().noneMatch(user -> user.getUserId() == 7));
+        assertEquals("tail", recovered.getUserWithId(107).getUserName());
+        reopened.close();
+    }
+
+    @Test
+    public void rollsSegmentsAndDropsThoseCoveredBySnapshots() throws IOException {
+        WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, true, 50);
+        UserService service = new UserService(new HashUserRepository(), log);
+        for (int i = 0; i < 200; i++) {
+            service.createUser(new User(0, "user" + i, null, i % 2 == 0));
+        }
+        long version = service.getVersion();
+        log.close();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            assertTrue(files.filter(file -> file.getFileName().toString().startsWith("wal-")).count() < 10);
+        }
+        WriteAheadLog reopened = open(0);
+        UserService recovered = new UserService(new HashUserRepository(), reopened);
+        assertEquals(version, recovered.getVersion());
+        assertEquals(206, recovered.getAllUsers().size());
+        assertNull(recovered.getUserWithId(206).getRole());
+        reopened.close();
+    }
+
+    @Test
+    public void snapshotsStringsLongerThan64KB() throws IOException {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < 40000; i++) {
+            name.append('я');
+        }
+        WriteAheadLog log = new WriteAheadLog(directory, 1 << 20, 1, true, 0);
+        UserService service = new UserService(new HashUserRepository(), log);
+        User created = service.createUser(new User(0, name.toString(), null, true));
+        log.snapshot();
+        log.close();
+
+        HashUserRepository repository = new HashUserRepository();
+        assertEquals(service.getVersion(), UserSnapshot.readLatest(directory, repository));
+        assertEquals(name.toString(), repository.findById(created.getUserId()).getUserName());
+        assertNull(repository.findById(created.getUserId()).getRole());
+    }
+
+    @Test
+    public void rejectsUsersThatDoNotFitIntoASegment() {
+        char[] name = new char[1000];
+        Arrays.fill(name, 'я');
+        WriteAheadLog log = new WriteAheadLog(directory, 1024, 0, true, 0);
+        UserService service = new UserService(new HashUserRepository(), log);
+        long version = service.getVersion();
+        try {
+            service.createUser(new User(0, new String(name), "Developer", true));
+            fail();
+        } catch (UserTooLargeException expected) {
+        }
+        try {
+            service.updateUser(new User(1, new String(name), "Chief", true));
+            fail();
+        } catch (UserTooLargeException expected) {
+        }
+        assertEquals(version, service.getVersion());
+        assertEquals(6, service.getAllUsers().size());
+        assertEquals("Vitalii", service.getUserWithId(1).getUserName());
+
+        // fits as 500 chars, though not at the three bytes a char may take
+        service.createUser(new User(0, new String(name, 0, 500).replace('я', 'a'), "Developer", true));
+        assertEquals(version + 1, service.getVersion());
+        log.close();
+    }
+
+    @Test
+    public void failsDurabilityWaitsOnceASyncFailed() {
+        AtomicBoolean failing = new AtomicBoolean();
+        WriteAheadLog log = new WriteAheadLog(directory, 1 << 16, 0, true, 0) {
+            @Override
+            void force(MappedByteBuffer segment) {
+                if (failing.get()) {
+                    throw new UncheckedIOException(new IOException("EIO"));
+                }
+                super.force(segment);
+            }
+        };
+        UserService service = new UserService(new HashUserRepository(), log);
+        failing.set(true);
+        for (int i = 0; i < 2; i++) {
+            try {
+                service.createUser(new User(0, "user" + i, "Developer", true));
+                fail();
+            } catch (IllegalStateException expected) {
+                assertTrue(expected.getCause() instanceof UncheckedIOException);
+            }
+        }
+        log.close();
+    }
+
+    private WriteAheadLog open(long snapshotEvery) {
+        return new WriteAheadLog(directory, 1 << 16, 1, true, snapshotEvery);
+    }
+}